@@ -0,0 +1,187 @@
+package com.example.photo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import com.example.photo.FilterProcessor.FilterType;
+
+/**
+ * 调色管线：把滤镜、饱和度、对比度、亮度这些线性调整预先合并成一个颜色矩阵，
+ * 每次参数变化只需要从源图到目标图绘制一次，几何变换也可以在同一次绘制中完成。
+ * 3D LUT 不是线性变换，无法合并进矩阵，由 {@link EditRenderer} 单独处理。
+ */
+public class AdjustmentPipeline {
+
+    private FilterType filterType = FilterType.NONE;
+    private int brightness = 0;          // -150 到 150
+    private int contrast = 0;            // -50 到 150
+    private float saturation = 1.0f;     // 1 为原始饱和度
+    private boolean extremeBrightness = false;
+
+    private final ColorMatrix matrix = new ColorMatrix();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean dirty = true;
+
+    public AdjustmentPipeline() {
+        // 直接覆盖目标像素，不需要先清空目标图
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    /**
+     * 复制当前参数，得到独立的管线（用于在后台线程渲染，不共享 Paint 和矩阵）
+     */
+    public AdjustmentPipeline copy() {
+        AdjustmentPipeline copy = new AdjustmentPipeline();
+        copy.set(this);
+        return copy;
+    }
+
+    /**
+     * 复制另一条管线的参数
+     */
+    public void set(AdjustmentPipeline other) {
+        setFilter(other.filterType);
+        setBrightness(other.brightness);
+        setContrast(other.contrast);
+        setSaturation(other.saturation);
+        setExtremeBrightness(other.extremeBrightness);
+    }
+
+    /**
+     * 设置矩阵滤镜
+     */
+    public void setFilter(FilterType filterType) {
+        FilterType type = filterType != null ? filterType : FilterType.NONE;
+        if (this.filterType != type) {
+            this.filterType = type;
+            dirty = true;
+        }
+    }
+
+    public void setBrightness(int brightness) {
+        if (this.brightness != brightness) {
+            this.brightness = brightness;
+            dirty = true;
+        }
+    }
+
+    public void setContrast(int contrast) {
+        if (this.contrast != contrast) {
+            this.contrast = contrast;
+            dirty = true;
+        }
+    }
+
+    public void setSaturation(float saturation) {
+        if (this.saturation != saturation) {
+            this.saturation = saturation;
+            dirty = true;
+        }
+    }
+
+    /**
+     * 切换亮度算法（增强 / 超强），两种都是通道偏移，可以合并进同一个矩阵
+     */
+    public void setExtremeBrightness(boolean extremeBrightness) {
+        if (this.extremeBrightness != extremeBrightness) {
+            this.extremeBrightness = extremeBrightness;
+            dirty = true;
+        }
+    }
+
+    public FilterType getFilter() { return filterType; }
+    public int getBrightness() { return brightness; }
+    public int getContrast() { return contrast; }
+    public float getSaturation() { return saturation; }
+    public boolean isExtremeBrightness() { return extremeBrightness; }
+
+    /**
+     * 是否没有任何调整（渲染结果等于原图）
+     */
+    public boolean isIdentity() {
+        return filterType == FilterType.NONE && brightness == 0
+                && contrast == 0 && saturation == 1.0f;
+    }
+
+    /**
+     * 获取合并后的颜色矩阵：滤镜 -> 饱和度 -> 对比度 -> 亮度
+     */
+    public ColorMatrix getMatrix() {
+        if (dirty) {
+            matrix.set(FilterProcessor.getFilterMatrix(filterType));
+
+            if (saturation != 1.0f) {
+                ColorMatrix saturationMatrix = new ColorMatrix();
+                saturationMatrix.setSaturation(saturation);
+                matrix.postConcat(saturationMatrix);
+            }
+
+            float brightOffset = extremeBrightness
+                    ? ImageProcessor.getExtremeBrightnessOffset(brightness)
+                    : brightness / 50.0f;
+            matrix.postConcat(ImageProcessor.createOffsetContrastMatrix(brightOffset, contrast));
+
+            paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+            dirty = false;
+        }
+        return matrix;
+    }
+
+    /**
+     * 渲染：从源图一次绘制到目标图
+     * @param source 源图（不会被修改）
+     * @param reuse 可复用的目标图，尺寸不符或不可写时会新建
+     * @return 渲染结果，可能就是 reuse
+     */
+    public Bitmap render(Bitmap source, Bitmap reuse) {
+        if (source == null || source.isRecycled()) {
+            return null;
+        }
+        return render(source, null, source.getWidth(), source.getHeight(), reuse);
+    }
+
+    /**
+     * 渲染：几何变换和调色在同一次绘制中完成
+     * @param geometry 源图到目标图的变换，为 null 时不变换
+     * @param width 目标宽度
+     * @param height 目标高度
+     * @param reuse 可复用的目标图，尺寸不符或不可写时会新建
+     * @return 渲染结果，可能就是 reuse
+     */
+    public Bitmap render(Bitmap source, Matrix geometry, int width, int height, Bitmap reuse) {
+        if (source == null || source.isRecycled()) {
+            return null;
+        }
+
+        boolean reusable = canReuse(source, reuse, width, height);
+        Bitmap target = reusable ? reuse
+                : BitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
+
+        getMatrix();
+        Canvas canvas = new Canvas(target);
+        if (geometry == null || geometry.isIdentity()) {
+            canvas.drawBitmap(source, 0, 0, paint);
+        } else {
+            if (!geometry.rectStaysRect()) {
+                // 任意角度旋转时源图盖不满目标图，先清掉上一次（或缓冲池中）的内容
+                target.eraseColor(Color.TRANSPARENT);
+            }
+            canvas.drawBitmap(source, geometry, paint);
+        }
+        return target;
+    }
+
+    private static boolean canReuse(Bitmap source, Bitmap reuse, int width, int height) {
+        return reuse != null && reuse != source && !reuse.isRecycled() && reuse.isMutable()
+                && reuse.getConfig() == Bitmap.Config.ARGB_8888
+                && reuse.getWidth() == width
+                && reuse.getHeight() == height;
+    }
+}
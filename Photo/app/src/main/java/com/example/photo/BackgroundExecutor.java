@@ -0,0 +1,254 @@
+package com.example.photo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图库和编辑页共用的后台线程池：查询 MediaStore、读写索引、解码图片等一次性的耗时任务都在这里执行，
+ * 不再各自 new Thread，线程数有上限。
+ * 任务按优先级排队：界面上马上要显示的最先执行，预取最后执行，同一优先级按提交顺序执行。
+ * 提交时可以绑定 Lifecycle：页面销毁后，还没开始的任务直接跳过，已经在执行的任务交回主线程的结果被丢弃。
+ * 线程数和排队情况可以通过 {@link #getStats()} 查看。
+ *
+ * submit 只能在主线程调用。
+ * 有顺序要求的工作（编辑渲染、解码缓存、分块解码）仍然使用各自的单线程执行器。
+ */
+public final class BackgroundExecutor {
+
+    private static final String TAG = "BackgroundExecutor";
+
+    // 任务以 IO 为主，两到四个线程足够，CPU 留给像素运算
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    // 排队的任务超过这个数时输出日志
+    private static final int QUEUE_WARN_DEPTH = 16;
+
+    /**
+     * 任务优先级
+     */
+    public enum Priority {
+        // 界面上马上要显示的内容（首屏数据、正在打开的图片）
+        VISIBLE,
+        // 其余的数据加载和同步
+        NORMAL,
+        // 预取和保存等不影响当前界面的工作
+        PREFETCH
+    }
+
+    /**
+     * 后台任务
+     */
+    public interface Task {
+        void run(Job job);
+    }
+
+    /**
+     * 提交后的任务：可以取消，结果通过 {@link #post(Runnable, Runnable)} 交回主线程
+     */
+    public static final class Job {
+        private final Lifecycle lifecycle;
+        private volatile boolean cancelled;
+
+        private Job(Lifecycle lifecycle) {
+            this.lifecycle = lifecycle;
+        }
+
+        /**
+         * 取消任务：还没开始的不再执行，之后交回的结果都被丢弃（可以在任何线程调用）
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * 任务已取消或绑定的页面已销毁，耗时任务可以在阶段之间检查，提前结束
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void post(Runnable action) {
+            post(action, null);
+        }
+
+        /**
+         * 在主线程执行 action；任务已取消或绑定的页面已销毁时改为执行 onDropped
+         * @param onDropped 释放结果占用的资源，可以为 null
+         */
+        public void post(Runnable action, Runnable onDropped) {
+            mainHandler.post(() -> {
+                if (isAlive()) {
+                    action.run();
+                } else {
+                    droppedResults.incrementAndGet();
+                    if (onDropped != null) {
+                        onDropped.run();
+                    }
+                }
+            });
+        }
+
+        private boolean isAlive() {
+            return !cancelled && (lifecycle == null || lifecycle.getCurrentState() != Lifecycle.State.DESTROYED);
+        }
+    }
+
+    /**
+     * 线程池的运行情况
+     */
+    public static final class Stats {
+        public final int threads;
+        public final int activeThreads;
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        public final long completedTasks;
+        public final long skippedTasks;
+        public final long droppedResults;
+
+        private Stats(int threads, int activeThreads, int queueDepth, int maxQueueDepth,
+                      long completedTasks, long skippedTasks, long droppedResults) {
+            this.threads = threads;
+            this.activeThreads = activeThreads;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.completedTasks = completedTasks;
+            this.skippedTasks = skippedTasks;
+            this.droppedResults = droppedResults;
+        }
+
+        @Override
+        public String toString() {
+            return "线程 " + activeThreads + "/" + threads + "，排队 " + queueDepth + "（最多 " + maxQueueDepth
+                    + "），完成 " + completedTasks + "，跳过 " + skippedTasks + "，丢弃结果 " + droppedResults;
+        }
+    }
+
+    /**
+     * 队列中的任务，按优先级、再按提交顺序排列
+     */
+    static final class Entry implements Runnable, Comparable<Entry> {
+        final Priority priority;
+        final long sequence;
+        private final Runnable body;
+
+        Entry(Priority priority, long sequence, Runnable body) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private static final ThreadPoolExecutor pool = createPool();
+
+    private static final AtomicLong nextSequence = new AtomicLong();
+    private static final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private static final AtomicLong skippedTasks = new AtomicLong();
+    private static final AtomicLong droppedResults = new AtomicLong();
+
+    private BackgroundExecutor() {
+    }
+
+    private static ThreadPoolExecutor createPool() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "background-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 空闲时不保留线程
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 提交不绑定页面的任务（全局数据的加载和保存）
+     */
+    public static Job submit(Priority priority, Task task) {
+        return submit(null, priority, task);
+    }
+
+    /**
+     * 提交绑定页面生命周期的任务，页面销毁时自动取消
+     * @param owner 页面；Fragment 中更新视图的任务使用 getViewLifecycleOwner()
+     */
+    public static Job submit(LifecycleOwner owner, Priority priority, Task task) {
+        Lifecycle lifecycle = owner != null ? owner.getLifecycle() : null;
+        Job job = new Job(lifecycle);
+        LifecycleEventObserver observer = null;
+        if (lifecycle != null) {
+            if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+                job.cancelled = true;
+                skippedTasks.incrementAndGet();
+                return job;
+            }
+            observer = (source, event) -> {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    job.cancel();
+                }
+            };
+            lifecycle.addObserver(observer);
+        }
+
+        LifecycleEventObserver boundObserver = observer;
+        pool.execute(new Entry(priority, nextSequence.getAndIncrement(), () -> {
+            // 首屏任务与界面线程同等优先，其余的让出 CPU
+            Process.setThreadPriority(priority == Priority.VISIBLE
+                    ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+            if (job.cancelled) {
+                skippedTasks.incrementAndGet();
+            } else {
+                try {
+                    task.run(job);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (boundObserver != null) {
+                // 排在任务交回的结果之后移除
+                mainHandler.post(() -> lifecycle.removeObserver(boundObserver));
+            }
+        }));
+
+        int depth = queue.size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.set(depth);
+            if (depth > QUEUE_WARN_DEPTH) {
+                Log.w(TAG, "后台任务积压: " + getStats());
+            }
+        }
+        return job;
+    }
+
+    public static Stats getStats() {
+        return new Stats(pool.getPoolSize(), pool.getActiveCount(), queue.size(), maxQueueDepth.get(),
+                pool.getCompletedTaskCount(), skippedTasks.get(), droppedResults.get());
+    }
+}
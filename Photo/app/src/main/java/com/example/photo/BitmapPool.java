@@ -0,0 +1,346 @@
+package com.example.photo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 全局共享的 Bitmap 缓冲池：各处理步骤用完的 Bitmap 放回池中，下一次按尺寸和格式取出复用，
+ * 尺寸不同时通过 reconfigure 复用足够大的缓冲，解码时通过 inBitmap 复用。
+ * 池中总字节数有上限，超出时丢弃最久未用的。
+ * 调试模式下会检查重复放回、放回已回收的图片，以及取出后没有放回就被回收的泄漏。
+ * 所有方法都是线程安全的。
+ */
+public final class BitmapPool {
+
+    private static final String TAG = "BitmapPool";
+
+    // reconfigure 时最多浪费一半的空间
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private static final Object lock = new Object();
+
+    // 按尺寸和格式分组的空闲 Bitmap
+    private static final Map<String, ArrayDeque<Bitmap>> freeByKey = new HashMap<>();
+    // 所有空闲 Bitmap，按放回顺序排列，超出上限时从最旧的开始丢弃
+    private static final LinkedHashMap<Bitmap, String> freeOrder = new LinkedHashMap<>();
+    private static long pooledBytes = 0;
+    private static long maxBytes = Runtime.getRuntime().maxMemory() / 8;
+
+    // 调试：取出后还没放回的 Bitmap，被 GC 时说明泄漏
+    private static boolean debug = false;
+    private static final ReferenceQueue<Bitmap> leakQueue = new ReferenceQueue<>();
+    private static final Map<LeakRef, Void> leakRefs = new IdentityHashMap<>();
+
+    private static final Paint copyPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    static {
+        copyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    private static final class LeakRef extends WeakReference<Bitmap> {
+        final Throwable allocation;
+        boolean released;
+
+        LeakRef(Bitmap bitmap, Throwable allocation) {
+            super(bitmap, leakQueue);
+            this.allocation = allocation;
+        }
+    }
+
+    private BitmapPool() {
+    }
+
+    /**
+     * 开启调试检查（debug 包中调用）
+     */
+    public static void setDebug(boolean enabled) {
+        synchronized (lock) {
+            debug = enabled;
+        }
+    }
+
+    /**
+     * 设置池的字节上限
+     */
+    public static void setMaxBytes(long bytes) {
+        synchronized (lock) {
+            maxBytes = Math.max(0, bytes);
+            trimToSizeLocked(maxBytes);
+        }
+    }
+
+    /**
+     * 取出一个可写的 Bitmap，内容未定义，调用者需要完整覆盖
+     */
+    public static Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap;
+        synchronized (lock) {
+            pollLeaksLocked();
+            bitmap = takeLocked(width, height, config);
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+        track(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 取出一个全透明的可写 Bitmap
+     */
+    public static Bitmap obtainCleared(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = obtain(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * 复制为可写的 ARGB_8888 Bitmap，替代 bitmap.copy()
+     */
+    public static Bitmap copyOf(Bitmap source) {
+        Bitmap copy = obtain(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        new Canvas(copy).drawBitmap(source, 0, 0, copyPaint);
+        return copy;
+    }
+
+    /**
+     * 复制一块区域（裁剪），替代 Bitmap.createBitmap(source, x, y, w, h)
+     */
+    public static Bitmap copyOf(Bitmap source, int left, int top, int width, int height) {
+        Bitmap copy = obtain(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(copy).drawBitmap(source, new Rect(left, top, left + width, top + height),
+                new Rect(0, 0, width, height), copyPaint);
+        return copy;
+    }
+
+    /**
+     * 按矩阵变换复制（旋转、翻转），替代 Bitmap.createBitmap(source, ..., matrix, true)
+     */
+    public static Bitmap transform(Bitmap source, Matrix matrix, int width, int height) {
+        Bitmap result = obtainCleared(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(result).drawBitmap(source, matrix, copyPaint);
+        return result;
+    }
+
+    /**
+     * 放回池中；放不下或不可复用时直接回收
+     */
+    public static void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            if (bitmap.isRecycled()) {
+                reportMisuse("放回已回收的Bitmap");
+                return;
+            }
+            if (freeOrder.containsKey(bitmap)) {
+                reportMisuse("重复放回同一个Bitmap");
+                return;
+            }
+            untrackLocked(bitmap);
+            pollLeaksLocked();
+
+            long bytes = bitmap.getAllocationByteCount();
+            if (!bitmap.isMutable() || bitmap.getConfig() == null || bytes > maxBytes) {
+                bitmap.recycle();
+                return;
+            }
+
+            String key = keyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayDeque<Bitmap> queue = freeByKey.get(key);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                freeByKey.put(key, queue);
+            }
+            queue.push(bitmap);
+            freeOrder.put(bitmap, key);
+            pooledBytes += bytes;
+            trimToSizeLocked(maxBytes);
+        }
+    }
+
+    /**
+     * 为解码设置 inBitmap，池中没有足够大的缓冲时不设置
+     * @param width 解码后的宽度
+     * @param height 解码后的高度
+     */
+    public static void setInBitmap(BitmapFactory.Options options, int width, int height) {
+        Bitmap.Config config = options.inPreferredConfig != null
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap reusable;
+        synchronized (lock) {
+            reusable = takeLocked(width, height, config);
+        }
+        if (reusable != null) {
+            track(reusable);
+            options.inBitmap = reusable;
+            options.inMutable = true;
+        }
+    }
+
+    /**
+     * 池中当前占用的字节数
+     */
+    public static long getPooledBytes() {
+        synchronized (lock) {
+            return pooledBytes;
+        }
+    }
+
+    /**
+     * 清空池（内存紧张时调用）
+     */
+    public static void clear() {
+        synchronized (lock) {
+            trimToSizeLocked(0);
+        }
+    }
+
+    /**
+     * 缩减到指定字节数以内
+     */
+    public static void trimToSize(long bytes) {
+        synchronized (lock) {
+            trimToSizeLocked(bytes);
+        }
+    }
+
+    private static Bitmap takeLocked(int width, int height, Bitmap.Config config) {
+        // 先找尺寸和格式完全一致的
+        ArrayDeque<Bitmap> queue = freeByKey.get(keyOf(width, height, config));
+        if (queue != null && !queue.isEmpty()) {
+            Bitmap bitmap = queue.pop();
+            removeFreeLocked(bitmap);
+            return bitmap;
+        }
+
+        // 再找足够大的通过 reconfigure 复用
+        long needed = (long) width * height * bytesPerPixel(config);
+        Bitmap best = null;
+        for (Bitmap candidate : freeOrder.keySet()) {
+            long bytes = candidate.getAllocationByteCount();
+            if (bytes >= needed && bytes <= needed * MAX_SIZE_MULTIPLE
+                    && (best == null || bytes < best.getAllocationByteCount())) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+
+        ArrayDeque<Bitmap> bestQueue = freeByKey.get(freeOrder.get(best));
+        bestQueue.remove(best);
+        removeFreeLocked(best);
+        try {
+            best.reconfigure(width, height, config);
+            return best;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "reconfigure失败: " + e.getMessage());
+            best.recycle();
+            return null;
+        }
+    }
+
+    private static void removeFreeLocked(Bitmap bitmap) {
+        String key = freeOrder.remove(bitmap);
+        pooledBytes -= bitmap.getAllocationByteCount();
+        ArrayDeque<Bitmap> queue = freeByKey.get(key);
+        if (queue != null && queue.isEmpty()) {
+            freeByKey.remove(key);
+        }
+    }
+
+    private static void trimToSizeLocked(long bytes) {
+        Iterator<Map.Entry<Bitmap, String>> iterator = freeOrder.entrySet().iterator();
+        while (pooledBytes > bytes && iterator.hasNext()) {
+            Map.Entry<Bitmap, String> eldest = iterator.next();
+            Bitmap bitmap = eldest.getKey();
+            ArrayDeque<Bitmap> queue = freeByKey.get(eldest.getValue());
+            queue.remove(bitmap);
+            if (queue.isEmpty()) {
+                freeByKey.remove(eldest.getValue());
+            }
+            iterator.remove();
+            pooledBytes -= bitmap.getAllocationByteCount();
+            bitmap.recycle();
+        }
+    }
+
+    private static void track(Bitmap bitmap) {
+        synchronized (lock) {
+            if (debug) {
+                LeakRef ref = new LeakRef(bitmap, new Throwable("Bitmap分配位置"));
+                leakRefs.put(ref, null);
+            }
+        }
+    }
+
+    private static void untrackLocked(Bitmap bitmap) {
+        if (!debug) {
+            return;
+        }
+        for (LeakRef ref : leakRefs.keySet()) {
+            if (ref.get() == bitmap) {
+                ref.released = true;
+                leakRefs.remove(ref);
+                break;
+            }
+        }
+    }
+
+    /**
+     * 被 GC 回收但从没放回池中的 Bitmap 视为泄漏
+     */
+    private static void pollLeaksLocked() {
+        LeakRef ref;
+        while ((ref = (LeakRef) leakQueue.poll()) != null) {
+            if (leakRefs.remove(ref) != null && !ref.released) {
+                Log.w(TAG, "Bitmap没有放回缓冲池就被回收", ref.allocation);
+            }
+        }
+    }
+
+    private static void reportMisuse(String message) {
+        if (debug) {
+            throw new IllegalStateException(message);
+        }
+        Log.e(TAG, message);
+    }
+
+    private static String keyOf(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.photo;
+
+/**
+ * 通道查找表内核：把逐通道的色调运算预先烘焙成 256 项的查找表，
+ * 处理像素时只剩查表，不再做浮点运算和范围限制。
+ * 多个查找表可以用 then() 合并成一个，仍然只遍历一次像素。
+ */
+public class ChannelLut implements PixelKernel {
+
+    /**
+     * 单个通道值的变换函数，输入 0-255，输出可以超出范围（烘焙时会限制）
+     */
+    public interface ChannelFunction {
+        int apply(int value);
+    }
+
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+
+    private ChannelLut(int[] red, int[] green, int[] blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
+
+    /**
+     * 不做任何变换的查找表
+     */
+    public static ChannelLut identity() {
+        return of(value -> value);
+    }
+
+    /**
+     * 三个通道使用同一个函数
+     */
+    public static ChannelLut of(ChannelFunction function) {
+        int[] table = bake(function);
+        return new ChannelLut(table, table.clone(), table.clone());
+    }
+
+    /**
+     * 三个通道分别使用不同的函数
+     */
+    public static ChannelLut of(ChannelFunction red, ChannelFunction green, ChannelFunction blue) {
+        return new ChannelLut(bake(red), bake(green), bake(blue));
+    }
+
+    /**
+     * 对比度查找表（与 ImageProcessor.adjustContrast 的算法一致）
+     * @param value 对比度值（-50 到 150）
+     */
+    public static ChannelLut contrast(int value) {
+        float contrast = (value + 50) / 50.0f;
+        return of(c -> (int) (((c - 127) * contrast) + 127));
+    }
+
+    /**
+     * 超强亮度查找表（与 ImageProcessor.adjustBrightnessExtreme 的算法一致）
+     * @param brightness 亮度值（-150 到 150）
+     */
+    public static ChannelLut brightnessExtreme(int brightness) {
+        float brightFactor = brightness / 25.0f;
+        float offset = brightFactor * 128 * (1 + Math.abs(brightFactor) / 10);
+        return of(c -> (int) (c + offset));
+    }
+
+    /**
+     * 组合：先应用当前查找表，再应用 next
+     * 返回新的查找表，两个原查找表都不变
+     */
+    public ChannelLut then(ChannelLut next) {
+        return new ChannelLut(compose(red, next.red), compose(green, next.green),
+                compose(blue, next.blue));
+    }
+
+    /**
+     * 查询单个通道值
+     */
+    public int mapRed(int value) { return red[value & 0xFF]; }
+    public int mapGreen(int value) { return green[value & 0xFF]; }
+    public int mapBlue(int value) { return blue[value & 0xFF]; }
+
+    /**
+     * 处理单个像素，透明度保持不变
+     */
+    public int map(int color) {
+        return (color & 0xFF000000)
+                | (red[(color >> 16) & 0xFF] << 16)
+                | (green[(color >> 8) & 0xFF] << 8)
+                | blue[color & 0xFF];
+    }
+
+    @Override
+    public void apply(int[] pixels, int offset, int length) {
+        final int[] r = red;
+        final int[] g = green;
+        final int[] b = blue;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int color = pixels[i];
+            pixels[i] = (color & 0xFF000000)
+                    | (r[(color >> 16) & 0xFF] << 16)
+                    | (g[(color >> 8) & 0xFF] << 8)
+                    | b[color & 0xFF];
+        }
+    }
+
+    private static int[] bake(ChannelFunction function) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = Math.max(0, Math.min(255, function.apply(i)));
+        }
+        return table;
+    }
+
+    private static int[] compose(int[] first, int[] second) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = second[first[i]];
+        }
+        return table;
+    }
+}
@@ -21,7 +21,7 @@ public class CropHelper {
                 return bitmap;
             }
 
-            return Bitmap.createBitmap(bitmap, left, top, width, height);
+            return BitmapPool.copyOf(bitmap, left, top, width, height);
         } catch (Exception e) {
             e.printStackTrace();
             return bitmap;
@@ -32,9 +32,21 @@ public class CropHelper {
      * 按固定比例裁剪图片（居中裁剪）
      */
     public static Bitmap cropBitmapWithRatio(Bitmap bitmap, float ratio) {
-        int bitmapWidth = bitmap.getWidth();
-        int bitmapHeight = bitmap.getHeight();
+        RectF rect = getCenterCropRect(bitmap.getWidth(), bitmap.getHeight(), ratio);
 
+        try {
+            return BitmapPool.copyOf(bitmap, (int) rect.left, (int) rect.top,
+                    (int) rect.width(), (int) rect.height());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return bitmap;
+        }
+    }
+
+    /**
+     * 计算固定比例的居中裁剪区域
+     */
+    public static RectF getCenterCropRect(int bitmapWidth, int bitmapHeight, float ratio) {
         int cropWidth, cropHeight;
 
         if (bitmapWidth / (float) bitmapHeight > ratio) {
@@ -49,13 +61,7 @@ public class CropHelper {
 
         int left = (bitmapWidth - cropWidth) / 2;
         int top = (bitmapHeight - cropHeight) / 2;
-
-        try {
-            return Bitmap.createBitmap(bitmap, left, top, cropWidth, cropHeight);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return bitmap;
-        }
+        return new RectF(left, top, left + cropWidth, top + cropHeight);
     }
 
     /**
@@ -0,0 +1,281 @@
+package com.example.photo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 3D 查找表滤镜（Adobe .cube 格式）
+ * 网格数据保存在一个 float 数组中（红色变化最快），
+ * 处理像素时使用四面体插值，可以表达颜色矩阵做不到的胶片风格。
+ */
+public class CubeLut implements PixelKernel {
+
+    public static final int MIN_SIZE = 2;
+    // 常见的 .cube 最大为 65（65³×3 个 float 约 3MB），再大的网格会在校验之前占用上百 MB
+    public static final int MAX_SIZE = 65;
+
+    private final String title;
+    private final int size;
+    // 网格颜色值，已换算到 0-255，按 (b * size + g) * size + r 排列，每项 3 个分量
+    private final float[] lattice;
+
+    // 0-255 通道值对应的网格下标和小数部分，预先计算避免逐像素除法
+    private final int[] baseIndex = new int[256];
+    private final float[] fraction = new float[256];
+
+    private CubeLut(String title, int size, float[] lattice) {
+        this.title = title;
+        this.size = size;
+        this.lattice = lattice;
+
+        float scale = (size - 1) / 255.0f;
+        for (int i = 0; i < 256; i++) {
+            float position = i * scale;
+            int base = Math.min((int) position, size - 2);
+            baseIndex[i] = base;
+            fraction[i] = position - base;
+        }
+    }
+
+    public String getTitle() { return title; }
+    public int getSize() { return size; }
+
+    /**
+     * 解析 .cube 文件（UTF-8）
+     */
+    public static CubeLut parse(InputStream inputStream) throws IOException {
+        return parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析 .cube 文本
+     * 支持 TITLE、LUT_3D_SIZE、DOMAIN_MIN、DOMAIN_MAX 和 # 注释
+     */
+    public static CubeLut parse(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+
+        String title = null;
+        int size = 0;
+        float[] domainMin = {0f, 0f, 0f};
+        float[] domainMax = {1f, 1f, 1f};
+        float[] lattice = null;
+        int count = 0;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            char first = line.charAt(0);
+            boolean isData = (first >= '0' && first <= '9') || first == '-' || first == '.' || first == '+';
+            if (!isData) {
+                String[] parts = line.split("\\s+", 2);
+                String keyword = parts[0];
+                String value = parts.length > 1 ? parts[1].trim() : "";
+                switch (keyword) {
+                    case "TITLE":
+                        title = value.replace("\"", "");
+                        break;
+                    case "LUT_3D_SIZE":
+                        size = parseInt(value, lineNumber);
+                        if (size < MIN_SIZE || size > MAX_SIZE) {
+                            throw new IOException("不支持的LUT尺寸: " + size);
+                        }
+                        lattice = new float[size * size * size * 3];
+                        break;
+                    case "DOMAIN_MIN":
+                        domainMin = parseTriple(value, lineNumber);
+                        break;
+                    case "DOMAIN_MAX":
+                        domainMax = parseTriple(value, lineNumber);
+                        break;
+                    case "LUT_1D_SIZE":
+                        throw new IOException("不支持1D LUT");
+                    default:
+                        // 其他关键字（如 LUT_3D_INPUT_RANGE）忽略
+                        break;
+                }
+                continue;
+            }
+
+            if (lattice == null) {
+                throw new IOException("缺少 LUT_3D_SIZE（第" + lineNumber + "行）");
+            }
+            if (count >= lattice.length) {
+                throw new IOException("LUT数据过多（第" + lineNumber + "行）");
+            }
+            float[] rgb = parseTriple(line, lineNumber);
+            for (int c = 0; c < 3; c++) {
+                float range = domainMax[c] - domainMin[c];
+                float normalized = range != 0 ? (rgb[c] - domainMin[c]) / range : 0f;
+                lattice[count++] = Math.max(0f, Math.min(1f, normalized)) * 255f;
+            }
+        }
+
+        if (lattice == null) {
+            throw new IOException("缺少 LUT_3D_SIZE");
+        }
+        if (count != lattice.length) {
+            throw new IOException("LUT数据不完整: " + count / 3 + "/" + lattice.length / 3);
+        }
+        return new CubeLut(title, size, lattice);
+    }
+
+    /**
+     * 只读取文件头中的 TITLE，遇到第一行数据就停止
+     * @return 没有 TITLE 时返回 null
+     */
+    public static String readTitle(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("TITLE")) {
+                return line.substring("TITLE".length()).trim().replace("\"", "");
+            }
+            if (!Character.isLetter(line.charAt(0))) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 由采样函数生成查找表，主要用于测试和内置效果
+     */
+    public static CubeLut fromFunction(String title, int size, ColorFunction function) {
+        float[] lattice = new float[size * size * size * 3];
+        float[] out = new float[3];
+        int index = 0;
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    function.apply(r / (float) (size - 1), g / (float) (size - 1),
+                            b / (float) (size - 1), out);
+                    for (int c = 0; c < 3; c++) {
+                        lattice[index++] = Math.max(0f, Math.min(1f, out[c])) * 255f;
+                    }
+                }
+            }
+        }
+        return new CubeLut(title, size, lattice);
+    }
+
+    /**
+     * 颜色映射函数，输入输出都是 0-1
+     */
+    public interface ColorFunction {
+        void apply(float r, float g, float b, float[] out);
+    }
+
+    /**
+     * 处理单个像素，透明度保持不变
+     */
+    public int map(int color) {
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+
+        final float[] lut = lattice;
+        final int n = size;
+        final float dr = fraction[r];
+        final float dg = fraction[g];
+        final float db = fraction[b];
+
+        // 立方体原点及三个方向的步长
+        final int i000 = ((baseIndex[b] * n + baseIndex[g]) * n + baseIndex[r]) * 3;
+        final int stepR = 3;
+        final int stepG = n * 3;
+        final int stepB = n * n * 3;
+        final int i111 = i000 + stepR + stepG + stepB;
+
+        // 按小数部分大小选择四面体，四个顶点权重之和为 1
+        int i1;
+        int i2;
+        float w0;
+        float w1;
+        float w2;
+        float w3;
+        if (dr > dg) {
+            if (dg > db) {          // r > g > b
+                i1 = i000 + stepR;
+                i2 = i000 + stepR + stepG;
+                w0 = 1 - dr; w1 = dr - dg; w2 = dg - db; w3 = db;
+            } else if (dr > db) {   // r > b >= g
+                i1 = i000 + stepR;
+                i2 = i000 + stepR + stepB;
+                w0 = 1 - dr; w1 = dr - db; w2 = db - dg; w3 = dg;
+            } else {                // b >= r > g
+                i1 = i000 + stepB;
+                i2 = i000 + stepR + stepB;
+                w0 = 1 - db; w1 = db - dr; w2 = dr - dg; w3 = dg;
+            }
+        } else {
+            if (db > dg) {          // b > g >= r
+                i1 = i000 + stepB;
+                i2 = i000 + stepG + stepB;
+                w0 = 1 - db; w1 = db - dg; w2 = dg - dr; w3 = dr;
+            } else if (db > dr) {   // g >= b > r
+                i1 = i000 + stepG;
+                i2 = i000 + stepG + stepB;
+                w0 = 1 - dg; w1 = dg - db; w2 = db - dr; w3 = dr;
+            } else {                // g >= r >= b
+                i1 = i000 + stepG;
+                i2 = i000 + stepR + stepG;
+                w0 = 1 - dg; w1 = dg - dr; w2 = dr - db; w3 = db;
+            }
+        }
+
+        int outR = (int) (w0 * lut[i000] + w1 * lut[i1] + w2 * lut[i2] + w3 * lut[i111] + 0.5f);
+        int outG = (int) (w0 * lut[i000 + 1] + w1 * lut[i1 + 1] + w2 * lut[i2 + 1] + w3 * lut[i111 + 1] + 0.5f);
+        int outB = (int) (w0 * lut[i000 + 2] + w1 * lut[i1 + 2] + w2 * lut[i2 + 2] + w3 * lut[i111 + 2] + 0.5f);
+
+        return (color & 0xFF000000)
+                | (Math.min(255, outR) << 16)
+                | (Math.min(255, outG) << 8)
+                | Math.min(255, outB);
+    }
+
+    @Override
+    public void apply(int[] pixels, int offset, int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            pixels[i] = map(pixels[i]);
+        }
+    }
+
+    private static int parseInt(String value, int lineNumber) throws IOException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("无法解析整数（第" + lineNumber + "行）: " + value);
+        }
+    }
+
+    private static float[] parseTriple(String value, int lineNumber) throws IOException {
+        String[] parts = value.trim().split("\\s+");
+        if (parts.length < 3) {
+            throw new IOException("需要3个数值（第" + lineNumber + "行）: " + value);
+        }
+        try {
+            return new float[] {
+                    Float.parseFloat(parts[0]),
+                    Float.parseFloat(parts[1]),
+                    Float.parseFloat(parts[2])
+            };
+        } catch (NumberFormatException e) {
+            throw new IOException("无法解析数值（第" + lineNumber + "行）: " + value);
+        }
+    }
+}
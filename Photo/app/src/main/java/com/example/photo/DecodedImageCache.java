@@ -0,0 +1,435 @@
+package com.example.photo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 全局的解码结果缓存：编辑页按工作分辨率解码的原图在退出后继续保留，
+ * 再次打开同一张图片时不用重新解码。
+ * 键由 URI、修改时间和像素上限组成，图片被修改或工作分辨率变化后自然失效。
+ * 内存中按 LRU 保留，总字节数有上限；缩小过的解码结果在磁盘上另存一份 JPEG，进程重启后仍然可用。
+ * 没有缩小的图片不写磁盘：重新编码会降低画质，而它会被当作原图编辑和保存。
+ * 缓存中的图片通过 {@link ImageHandle} 共享，使用者只读，需要修改时调用 mutate() 复制。
+ * 所有方法都是线程安全的。
+ */
+public final class DecodedImageCache {
+
+    private static final String TAG = "DecodedImageCache";
+
+    private static final String DISK_DIR = "decoded_v2";
+    // 旧版本的磁盘缓存，其中有没缩小的图片重新编码的结果，不能再使用
+    private static final String LEGACY_DISK_DIR = "decoded";
+    private static final long DISK_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int DISK_QUALITY = 95;
+    // 内存中保留的整幅图片数：正在编辑的一张加上预取的一张
+    private static final int MEMORY_FRAMES = 2;
+
+    private static final Object lock = new Object();
+    // 按访问顺序排列，最久未用的在前
+    private static final LinkedHashMap<String, ImageHandle> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes = 0;
+    private static long maxBytes = 0;
+    private static long workingPixels = 0;
+    private static File diskDir;
+
+    // 预取和写磁盘在同一个后台线程上进行
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "decode-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<String, Future<?>> prefetching = new HashMap<>();
+
+    /**
+     * 记录原图尺寸，用于判断解码时是否缩小过
+     */
+    private static final class SourceSize implements PhotoDecoder.SizeListener {
+        private final PhotoDecoder.SizeListener listener;
+        private long pixels;
+
+        SourceSize(PhotoDecoder.SizeListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSourceSizeKnown(int width, int height) {
+            pixels = (long) width * height;
+        }
+
+        @Override
+        public void onSizeKnown(int width, int height) {
+            if (listener != null) {
+                listener.onSizeKnown(width, height);
+            }
+        }
+
+        boolean isDownsampled(Bitmap decoded) {
+            return (long) decoded.getWidth() * decoded.getHeight() < pixels;
+        }
+    }
+
+    private DecodedImageCache() {
+    }
+
+    /**
+     * 按设备内存初始化（只在第一次调用时生效）
+     */
+    public static void init(Context context) {
+        synchronized (lock) {
+            if (maxBytes > 0) {
+                return;
+            }
+            MemoryBudget budget = MemoryBudget.from(context);
+            workingPixels = budget.getEditorWorkingPixels();
+            maxBytes = workingPixels * 4 * MEMORY_FRAMES;
+            File cacheDir = context.getApplicationContext().getCacheDir();
+            diskDir = new File(cacheDir, DISK_DIR);
+            executor.execute(() -> deleteDirectory(new File(cacheDir, LEGACY_DISK_DIR)));
+        }
+    }
+
+    /**
+     * 编辑页使用的工作分辨率像素上限（预取时按这个尺寸解码）
+     */
+    public static long getWorkingPixels() {
+        synchronized (lock) {
+            return workingPixels;
+        }
+    }
+
+    /**
+     * 生成缓存键；拿不到修改时间的图片（例如相机通过 FileProvider 传来的文件）不缓存
+     * @return 不能缓存时返回 null
+     */
+    public static String keyFor(ContentResolver resolver, Uri uri, long maxPixels) {
+        long modified = queryModifiedTime(resolver, uri);
+        return modified > 0 ? buildKey(uri.toString(), modified, maxPixels) : null;
+    }
+
+    static String buildKey(String uri, long modified, long maxPixels) {
+        return uri + "|" + modified + "|" + maxPixels;
+    }
+
+    /**
+     * 从内存或磁盘读取
+     * @return 调用者持有的新引用，用完后 release；没有缓存时返回 null
+     */
+    public static ImageHandle get(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (lock) {
+            ImageHandle handle = entries.get(key);
+            if (handle != null) {
+                return handle.retain();
+            }
+        }
+
+        Bitmap bitmap = readFromDisk(key);
+        return bitmap != null ? insert(key, bitmap, false) : null;
+    }
+
+    /**
+     * 加入缓存；解码时缩小过的图片同时在后台写入磁盘
+     * @param bitmap 刚解码的图片，之后由缓存管理，调用者不能再修改或回收
+     * @param downsampled 解码时是否缩小过，没有缩小的图片不写磁盘，避免有损的重新编码被当作原图
+     * @return 调用者持有的新引用，用完后 release
+     */
+    public static ImageHandle put(String key, Bitmap bitmap, boolean downsampled) {
+        if (key == null) {
+            return ImageHandle.wrap(bitmap);
+        }
+        return insert(key, bitmap, downsampled);
+    }
+
+    /**
+     * 读取缓存，没有时解码并加入缓存；同一张图片正在预取时等待预取完成
+     * @param sizeListener 需要完整解码时，确定解码尺寸后回调
+     */
+    public static ImageHandle load(ContentResolver resolver, Uri uri, long maxPixels,
+                                   PhotoDecoder.SizeListener sizeListener) throws IOException {
+        String key = keyFor(resolver, uri, maxPixels);
+        awaitPrefetch(key);
+        ImageHandle cached = get(key);
+        if (cached != null) {
+            Log.d(TAG, "命中缓存: " + uri);
+            return cached;
+        }
+        SourceSize sourceSize = new SourceSize(sizeListener);
+        Bitmap decoded = PhotoDecoder.decode(resolver, uri, maxPixels, sourceSize);
+        // 按密度缩放解码的图片带有人为的密度，清掉避免显示时再缩放一次
+        decoded.setDensity(Bitmap.DENSITY_NONE);
+        return put(key, decoded, sourceSize.isDownsampled(decoded));
+    }
+
+    /**
+     * 在后台按编辑页的工作分辨率解码，用户很可能马上要编辑这张图片时调用（长按、预览）
+     */
+    public static void prefetch(Context context, Uri uri) {
+        init(context);
+        final ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        final long maxPixels = getWorkingPixels();
+        executor.execute(() -> {
+            String key = keyFor(resolver, uri, maxPixels);
+            if (key == null) {
+                return;
+            }
+            synchronized (lock) {
+                if (entries.containsKey(key) || prefetching.containsKey(key)) {
+                    return;
+                }
+            }
+            // 解码排在本任务之后执行，本任务结束前不会开始，先登记再让出线程，编辑页可以等待它完成
+            Future<?> future = executor.submit(() -> {
+                try {
+                    ImageHandle handle = get(key);
+                    if (handle == null) {
+                        SourceSize sourceSize = new SourceSize(null);
+                        Bitmap decoded = PhotoDecoder.decode(resolver, uri, maxPixels, sourceSize);
+                        decoded.setDensity(Bitmap.DENSITY_NONE);
+                        handle = put(key, decoded, sourceSize.isDownsampled(decoded));
+                    }
+                    handle.release();
+                    Log.d(TAG, "预取完成: " + uri);
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "预取失败: " + e.getMessage());
+                } finally {
+                    synchronized (lock) {
+                        prefetching.remove(key);
+                    }
+                }
+            });
+            synchronized (lock) {
+                prefetching.put(key, future);
+            }
+        });
+    }
+
+    /**
+     * 内存中最多保留的字节数（内存紧张或编辑页加载完成时调用）
+     */
+    public static void trimToSize(long bytes) {
+        synchronized (lock) {
+            trimLocked(Math.max(0, bytes));
+        }
+    }
+
+    /**
+     * 清空内存中的缓存（磁盘缓存保留）
+     */
+    public static void clear() {
+        trimToSize(0);
+    }
+
+    private static ImageHandle insert(String key, Bitmap bitmap, boolean writeToDisk) {
+        ImageHandle handle = ImageHandle.wrap(bitmap);
+        synchronized (lock) {
+            long bytes = bitmap.getAllocationByteCount();
+            if (maxBytes <= 0 || bytes > maxBytes) {
+                return handle;
+            }
+            ImageHandle previous = entries.put(key, handle.retain());
+            if (previous != null) {
+                cachedBytes -= previous.get().getAllocationByteCount();
+                previous.release();
+            }
+            cachedBytes += bytes;
+            trimLocked(maxBytes);
+        }
+        if (writeToDisk) {
+            final ImageHandle pinned = handle.retain();
+            executor.execute(() -> {
+                try {
+                    writeToDisk(key, pinned.get());
+                } finally {
+                    pinned.release();
+                }
+            });
+        }
+        return handle;
+    }
+
+    private static void trimLocked(long limit) {
+        Iterator<Map.Entry<String, ImageHandle>> iterator = entries.entrySet().iterator();
+        while (cachedBytes > limit && iterator.hasNext()) {
+            ImageHandle handle = iterator.next().getValue();
+            iterator.remove();
+            cachedBytes -= handle.get().getAllocationByteCount();
+            // 还在被编辑页使用时，只是减少引用
+            handle.release();
+        }
+    }
+
+    private static void awaitPrefetch(String key) {
+        Future<?> future;
+        synchronized (lock) {
+            future = key != null ? prefetching.get(key) : null;
+        }
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ============ 磁盘缓存 ============
+
+    private static Bitmap readFromDisk(String key) {
+        File file = getDiskFile(key);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (bitmap == null) {
+            file.delete();
+            return null;
+        }
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        // 更新访问时间，磁盘上也按最近使用淘汰
+        file.setLastModified(System.currentTimeMillis());
+        Log.d(TAG, "从磁盘缓存读取: " + file.getName());
+        return bitmap;
+    }
+
+    private static void writeToDisk(String key, Bitmap bitmap) {
+        File file = getDiskFile(key);
+        if (file == null || file.isFile() || bitmap.isRecycled()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "无法创建磁盘缓存目录");
+            return;
+        }
+
+        // 先写临时文件再改名，避免读到写了一半的文件
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_QUALITY, outputStream)) {
+                throw new IOException("图片编码失败");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "写入磁盘缓存失败: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        trimDirectory(dir, DISK_MAX_BYTES);
+    }
+
+    private static File getDiskFile(String key) {
+        File dir;
+        synchronized (lock) {
+            dir = diskDir;
+        }
+        return dir != null ? new File(dir, hashKey(key) + ".jpg") : null;
+    }
+
+    /**
+     * 删除最久未用的文件，直到目录总大小不超过 maxBytes
+     */
+    static void trimDirectory(File dir, long maxBytes) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    static String hashKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    /**
+     * 查询图片的修改时间（媒体库记录或本地文件）
+     * @return 拿不到时返回 0
+     */
+    private static long queryModifiedTime(ContentResolver resolver, Uri uri) {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+            return new File(uri.getPath()).lastModified();
+        }
+        if (!MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+            return 0;
+        }
+        String[] projection = {MediaStore.MediaColumns.DATE_MODIFIED};
+        try (Cursor cursor = resolver.query(uri, projection, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "查询修改时间失败: " + e.getMessage());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.photo;
+
+import android.graphics.RectF;
+
+import com.example.photo.FilterProcessor.FilterType;
+
+/**
+ * 可撤销的编辑操作：只保存操作参数，不保存图片。
+ * 从某个编辑记录开始依次执行这些操作，就能得到任意一步的编辑记录。
+ */
+public abstract class EditCommand {
+
+    private final String name;
+
+    protected EditCommand(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 操作名称，用于提示
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 把操作作用到编辑记录上
+     */
+    public abstract void apply(EditGraph graph);
+
+    public static EditCommand rotate(float degrees) {
+        return new EditCommand("旋转") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.addRotation(degrees);
+            }
+        };
+    }
+
+    public static EditCommand flip(boolean horizontal, boolean vertical) {
+        return new EditCommand("翻转") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.addFlip(horizontal, vertical);
+            }
+        };
+    }
+
+    /**
+     * @param normalized 相对当前结果宽高的比例区域
+     */
+    public static EditCommand crop(RectF normalized) {
+        final RectF rect = new RectF(normalized);
+        return new EditCommand("裁剪") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.addCrop(rect);
+            }
+        };
+    }
+
+    public static EditCommand resetGeometry() {
+        return new EditCommand("重置旋转和翻转") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.clearGeometry();
+            }
+        };
+    }
+
+    public static EditCommand filter(FilterType filterType) {
+        return new EditCommand("滤镜") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.setFilter(filterType);
+            }
+        };
+    }
+
+    public static EditCommand lut(String lutName) {
+        return new EditCommand("滤镜") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.setLut(lutName);
+            }
+        };
+    }
+
+    public static EditCommand brightness(int brightness, boolean extreme) {
+        return new EditCommand("亮度") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.getColor().setExtremeBrightness(extreme);
+                graph.getColor().setBrightness(brightness);
+            }
+        };
+    }
+
+    public static EditCommand contrast(int contrast) {
+        return new EditCommand("对比度") {
+            @Override
+            public void apply(EditGraph graph) {
+                graph.getColor().setContrast(contrast);
+            }
+        };
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.photo;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+import com.example.photo.FilterProcessor.FilterType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 非破坏性编辑记录：只保存每一步操作的参数，不保存中间图片。
+ * 逻辑顺序为 几何（旋转/翻转/裁剪，按操作顺序）-> 滤镜 -> 调色 -> 叠加层，
+ * 由 {@link EditRenderer} 从原图一次计算出结果。
+ * 只能在主线程修改，交给后台渲染前先调用 {@link #copy()}。
+ */
+public class EditGraph {
+
+    /**
+     * 几何操作，裁剪区域保存为相对上一步结果的比例（0-1），与分辨率无关
+     */
+    public static final class GeometryOp {
+        public enum Type { ROTATE, FLIP, CROP }
+
+        public final Type type;
+        public final float degrees;
+        public final boolean horizontal;
+        public final boolean vertical;
+        public final RectF crop;
+
+        private GeometryOp(Type type, float degrees, boolean horizontal, boolean vertical, RectF crop) {
+            this.type = type;
+            this.degrees = degrees;
+            this.horizontal = horizontal;
+            this.vertical = vertical;
+            this.crop = crop;
+        }
+
+        public static GeometryOp rotate(float degrees) {
+            return new GeometryOp(Type.ROTATE, degrees, false, false, null);
+        }
+
+        public static GeometryOp flip(boolean horizontal, boolean vertical) {
+            return new GeometryOp(Type.FLIP, 0, horizontal, vertical, null);
+        }
+
+        public static GeometryOp crop(RectF normalized) {
+            return new GeometryOp(Type.CROP, 0, false, false, new RectF(normalized));
+        }
+    }
+
+    /**
+     * 叠加层（贴纸、文字），只在导出时绘制到最终图片上
+     */
+    public interface Overlay {
+        void draw(Canvas canvas, int width, int height);
+    }
+
+    private final List<GeometryOp> geometry = new ArrayList<>();
+    // 3D LUT 滤镜名称，与矩阵滤镜互斥
+    private String lutName;
+    // 矩阵滤镜和调色参数，合并成一个颜色矩阵
+    private final AdjustmentPipeline color;
+    private final List<Overlay> overlays = new ArrayList<>();
+
+    public EditGraph() {
+        this(new AdjustmentPipeline());
+    }
+
+    private EditGraph(AdjustmentPipeline color) {
+        this.color = color;
+    }
+
+    /**
+     * 复制参数快照（叠加层不复制，保存时另外截取 {@link OverlaySnapshot}）
+     */
+    public EditGraph copy() {
+        EditGraph copy = new EditGraph(color.copy());
+        copy.geometry.addAll(geometry);
+        copy.lutName = lutName;
+        return copy;
+    }
+
+    /**
+     * 恢复到另一份编辑记录的参数（撤销/重做使用），叠加层保持不变
+     */
+    public void restore(EditGraph state) {
+        geometry.clear();
+        geometry.addAll(state.geometry);
+        lutName = state.lutName;
+        color.set(state.color);
+    }
+
+    // ============ 几何 ============
+
+    public void addRotation(float degrees) {
+        geometry.add(GeometryOp.rotate(degrees));
+    }
+
+    public void addFlip(boolean horizontal, boolean vertical) {
+        geometry.add(GeometryOp.flip(horizontal, vertical));
+    }
+
+    /**
+     * 在当前结果上裁剪
+     * @param normalized 相对当前结果宽高的比例区域
+     */
+    public void addCrop(RectF normalized) {
+        geometry.add(GeometryOp.crop(normalized));
+    }
+
+    /**
+     * 清除所有几何操作（旋转、翻转和裁剪）
+     */
+    public void clearGeometry() {
+        geometry.clear();
+    }
+
+    public List<GeometryOp> getGeometry() {
+        return Collections.unmodifiableList(geometry);
+    }
+
+    /**
+     * 计算几何变换矩阵和输出尺寸
+     * @param outSize 输出宽高
+     * @return 从源图坐标到结果坐标的矩阵
+     */
+    public Matrix computeGeometry(int sourceWidth, int sourceHeight, int[] outSize) {
+        Matrix matrix = new Matrix();
+        float width = sourceWidth;
+        float height = sourceHeight;
+        RectF bounds = new RectF();
+
+        for (GeometryOp op : geometry) {
+            switch (op.type) {
+                case ROTATE: {
+                    // 绕原点旋转后平移回第一象限
+                    Matrix rotate = new Matrix();
+                    rotate.setRotate(op.degrees);
+                    bounds.set(0, 0, width, height);
+                    rotate.mapRect(bounds);
+                    rotate.postTranslate(-bounds.left, -bounds.top);
+                    matrix.postConcat(rotate);
+                    width = Math.round(bounds.width());
+                    height = Math.round(bounds.height());
+                    break;
+                }
+                case FLIP: {
+                    Matrix flip = new Matrix();
+                    flip.setScale(op.horizontal ? -1 : 1, op.vertical ? -1 : 1);
+                    flip.postTranslate(op.horizontal ? width : 0, op.vertical ? height : 0);
+                    matrix.postConcat(flip);
+                    break;
+                }
+                case CROP: {
+                    // 对齐到整数像素，避免裁剪后重新采样
+                    float left = Math.round(clamp(op.crop.left) * width);
+                    float top = Math.round(clamp(op.crop.top) * height);
+                    float right = Math.round(clamp(op.crop.right) * width);
+                    float bottom = Math.round(clamp(op.crop.bottom) * height);
+                    if (right - left < 1 || bottom - top < 1) {
+                        break;
+                    }
+                    matrix.postTranslate(-left, -top);
+                    width = right - left;
+                    height = bottom - top;
+                    break;
+                }
+            }
+        }
+
+        outSize[0] = Math.max(1, (int) width);
+        outSize[1] = Math.max(1, (int) height);
+        return matrix;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+
+    // ============ 滤镜 ============
+
+    /**
+     * 设置矩阵滤镜，会清除 LUT 滤镜
+     */
+    public void setFilter(FilterType filterType) {
+        color.setFilter(filterType);
+        lutName = null;
+    }
+
+    /**
+     * 设置 LUT 滤镜，会清除矩阵滤镜
+     * @param lutName 为 null 时取消 LUT
+     */
+    public void setLut(String lutName) {
+        color.setFilter(FilterType.NONE);
+        this.lutName = lutName;
+    }
+
+    public FilterType getFilter() {
+        return color.getFilter();
+    }
+
+    public String getLutName() {
+        return lutName;
+    }
+
+    // ============ 调色 ============
+
+    /**
+     * 调色参数（亮度、对比度、饱和度）和矩阵滤镜
+     */
+    public AdjustmentPipeline getColor() {
+        return color;
+    }
+
+    // ============ 叠加层 ============
+
+    public void addOverlay(Overlay overlay) {
+        overlays.add(overlay);
+    }
+
+    public void drawOverlays(Canvas canvas, int width, int height) {
+        for (Overlay overlay : overlays) {
+            overlay.draw(canvas, width, height);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.photo;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基于操作参数的撤销/重做历史。
+ * 每一步只保存 {@link EditCommand}，每隔固定步数保存一份编辑记录快照，
+ * 恢复某一步时从最近的快照开始重放操作。
+ * 另外为快照所在的步骤保留渲染好的图片，撤销到这些步骤时不需要重新渲染：
+ * 最近使用的几张留在内存中（受字节预算限制），其余的写入 {@link TileSnapshotStore}
+ * 磁盘缓存，没有磁盘缓存时直接丢弃。
+ * 除注明的方法外只能在主线程使用。
+ */
+public class EditHistory {
+
+    private static final String TAG = "EditHistory";
+
+    // 默认每 4 步保存一次快照
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 4;
+    // 内存中最多保留的检查点图片数
+    public static final int MAX_HOT_CHECKPOINTS = 3;
+
+    private final int checkpointInterval;
+    private final long checkpointBudgetBytes;
+
+    private final List<EditCommand> commands = new ArrayList<>();
+    // 已执行的操作数，即当前所在步骤
+    private int position = 0;
+
+    // 步骤 -> 编辑记录快照（只有参数，占用很小）
+    private final Map<Integer, EditGraph> snapshots = new HashMap<>();
+    // 步骤 -> 渲染好的图片，按访问顺序排列
+    private final Map<Integer, Bitmap> checkpoints = new LinkedHashMap<>(8, 0.75f, true);
+    private long checkpointBytes = 0;
+
+    // 写入磁盘的检查点，写入在单独的线程上按顺序执行
+    private final TileSnapshotStore spillStore;
+    private final ExecutorService spillExecutor;
+    private final Set<Integer> spilledSteps = new HashSet<>();
+
+    /**
+     * @param initial 初始编辑记录（第 0 步）
+     * @param checkpointBudgetBytes 渲染图片检查点的总字节上限
+     */
+    public EditHistory(EditGraph initial, long checkpointBudgetBytes) {
+        this(initial, checkpointBudgetBytes, DEFAULT_CHECKPOINT_INTERVAL, null);
+    }
+
+    /**
+     * @param spillStore 内存中放不下的检查点写入该磁盘缓存，可以为 null
+     */
+    public EditHistory(EditGraph initial, long checkpointBudgetBytes, TileSnapshotStore spillStore) {
+        this(initial, checkpointBudgetBytes, DEFAULT_CHECKPOINT_INTERVAL, spillStore);
+    }
+
+    public EditHistory(EditGraph initial, long checkpointBudgetBytes, int checkpointInterval,
+                       TileSnapshotStore spillStore) {
+        this.checkpointBudgetBytes = checkpointBudgetBytes;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        this.spillStore = spillStore;
+        this.spillExecutor = spillStore == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "undo-spill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.put(0, initial.copy());
+    }
+
+    /**
+     * 记录一步新操作（操作应已作用到当前编辑记录上），会清空重做部分
+     * @param current 执行操作之后的编辑记录
+     */
+    public void record(EditCommand command, EditGraph current) {
+        truncateRedo();
+        commands.add(command);
+        position++;
+        if (position % checkpointInterval == 0) {
+            snapshots.put(position, current.copy());
+        }
+    }
+
+    /**
+     * 去掉最后一步操作且不保留重做（操作执行失败时使用）
+     * @return 该操作是否还是最后一步并已去掉
+     */
+    public boolean discard(EditCommand command) {
+        if (position > 0 && position == commands.size() && commands.get(position - 1) == command) {
+            position--;
+            truncateRedo();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    public boolean canRedo() {
+        return position < commands.size();
+    }
+
+    /**
+     * @return 撤销后的步骤
+     */
+    public int undo() {
+        if (canUndo()) {
+            position--;
+        }
+        return position;
+    }
+
+    /**
+     * @return 重做后的步骤
+     */
+    public int redo() {
+        if (canRedo()) {
+            position++;
+        }
+        return position;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * 当前步骤对应的操作名称（撤销时提示用）
+     */
+    public String getCommandName(int step) {
+        return step > 0 && step <= commands.size() ? commands.get(step - 1).getName() : "";
+    }
+
+    /**
+     * 从最近的快照重放操作，得到某一步的编辑记录
+     */
+    public EditGraph rebuild(int step) {
+        int base = step - step % checkpointInterval;
+        EditGraph snapshot = snapshots.get(base);
+        while (snapshot == null && base > 0) {
+            base -= checkpointInterval;
+            snapshot = snapshots.get(base);
+        }
+
+        EditGraph graph = snapshot.copy();
+        for (int i = base; i < step; i++) {
+            commands.get(i).apply(graph);
+        }
+        return graph;
+    }
+
+    /**
+     * 该步骤是否需要保留渲染图片
+     */
+    public boolean wantsCheckpoint(int step) {
+        return step >= 0 && step <= commands.size() && step % checkpointInterval == 0
+                && !checkpoints.containsKey(step);
+    }
+
+    /**
+     * 提供某一步渲染好的图片，被接受时图片归历史记录所有
+     * @return 是否接受
+     */
+    public boolean offerCheckpoint(int step, Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !wantsCheckpoint(step)) {
+            return false;
+        }
+        long bytes = bitmap.getAllocationByteCount();
+        if (bytes > checkpointBudgetBytes) {
+            return false;
+        }
+
+        checkpoints.put(step, bitmap);
+        checkpointBytes += bytes;
+        // 新加入的图片是最近使用的，不会被立即移出
+        trimCheckpoints();
+        return true;
+    }
+
+    /**
+     * 取出某一步的渲染图片，取出后归调用者所有
+     * @return 没有时返回 null
+     */
+    public Bitmap takeCheckpoint(int step) {
+        Bitmap bitmap = checkpoints.remove(step);
+        if (bitmap != null) {
+            checkpointBytes -= bitmap.getAllocationByteCount();
+            if (bitmap.isRecycled()) {
+                return null;
+            }
+        }
+        return bitmap;
+    }
+
+    public long getCheckpointBytes() {
+        return checkpointBytes;
+    }
+
+    /**
+     * 内存紧张时把检查点移出内存（写入磁盘缓存）
+     * @param retainRatio 保留的预算比例，0 表示全部移出
+     */
+    public void trimMemory(float retainRatio) {
+        long budget = (long) (checkpointBudgetBytes * Math.max(0f, Math.min(1f, retainRatio)));
+        trimCheckpoints(budget, retainRatio <= 0 ? 0 : MAX_HOT_CHECKPOINTS);
+    }
+
+    /**
+     * 该步骤是否有写入磁盘的检查点
+     */
+    public boolean hasSpilledCheckpoint(int step) {
+        return spilledSteps.contains(step);
+    }
+
+    /**
+     * 从磁盘缓存读取某一步的图片（可以在后台线程调用）
+     * @return 不存在或还没写完时返回 null
+     */
+    public Bitmap loadSpilledCheckpoint(int step) {
+        if (spillStore == null) {
+            return null;
+        }
+        int[] size = spillStore.getSize(step);
+        if (size == null) {
+            return null;
+        }
+
+        final int width = size[0];
+        final Bitmap bitmap = BitmapPool.obtain(width, size[1], Bitmap.Config.ARGB_8888);
+        if (!spillStore.read(step, (top, rows, in) -> bitmap.setPixels(in, 0, width, 0, top, width, rows))) {
+            BitmapPool.release(bitmap);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 释放所有图片并删除磁盘缓存
+     */
+    public void clear() {
+        for (Bitmap bitmap : checkpoints.values()) {
+            BitmapPool.release(bitmap);
+        }
+        checkpoints.clear();
+        checkpointBytes = 0;
+
+        if (spillExecutor != null) {
+            spilledSteps.clear();
+            spillExecutor.execute(spillStore::close);
+            spillExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 丢弃当前步骤之后的操作、快照和图片
+     */
+    private void truncateRedo() {
+        while (commands.size() > position) {
+            commands.remove(commands.size() - 1);
+        }
+        snapshots.keySet().removeIf(step -> step > position);
+
+        Iterator<Map.Entry<Integer, Bitmap>> iterator = checkpoints.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Bitmap> entry = iterator.next();
+            if (entry.getKey() > position) {
+                checkpointBytes -= entry.getValue().getAllocationByteCount();
+                BitmapPool.release(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        Iterator<Integer> spilled = spilledSteps.iterator();
+        while (spilled.hasNext()) {
+            final int step = spilled.next();
+            if (step > position) {
+                spilled.remove();
+                spillExecutor.execute(() -> spillStore.remove(step));
+            }
+        }
+    }
+
+    /**
+     * 超出预算或数量时把最久没用的图片移出内存
+     */
+    private void trimCheckpoints() {
+        trimCheckpoints(checkpointBudgetBytes, MAX_HOT_CHECKPOINTS);
+    }
+
+    private void trimCheckpoints(long budgetBytes, int maxCount) {
+        Iterator<Map.Entry<Integer, Bitmap>> iterator = checkpoints.entrySet().iterator();
+        while ((checkpointBytes > budgetBytes || checkpoints.size() > maxCount)
+                && iterator.hasNext()) {
+            Map.Entry<Integer, Bitmap> eldest = iterator.next();
+            iterator.remove();
+            checkpointBytes -= eldest.getValue().getAllocationByteCount();
+            spill(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * 把图片写入磁盘缓存，写完后回收；没有磁盘缓存时直接回收
+     */
+    private void spill(final int step, final Bitmap bitmap) {
+        if (spillExecutor == null || spilledSteps.contains(step)) {
+            BitmapPool.release(bitmap);
+            return;
+        }
+
+        spilledSteps.add(step);
+        spillExecutor.execute(() -> {
+            final int width = bitmap.getWidth();
+            try {
+                spillStore.put(step, width, bitmap.getHeight(),
+                        (top, rows, out) -> bitmap.getPixels(out, 0, width, 0, top, width, rows));
+                Log.d(TAG, "第" + step + "步写入磁盘缓存，共 " + spillStore.getUsedTileCount() + " 个分块");
+            } catch (IOException e) {
+                Log.e(TAG, "写入撤销缓存失败: " + e.getMessage());
+            } finally {
+                BitmapPool.release(bitmap);
+            }
+        });
+    }
+}
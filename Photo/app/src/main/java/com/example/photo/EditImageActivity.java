@@ -5,19 +5,21 @@ import static android.content.ContentValues.TAG;
 import android.Manifest;
 import android.app.ProgressDialog;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
-import android.graphics.Paint;
 import android.graphics.RectF;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.RelativeLayout;
@@ -35,17 +37,28 @@ import com.example.photo.ZoomableImageView;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import android.util.Log;
 public class EditImageActivity extends AppCompatActivity {
 
     private static final int PERMISSION_REQUEST_WRITE_EXTERNAL_STORAGE = 1;
+    // 显示比例低于该值时，拖动滑块使用代理图预览
+    private static final float PROXY_MIN_SAVING = 0.9f;
+    // 撤销检查点的磁盘缓存
+    private static final String UNDO_CACHE_FILE = "undo_tiles.bin";
+    private static final long UNDO_CACHE_MAX_BYTES = 256L * 1024 * 1024;
 
     private ZoomableImageView imageView;
-    private Bitmap originalBitmap;
-    private Bitmap currentBitmap;
+    // 原图和当前显示的结果，未编辑前两者共享同一份像素
+    private ImageHandle originalImage;
+    private ImageHandle currentImage;
+    // 按设备内存计算的预算和工作分辨率（像素数上限）
+    private MemoryBudget memoryBudget;
+    private long workingPixels;
+    // 原图比工作分辨率大时的分块源，只在显示未编辑的原图时使用
+    private TiledImageSource tileSource;
+    private boolean destroyed = false;
     private Uri imageUri;
 
     private SeekBar seekBarAdjust;
@@ -72,7 +85,24 @@ public class EditImageActivity extends AppCompatActivity {
     private TextTransformDialog textTransformDialog;
     private FilterDialog filterDialog;
     private FilterProcessor.FilterType currentFilter = FilterProcessor.FilterType.NONE;
-    private FilterManager filterManager;
+    // 撤销/重做历史（只保存操作参数）
+    private EditHistory editHistory;
+    // 当前图片对应的历史步骤，-1 表示包含还没记录的滑块调整
+    private int currentStateStep = 0;
+    private boolean hasUncommittedAdjustment = false;
+    // 非破坏性编辑记录，当前图片总是由原图按记录渲染得到
+    private final EditGraph editGraph = new EditGraph();
+    private EditRenderer editRenderer;
+    // 拖动滑块时的低分辨率预览
+    private boolean isAdjustPreviewing = false;
+    private Bitmap proxySourceBitmap;
+    private Bitmap proxyTargetBitmap;
+    private int proxyFullWidth;
+    private int proxyFullHeight;
+    // 滤镜、调色、撤销/重做共用的后台渲染线程（最新请求优先）
+    private final RenderScheduler renderScheduler = new RenderScheduler();
+    // 上一次全分辨率调色的结果，下一次渲染时复用（双缓冲）
+    private Bitmap spareBitmap;
     //保存
     private static final int PERMISSION_REQUEST_SAVE_IMAGE = 102;
     private ImageSaver imageSaver;
@@ -85,8 +115,15 @@ public class EditImageActivity extends AppCompatActivity {
     private List<DraggableStickerView> stickers = new ArrayList<>();
     private RelativeLayout stickerContainer;
 
+    // 打开编辑页的时间，用于统计首帧图像和可编辑的耗时
+    private long openStartTime;
+    private boolean firstImageLogged = false;
+    // 完整解码之前占位显示的缩略图
+    private Bitmap placeholderBitmap;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        openStartTime = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_edit_image);
 
@@ -94,12 +131,30 @@ public class EditImageActivity extends AppCompatActivity {
         imageUri = Uri.parse(getIntent().getStringExtra("image_uri"));
 
         initViews();
+        initEditGraph();
         loadImage();
         setupListeners();    // 初始化图片保存器
         imageSaver = new ImageSaver(this);
 
     }
 
+    private void initEditGraph() {
+        // debug 包中检查缓冲池的误用（重复放回、泄漏）
+        BitmapPool.setDebug((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+        editRenderer = new EditRenderer(this);
+        // 工作分辨率要保证常驻图片、导出图层和内存中的检查点同时存在时不超出预算
+        memoryBudget = MemoryBudget.from(this);
+        workingPixels = memoryBudget.getEditorWorkingPixels();
+        DecodedImageCache.init(this);
+        BitmapPool.setMaxBytes(memoryBudget.getPoolBytes());
+        Log.d(TAG, "内存预算: " + memoryBudget.describe(workingPixels));
+        // 内存中的检查点按工作分辨率预留，其余写入缓存目录
+        TileSnapshotStore spillStore = new TileSnapshotStore(
+                new File(getCacheDir(), UNDO_CACHE_FILE), UNDO_CACHE_MAX_BYTES);
+        editHistory = new EditHistory(editGraph, memoryBudget.getCheckpointBudgetBytes(
+                workingPixels, EditHistory.MAX_HOT_CHECKPOINTS), spillStore);
+    }
+
     private void initViews() {
         // 设置工具栏
         if (getSupportActionBar() != null) {
@@ -148,124 +203,156 @@ public class EditImageActivity extends AppCompatActivity {
         stickerDialog = new StickerDialog(this);
     }
 
+    /**
+     * 渐进加载：不在主线程解码。后台线程先取系统缩略图，读到文件头确定解码尺寸后立即占位显示，
+     * 再按工作分辨率完整解码（只打开一次流，按 EXIF 方向摆正），完成后替换缩略图并允许编辑
+     */
     private void loadImage() {
-        try {
-            // 检查是否来自相机
-            boolean isFromCamera = getIntent().getBooleanExtra("is_from_camera", false);
-            if (isFromCamera) {
-                Log.d(TAG, "加载相机拍摄的图片");
-                loadCameraImage();
-            } else {
-                Log.d(TAG, "加载相册图片");
-                loadGalleryImage();
-            }
-            // 确保图片加载成功后再初始化FilterManager
-            if (originalBitmap != null) {
-                // 初始化 FilterManager
-                filterManager = new FilterManager(originalBitmap);
-            } else {
-                throw new IOException("图片加载失败");
+        // 检查是否来自相机（相机照片的方向由 EXIF 决定，与相册图片使用相同的解码路径）
+        boolean isFromCamera = getIntent().getBooleanExtra("is_from_camera", false);
+        Log.d(TAG, isFromCamera ? "加载相机拍摄的图片" : "加载相册图片");
+        final String failureMessage = isFromCamera ? "相机图片加载失败" : "图片加载失败";
+        final Uri uri = imageUri;
+        final long maxPixels = workingPixels;
+
+        // 完整的图片解码出来之前不能编辑
+        setEditControlsEnabled(false);
+        // 正在打开的图片最先执行；退出编辑页后不再交回结果，解码出的图片直接释放
+        BackgroundExecutor.submit(this, BackgroundExecutor.Priority.VISIBLE, job -> {
+            ImageHandle loaded;
+            try {
+                // 解码缓存中有这张图片时直接使用，否则先显示缩略图再完整解码
+                loaded = DecodedImageCache.load(getContentResolver(), uri, maxPixels, (width, height) -> {
+                    Bitmap thumbnail = PhotoDecoder.loadThumbnail(getContentResolver(), uri);
+                    if (thumbnail != null) {
+                        job.post(() -> showPlaceholder(thumbnail, width, height),
+                                () -> BitmapPool.release(thumbnail));
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                job.post(() -> {
+                    Toast.makeText(this, failureMessage, Toast.LENGTH_SHORT).show();
+                    finish();
+                });
+                return;
             }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(this, "图片加载失败", Toast.LENGTH_SHORT).show();
-            finish();
+            job.post(() -> setLoadedImage(loaded), loaded::release);
+        });
+    }
+
+    /**
+     * 按完整解码后的尺寸放大显示缩略图，位置和大小与之后替换上来的图片相同
+     */
+    private void showPlaceholder(Bitmap thumbnail, int width, int height) {
+        if (destroyed || originalImage != null) {
+            BitmapPool.release(thumbnail);
+            return;
         }
+        placeholderBitmap = thumbnail;
+        imageView.setProxyBitmap(thumbnail, width, height);
+        logFirstImage();
     }
-    // 统一的图片加载方法
-    private void loadImageFromUri(Uri imageUri) {
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-            if (inputStream == null) {
-                throw new IOException("无法打开图片流");
-            }
-            // 先获取图片尺寸
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeStream(inputStream, null, options);
-            inputStream.close();
-            // 计算合适的缩放比例
-            int scale = calculateInSampleSize(options, 2048, 2048);
-            // 重新打开流并加载图片
-            inputStream = getContentResolver().openInputStream(imageUri);
-            options.inJustDecodeBounds = false;
-            options.inSampleSize = scale;
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-            originalBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-            inputStream.close();
-            if (originalBitmap != null) {
-                currentBitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
-                imageView.setImageBitmap(currentBitmap);
-            } else {
-                throw new IOException("无法解码图片");
-            }
-        } catch (Exception e) {
-            throw new RuntimeException("加载图片失败", e);
+
+    /**
+     * 显示刚解码的原图：当前图片只是原图的另一个引用，第一次编辑渲染出新结果之前不复制
+     * @param loaded 原图的引用（也可能被解码缓存共享，只读）
+     */
+    private void setLoadedImage(ImageHandle loaded) {
+        Bitmap decoded = loaded.get();
+        originalImage = loaded;
+        currentImage = originalImage.retain();
+        // 编辑期间解码缓存只保留这一张，其余的内存留给编辑
+        DecodedImageCache.trimToSize(decoded.getAllocationByteCount());
+        imageView.setImageBitmap(currentImage.get());
+        if (placeholderBitmap != null) {
+            // 已经换成完整的图片，缩略图不会再被绘制
+            BitmapPool.release(placeholderBitmap);
+            placeholderBitmap = null;
         }
+        logFirstImage();
+        setEditControlsEnabled(true);
+        logOnNextDraw("可编辑");
+        reportFullyDrawn();
+        openTileSource(decoded.getWidth());
     }
-    private void loadGalleryImage() {
-        loadImageFromUri(imageUri);
+
+    private void logFirstImage() {
+        if (!firstImageLogged) {
+            firstImageLogged = true;
+            logOnNextDraw("首帧图像");
+        }
     }
-    // 添加相机图片加载方法
-    private void loadCameraImage() {
-        try {
-            // 使用 ContentResolver 读取图片，而不是直接使用文件路径
-            InputStream inputStream = getContentResolver().openInputStream(imageUri);
-            if (inputStream != null) {
-                // 先解码图片尺寸
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeStream(inputStream, null, options);
-                inputStream.close();
-                // 计算合适的缩放比例
-                int scale = 1;
-                while ((options.outWidth / scale) > 2048 || (options.outHeight / scale) > 2048) {
-                    scale *= 2;
-                }
-                // 重新打开流并解码图片
-                inputStream = getContentResolver().openInputStream(imageUri);
-                options.inJustDecodeBounds = false;
-                options.inSampleSize = scale;
-                originalBitmap = BitmapFactory.decodeStream(inputStream, null, options);
-                inputStream.close();
-                if (originalBitmap != null) {
-                    currentBitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
-                    imageView.setImageBitmap(currentBitmap);
-                    // 初始化 FilterManager
-                    filterManager = new FilterManager(originalBitmap);
-                } else {
-                    throw new IOException("无法解码图片");
-                }
-            } else {
-                throw new IOException("无法打开图片流");
+
+    /**
+     * 下一帧绘制时输出从打开编辑页开始的耗时
+     */
+    private void logOnNextDraw(String event) {
+        imageView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                imageView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(TAG, event + "耗时 " + (SystemClock.elapsedRealtime() - openStartTime) + "ms");
+                return true;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            Toast.makeText(this, "相机图片加载失败", Toast.LENGTH_SHORT).show();
-            finish();
-        }
-    }
-    // 计算合适的缩放比例
-    private int calculateInSampleSize(BitmapFactory.Options options,
-                                      int reqWidth, int reqHeight) {
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-        if (height > reqHeight || width > reqWidth) {
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-
-            // 计算最大的inSampleSize值，该值是2的幂，
-            // 且高度和宽度都大于请求的高度和宽度
-            while ((halfHeight / inSampleSize) >= reqHeight
-                    && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
+        });
+    }
+
+    /**
+     * 启用或禁用底部的编辑按钮
+     */
+    private void setEditControlsEnabled(boolean enabled) {
+        setEnabledRecursive(findViewById(R.id.bottomControls), enabled);
+    }
+
+    private static void setEnabledRecursive(View view, boolean enabled) {
+        view.setEnabled(enabled);
+        if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                setEnabledRecursive(group.getChildAt(i), enabled);
             }
         }
+    }
 
-        return inSampleSize;
+    /**
+     * 原图分辨率高于工作分辨率时，在后台打开分块源，放大查看时显示原图细节
+     */
+    private void openTileSource(int decodedWidth) {
+        final Uri uri = imageUri;
+        final long cacheBytes = memoryBudget.getTileCacheBytes();
+        // 只在放大查看时用到，排在其他加载之后
+        BackgroundExecutor.submit(this, BackgroundExecutor.Priority.PREFETCH, job -> {
+            TiledImageSource source;
+            try {
+                source = TiledImageSource.open(getContentResolver(), uri, cacheBytes);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "无法分块解码原图: " + e.getMessage());
+                return;
+            }
+            job.post(() -> {
+                if (source.getWidth() <= decodedWidth) {
+                    source.release();
+                    return;
+                }
+                Log.d(TAG, "原图 " + source.getWidth() + "x" + source.getHeight() + "，启用分块显示");
+                tileSource = source;
+                if (currentStateStep == 0 && isHeld(originalImage, currentImage.get())) {
+                    imageView.setTileSource(tileSource);
+                }
+            }, source::release);
+        });
     }
+
+    /**
+     * 包装成句柄，最后一个引用释放时回到主线程，等没有渲染任务读取后再回收
+     */
+    private ImageHandle wrapImage(Bitmap bitmap) {
+        return ImageHandle.wrap(bitmap, released -> runOnUiThread(
+                () -> renderScheduler.recycleWhenIdle(released)));
+    }
+
     private void setupListeners() {
 
         // 裁剪按钮
@@ -312,8 +399,8 @@ public class EditImageActivity extends AppCompatActivity {
         });
         // 滤镜按钮
         findViewById(R.id.btnFilter).setOnClickListener(v -> showFilterDialog());
-        findViewById(R.id.btnUndo).setOnClickListener(v -> undoFilter());
-        findViewById(R.id.btnRedo).setOnClickListener(v -> redoFilter());
+        findViewById(R.id.btnUndo).setOnClickListener(v -> undoEdit());
+        findViewById(R.id.btnRedo).setOnClickListener(v -> redoEdit());
         // 保存按钮
         findViewById(R.id.btnSave).setOnClickListener(v -> saveImage());
         // 参数调节SeekBar
@@ -326,10 +413,15 @@ public class EditImageActivity extends AppCompatActivity {
             }
 
             @Override
-            public void onStartTrackingTouch(SeekBar seekBar) {}
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                startAdjustmentPreview();
+            }
 
             @Override
-            public void onStopTrackingTouch(SeekBar seekBar) {}
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                recordAdjustment();
+                commitAdjustmentPreview();
+            }
         });
     }
 // ============ 贴纸相关方法 ============
@@ -532,81 +624,20 @@ public class EditImageActivity extends AppCompatActivity {
     }
 
     /**
-     * 在保存图片时绘制贴纸图层
+     * 截取贴纸图层：复制贴纸图片和变换，保存线程绘制时不再访问贴纸控件
      */
-    private void drawStickerLayers(Canvas canvas) {
+    private void captureStickerLayers(OverlaySnapshot overlays) {
         if (stickerContainer.getVisibility() != View.VISIBLE || stickers.isEmpty()) {
             return;
         }
-
-        // 计算图片显示区域
-        RectF imageRect = getImageDisplayRect();
-
-        // 计算缩放比例
-        float scaleX = currentBitmap.getWidth() / imageRect.width();
-        float scaleY = currentBitmap.getHeight() / imageRect.height();
-
-        // 创建一个临时Bitmap用于绘制贴纸
-        Bitmap tempBitmap = Bitmap.createBitmap(
-                currentBitmap.getWidth(),
-                currentBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        Canvas tempCanvas = new Canvas(tempBitmap);
-
-        // 保存Canvas状态
-        tempCanvas.save();
-
-        // 应用缩放，将Canvas坐标系映射到图片坐标系
-        tempCanvas.scale(scaleX, scaleY);
-
-        // 应用平移，将Canvas原点移动到图片显示区域
-        tempCanvas.translate(-imageRect.left, -imageRect.top);
-
-        // 按照Z轴顺序绘制所有贴纸（列表后面的在最上面）
+        // 按照Z轴顺序（列表后面的在最上面）
         for (DraggableStickerView sticker : stickers) {
-            drawStickerToCanvas(tempCanvas, sticker);
-        }
-
-        tempCanvas.restore();
-
-        // 将贴纸Bitmap绘制到最终Canvas
-        canvas.drawBitmap(tempBitmap, 0, 0, null);
-
-        // 回收临时Bitmap
-        tempBitmap.recycle();
-    }
-
-    /**
-     * 绘制单个贴纸到Canvas
-     */
-    private void drawStickerToCanvas(Canvas canvas, DraggableStickerView sticker) {
-        // 保存Canvas状态
-        canvas.save();
-
-        try {
-            // 获取贴纸的变换矩阵
-            Matrix transformMatrix = sticker.getTransformMatrix();
-
-            // 应用贴纸的变换矩阵
-            canvas.concat(transformMatrix);
-
-            // 获取贴纸Bitmap并绘制
             Bitmap stickerBitmap = sticker.getStickerBitmap();
-            if (stickerBitmap != null) {
-                // 应用贴纸的透明度
-                Paint paint = new Paint();
-                paint.setAlpha((int) (sticker.getAlpha() * 255));
-
-                canvas.drawBitmap(stickerBitmap, 0, 0, paint);
+            if (stickerBitmap == null || stickerBitmap.isRecycled()) {
+                continue;
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            // 恢复Canvas状态
-            canvas.restore();
+            overlays.addLayer(BitmapPool.copyOf(stickerBitmap), sticker.getTransformMatrix(),
+                    (int) (sticker.getAlpha() * 255));
         }
     }
 
@@ -658,16 +689,13 @@ public class EditImageActivity extends AppCompatActivity {
         try {
             // 将视图坐标转换为图片坐标
             RectF imageCropRect = convertViewRectToImageRect(currentCropRect);
-            Bitmap croppedBitmap = CropHelper.cropBitmap(currentBitmap, imageCropRect);
-
-            // 更新图片
-            if (currentBitmap != null && currentBitmap != originalBitmap) {
-                currentBitmap.recycle();
+            if (imageCropRect.width() < 1 || imageCropRect.height() < 1) {
+                Toast.makeText(this, "裁剪区域太小", Toast.LENGTH_SHORT).show();
+                return;
             }
-            currentBitmap = croppedBitmap;
-            imageView.setImageBitmap(currentBitmap);
-            imageView.resetZoom();
 
+            // 记录裁剪区域，由原图重新渲染
+            addCrop(imageCropRect);
             Toast.makeText(this, "裁剪完成", Toast.LENGTH_SHORT).show();
 
         } catch (Exception e) {
@@ -691,8 +719,8 @@ public class EditImageActivity extends AppCompatActivity {
         // 计算图片的实际显示区域
         float imageLeft = transX;
         float imageTop = transY;
-        float imageRight = imageLeft + currentBitmap.getWidth() * scale;
-        float imageBottom = imageTop + currentBitmap.getHeight() * scale;
+        float imageRight = imageLeft + currentImage.getWidth() * scale;
+        float imageBottom = imageTop + currentImage.getHeight() * scale;
 
         // 将视图坐标转换为图片坐标
         float left = (viewRect.left - imageLeft) / scale;
@@ -701,29 +729,33 @@ public class EditImageActivity extends AppCompatActivity {
         float bottom = (viewRect.bottom - imageTop) / scale;
 
         // 确保坐标在图片范围内
-        left = Math.max(0, Math.min(left, currentBitmap.getWidth()));
-        top = Math.max(0, Math.min(top, currentBitmap.getHeight()));
-        right = Math.max(0, Math.min(right, currentBitmap.getWidth()));
-        bottom = Math.max(0, Math.min(bottom, currentBitmap.getHeight()));
+        left = Math.max(0, Math.min(left, currentImage.getWidth()));
+        top = Math.max(0, Math.min(top, currentImage.getHeight()));
+        right = Math.max(0, Math.min(right, currentImage.getWidth()));
+        bottom = Math.max(0, Math.min(bottom, currentImage.getHeight()));
 
         return new RectF(left, top, right, bottom);
     }
 
     // 按比例裁剪
     private void cropWithRatio(float ratio) {
-        Bitmap croppedBitmap = CropHelper.cropBitmapWithRatio(currentBitmap, ratio);
-
-        if (currentBitmap != null && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
-        }
-        currentBitmap = croppedBitmap;
-        imageView.setImageBitmap(currentBitmap);
-        imageView.resetZoom();
+        addCrop(CropHelper.getCenterCropRect(currentImage.getWidth(), currentImage.getHeight(), ratio));
 
         String ratioName = CropHelper.getRatioName(ratio);
         Toast.makeText(this, "已应用 " + ratioName + " 裁剪", Toast.LENGTH_SHORT).show();
         exitCropMode();
     }
+
+    /**
+     * 记录裁剪操作
+     * @param imageCropRect 当前图片上的像素区域
+     */
+    private void addCrop(RectF imageCropRect) {
+        float width = currentImage.getWidth();
+        float height = currentImage.getHeight();
+        performEdit(EditCommand.crop(new RectF(imageCropRect.left / width, imageCropRect.top / height,
+                imageCropRect.right / width, imageCropRect.bottom / height)), null, null);
+    }
     private void rotateImage(float degrees) {
         // 更新当前旋转角度
         currentRotation += degrees;
@@ -736,15 +768,7 @@ public class EditImageActivity extends AppCompatActivity {
         }
 
         // 应用旋转
-        Bitmap rotatedBitmap = ImageProcessor.rotateBitmap(currentBitmap, degrees);
-
-        // 释放之前的位图
-        if (currentBitmap != null && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
-        }
-
-        currentBitmap = rotatedBitmap;
-        imageView.setImageBitmap(currentBitmap);
+        performEdit(EditCommand.rotate(degrees), null, null);
 
         // 显示旋转角度
         Toast.makeText(this, "已旋转 " + degrees + "°，当前角度: " + currentRotation + "°",
@@ -759,16 +783,8 @@ public class EditImageActivity extends AppCompatActivity {
             isFlippedVertical = !isFlippedVertical;
         }
 
-        // 应用翻转
-        Bitmap flippedBitmap = ImageProcessor.flipBitmap(currentBitmap, isFlippedHorizontal, isFlippedVertical);
-
-        // 释放之前的位图
-        if (currentBitmap != null && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
-        }
-
-        currentBitmap = flippedBitmap;
-        imageView.setImageBitmap(currentBitmap);
+        // 应用翻转（只记录这次切换的方向）
+        performEdit(EditCommand.flip(horizontal, vertical), null, null);
 
         // 显示翻转状态
         String message = "";
@@ -789,14 +805,8 @@ public class EditImageActivity extends AppCompatActivity {
         isFlippedHorizontal = false;
         isFlippedVertical = false;
 
-        // 重新加载原始图片
-        if (currentBitmap != null && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
-        }
-
-        currentBitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
-        imageView.setImageBitmap(currentBitmap);
-        imageView.resetZoom();
+        // 清除几何操作（包括裁剪），滤镜和调色保留
+        performEdit(EditCommand.resetGeometry(), null, null);
 
         Toast.makeText(this, "已重置旋转和翻转", Toast.LENGTH_SHORT).show();
     }
@@ -851,44 +861,269 @@ public class EditImageActivity extends AppCompatActivity {
         // 重新应用当前亮度设置
         if (currentAdjustMode == 0) {
             applyBrightness(currentBrightness);
+            recordAdjustment();
         }
     }
 
 
     private void applyBrightness(int brightness) {
-        Bitmap adjustedBitmap;
+        editGraph.getColor().setExtremeBrightness(!useEnhancedBrightness);
+        editGraph.getColor().setBrightness(brightness);
+        hasUncommittedAdjustment = true;
+        renderAdjustments();
+    }
+
+    private void applyContrast(int contrast) {
+        editGraph.getColor().setContrast(contrast);
+        hasUncommittedAdjustment = true;
+        renderAdjustments();
+    }
+
+    /**
+     * 执行一步可撤销的编辑：修改编辑记录、写入历史并重新渲染
+     */
+    private void performEdit(EditCommand command, Runnable onRendered, Runnable onFailed) {
+        // 先把还没记录的滑块调整写入历史，保证撤销顺序正确
+        recordAdjustment();
+        command.apply(editGraph);
+        editHistory.record(command, editGraph);
+        scheduleRender(onRendered, onFailed);
+    }
+
+    /**
+     * 把滑块的调整写入历史（松开滑块时调用），一次拖动只记录一步
+     */
+    private void recordAdjustment() {
+        if (!hasUncommittedAdjustment) {
+            return;
+        }
+        hasUncommittedAdjustment = false;
 
-        if (useEnhancedBrightness) {
-            // 使用增强亮度效果
-            adjustedBitmap = ImageProcessor.adjustBrightnessContrast(
-                    originalBitmap, brightness, currentContrast);
+        AdjustmentPipeline committed = editHistory.rebuild(editHistory.getPosition()).getColor();
+        AdjustmentPipeline color = editGraph.getColor();
+        if (committed.getBrightness() != color.getBrightness()
+                || committed.isExtremeBrightness() != color.isExtremeBrightness()) {
+            editHistory.record(EditCommand.brightness(color.getBrightness(), color.isExtremeBrightness()), editGraph);
+        }
+        if (committed.getContrast() != color.getContrast()) {
+            editHistory.record(EditCommand.contrast(color.getContrast()), editGraph);
+        }
+    }
+
+    /**
+     * 按编辑记录从原图重新渲染当前图片
+     * 拖动滑块时渲染代理图，否则交给后台渲染线程，新的请求会取代还没完成的旧请求
+     */
+    private void renderAdjustments() {
+        if (isAdjustPreviewing) {
+            renderAdjustmentPreview();
+            return;
+        }
+        scheduleRender(null, null);
+    }
+
+    /**
+     * 在后台按全分辨率渲染当前编辑记录
+     * @param onRendered 渲染结果显示之后执行，可以为 null
+     * @param onFailed 渲染失败时执行，可以为 null
+     */
+    private void scheduleRender(Runnable onRendered, Runnable onFailed) {
+        scheduleRender(-1, onRendered, onFailed);
+    }
+
+    /**
+     * @param spilledStep 优先从磁盘缓存读取该步骤的图片，-1 表示直接渲染
+     */
+    private void scheduleRender(int spilledStep, Runnable onRendered, Runnable onFailed) {
+        if (originalImage == null) {
+            return;
+        }
+
+        final EditGraph snapshot = editGraph.copy();
+        final Bitmap source = originalImage.get();
+        final int step = hasUncommittedAdjustment ? -1 : editHistory.getPosition();
+        // 备用缓冲交给任务独占，任务结束前主线程不再使用
+        final Bitmap reuse = spareBitmap;
+        spareBitmap = null;
+
+        renderScheduler.submitLatest(source, ticket -> {
+                    Bitmap spilled = spilledStep >= 0 ? editHistory.loadSpilledCheckpoint(spilledStep) : null;
+                    return spilled != null ? spilled : editRenderer.render(source, snapshot, reuse, ticket);
+                },
+                new RenderScheduler.Callback() {
+                    @Override
+                    public void onRendered(Bitmap result) {
+                        if (reuse != null && reuse != result) {
+                            keepSpareBitmap(reuse);
+                        }
+                        showRenderedBitmap(result, step);
+                        if (onRendered != null) {
+                            onRendered.run();
+                        }
+                    }
+
+                    @Override
+                    public void onDiscarded(Bitmap result) {
+                        keepSpareBitmap(result);
+                        if (reuse != result) {
+                            keepSpareBitmap(reuse);
+                        }
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        keepSpareBitmap(reuse);
+                        if (onFailed != null) {
+                            onFailed.run();
+                        } else {
+                            Toast.makeText(EditImageActivity.this, "处理失败", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * 显示渲染结果，替换当前图片
+     * @param step 结果对应的历史步骤，-1 表示不对应任何步骤
+     */
+    private void showRenderedBitmap(Bitmap result, int step) {
+        ImageHandle previous = currentImage;
+        int previousStep = currentStateStep;
+        currentImage = wrapImage(result);
+        currentStateStep = step;
+        imageView.setImageBitmap(result);
+        // 第 0 步没有任何编辑，结果与原图一致，可以继续显示原图分块
+        imageView.setTileSource(step == 0 ? tileSource : null);
+        if (previous == null || previous.getWidth() != result.getWidth()
+                || previous.getHeight() != result.getHeight()) {
+            // 裁剪或旋转后尺寸变化，重新适配显示
+            imageView.resetZoom();
+        }
+        if (!isAdjustPreviewing) {
+            releaseAdjustmentProxy();
+        }
+
+        if (previous != null) {
+            // 旧图片没有其他持有者（原图、保存线程）时，优先交给历史记录做检查点，否则留作下一次渲染的缓冲
+            Bitmap detached = previous.detach();
+            if (detached != null && (previousStep < 0
+                    || !editHistory.offerCheckpoint(previousStep, detached))) {
+                keepSpareBitmap(detached);
+            }
+        }
+    }
+
+    /**
+     * 留作备用缓冲；已有缓冲、尺寸不同或图片仍在使用时直接释放
+     */
+    private void keepSpareBitmap(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || isHeld(originalImage, bitmap)
+                || isHeld(currentImage, bitmap) || bitmap == spareBitmap) {
+            return;
+        }
+        boolean sameSize = currentImage != null && bitmap.getWidth() == currentImage.getWidth()
+                && bitmap.getHeight() == currentImage.getHeight();
+        if (spareBitmap == null && sameSize && bitmap.isMutable() && !renderScheduler.isInUse(bitmap)) {
+            spareBitmap = bitmap;
         } else {
-            // 使用超强亮度效果
-            adjustedBitmap = ImageProcessor.adjustBrightnessExtreme(
-                    originalBitmap, brightness);
+            renderScheduler.recycleWhenIdle(bitmap);
         }
+    }
 
-        // 释放之前的位图
-        if (currentBitmap != null && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
+    private static boolean isHeld(ImageHandle handle, Bitmap bitmap) {
+        return handle != null && handle.get() == bitmap;
+    }
+
+    /**
+     * 开始拖动滑块：在后台生成按显示大小缩小的代理图（几何和滤镜已应用），拖动过程只在代理图上调色
+     */
+    private void startAdjustmentPreview() {
+        if (originalImage == null) {
+            return;
+        }
+
+        // 编辑结果的尺寸
+        int[] size = new int[2];
+        editGraph.computeGeometry(originalImage.getWidth(), originalImage.getHeight(), size);
+        final int fullWidth = size[0];
+        final int fullHeight = size[1];
+
+        // 图片在屏幕上的显示比例，不超过ImageView本身的大小
+        float[] values = new float[9];
+        imageView.getImageMatrix().getValues(values);
+        float scale = Math.min(1f, Math.abs(values[Matrix.MSCALE_X]));
+        int viewLongSide = Math.max(imageView.getWidth(), imageView.getHeight());
+        if (viewLongSide > 0) {
+            scale = Math.min(scale, viewLongSide / (float) Math.max(fullWidth, fullHeight));
+        }
+        if (scale >= PROXY_MIN_SAVING) {
+            // 显示尺寸接近原图，代理图没有收益，直接全分辨率渲染
+            return;
         }
 
-        currentBitmap = adjustedBitmap;
-        imageView.setImageBitmap(currentBitmap);
+        isAdjustPreviewing = true;
+        releaseAdjustmentProxy();
+
+        // 同时作废之前还没完成的全分辨率渲染
+        final EditGraph snapshot = editGraph.copy();
+        final Bitmap source = originalImage.get();
+        final float proxyScale = scale;
+        renderScheduler.submitLatest(source,
+                ticket -> editRenderer.createPreviewSource(source, snapshot, proxyScale, ticket),
+                new RenderScheduler.Callback() {
+                    @Override
+                    public void onRendered(Bitmap result) {
+                        if (!isAdjustPreviewing) {
+                            BitmapPool.release(result);
+                            return;
+                        }
+                        proxySourceBitmap = result;
+                        proxyFullWidth = fullWidth;
+                        proxyFullHeight = fullHeight;
+                        renderAdjustmentPreview();
+                    }
+                });
     }
 
-    private void applyContrast(int contrast) {
-        // 使用标准对比度调节
-        Bitmap adjustedBitmap = ImageProcessor.adjustBrightnessContrast(
-                originalBitmap, currentBrightness, contrast);
+    /**
+     * 渲染代理图（复用同一个目标Bitmap，拖动过程中不分配内存）
+     * 代理图还没生成时只记录参数，生成后按最新参数渲染
+     */
+    private void renderAdjustmentPreview() {
+        if (proxySourceBitmap == null) {
+            return;
+        }
+        Bitmap rendered = editGraph.getColor().render(proxySourceBitmap, proxyTargetBitmap);
+        if (rendered == null) {
+            return;
+        }
 
-        // 释放之前的位图
-        if (currentBitmap != null && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
+        if (rendered != proxyTargetBitmap || !imageView.isShowingProxy()) {
+            proxyTargetBitmap = rendered;
+            imageView.setProxyBitmap(proxyTargetBitmap, proxyFullWidth, proxyFullHeight);
+        } else {
+            imageView.invalidate();
         }
+    }
 
-        currentBitmap = adjustedBitmap;
-        imageView.setImageBitmap(currentBitmap);
+    /**
+     * 松开滑块（调整已写入历史）：在后台按全分辨率重新渲染，完成后替换代理图。
+     * 没有使用代理图时也要渲染，拖动中的最后一次渲染不是历史中的步骤，不能作为检查点
+     */
+    private void commitAdjustmentPreview() {
+        isAdjustPreviewing = false;
+        scheduleRender(null, null);
+    }
+
+    private void releaseAdjustmentProxy() {
+        // 正在显示的代理图不能回收
+        if (imageView.isShowingProxy()) {
+            return;
+        }
+        renderScheduler.recycleWhenIdle(proxySourceBitmap);
+        renderScheduler.recycleWhenIdle(proxyTargetBitmap);
+        proxySourceBitmap = null;
+        proxyTargetBitmap = null;
     }
 
 
@@ -1090,113 +1325,132 @@ public class EditImageActivity extends AppCompatActivity {
     }
     // 显示滤镜选择对话框
     private void showFilterDialog() {
-        // 创建预览用的缩略图
-        Bitmap previewBitmap = createPreviewBitmap();
-
-        filterDialog.show(previewBitmap, new FilterDialog.OnFilterSelectedListener() {
+        // 对话框内部会生成按比例缩放的缩略图，并在后台逐个生成预览
+        filterDialog.show(currentImage.get(), new FilterDialog.OnFilterSelectedListener() {
             @Override
             public void onFilterSelected(FilterProcessor.FilterType filterType) {
                 applyFilter(filterType);
             }
+
+            @Override
+            public void onLutSelected(String lutName) {
+                applyLutFilter(lutName);
+            }
         });
     }
-    // 创建预览用的缩略图
-    private Bitmap createPreviewBitmap() {
-        if (currentBitmap != null) {
-            // 创建缩略图用于预览
-            int previewSize = 400;
-            return Bitmap.createScaledBitmap(
-                    currentBitmap,
-                    previewSize,
-                    previewSize,
-                    true
-            );
-        }
-        return null;
-    }
     // 应用滤镜效果
     private void applyFilter(FilterProcessor.FilterType filterType) {
         currentFilter = filterType;
-
         // 显示加载提示
         Toast.makeText(this, "正在应用滤镜...", Toast.LENGTH_SHORT).show();
 
-        // 在新线程中处理滤镜（避免阻塞UI）
-        new Thread(() -> {
-            try {
-                // 应用滤镜效果
-                Bitmap filteredBitmap = FilterProcessor.applyFilter(currentBitmap, filterType);
-
-                // 回到主线程更新UI
-                runOnUiThread(() -> {
-                    if (filteredBitmap != null) {
-                        // 释放之前的位图
-                        if (currentBitmap != null && currentBitmap != originalBitmap) {
-                            currentBitmap.recycle();
-                        }
-
-                        currentBitmap = filteredBitmap;
-                        imageView.setImageBitmap(currentBitmap);
+        // 记录到编辑记录，在后台渲染线程处理滤镜（避免阻塞UI），连续切换时只渲染最后一次
+        performEdit(EditCommand.filter(filterType), () -> {
+            String filterName = FilterProcessor.getFilterName(filterType);
+            Toast.makeText(EditImageActivity.this,
+                    "已应用" + filterName + "滤镜",
+                    Toast.LENGTH_SHORT).show();
+        }, () -> {
+            Toast.makeText(EditImageActivity.this,
+                    "滤镜应用失败",
+                    Toast.LENGTH_SHORT).show();
+        });
+    }
+    // 应用 3D LUT 滤镜
+    private void applyLutFilter(String lutName) {
+        Toast.makeText(this, "正在应用滤镜...", Toast.LENGTH_SHORT).show();
 
-                        String filterName = FilterProcessor.getFilterName(filterType);
-                        Toast.makeText(EditImageActivity.this,
-                                "已应用" + filterName + "滤镜",
-                                Toast.LENGTH_SHORT).show();
-                    }
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                runOnUiThread(() -> {
-                    Toast.makeText(EditImageActivity.this,
-                            "滤镜应用失败",
-                            Toast.LENGTH_SHORT).show();
-                });
+        final FilterProcessor.FilterType previousFilter = editGraph.getFilter();
+        final EditCommand command = EditCommand.lut(lutName);
+        currentFilter = FilterProcessor.FilterType.NONE;
+
+        // LUT 在渲染线程上加载和处理
+        performEdit(command, () -> {
+            Toast.makeText(EditImageActivity.this,
+                    "已应用" + LutLibrary.getDisplayName(EditImageActivity.this, lutName) + "滤镜",
+                    Toast.LENGTH_SHORT).show();
+        }, () -> {
+            // 加载失败，从历史中去掉这一步，恢复之前的编辑记录
+            if (editHistory.discard(command)) {
+                editGraph.restore(editHistory.rebuild(editHistory.getPosition()));
             }
-        }).start();
+            currentFilter = previousFilter;
+            Toast.makeText(EditImageActivity.this,
+                    "滤镜应用失败",
+                    Toast.LENGTH_SHORT).show();
+        });
     }
-    // 撤销滤镜
-    private void undoFilter() {
-        if (filterManager != null && filterManager.canUndo()) {
-            new Thread(() -> {
-                Bitmap previousBitmap = filterManager.undo();
+    // 撤销
+    private void undoEdit() {
+        recordAdjustment();
+        if (!editHistory.canUndo()) {
+            Toast.makeText(this, "没有可撤销的操作", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-                runOnUiThread(() -> {
-                    if (previousBitmap != null) {
-                        if (currentBitmap != null && currentBitmap != originalBitmap) {
-                            currentBitmap.recycle();
-                        }
+        String name = editHistory.getCommandName(editHistory.getPosition());
+        restoreEditState(editHistory.undo());
+        Toast.makeText(this, "已撤销" + name, Toast.LENGTH_SHORT).show();
+    }
 
-                        currentBitmap = previousBitmap;
-                        imageView.setImageBitmap(currentBitmap);
-                        Toast.makeText(this, "已撤销", Toast.LENGTH_SHORT).show();
-                    }
-                });
-            }).start();
+    // 重做
+    private void redoEdit() {
+        recordAdjustment();
+        if (!editHistory.canRedo()) {
+            Toast.makeText(this, "没有可重做的操作", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        int step = editHistory.redo();
+        restoreEditState(step);
+        Toast.makeText(this, "已重做" + editHistory.getCommandName(step), Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * 恢复到历史中的某一步：优先使用内存或磁盘中的检查点，否则从原图重新渲染
+     */
+    private void restoreEditState(int step) {
+        editGraph.restore(editHistory.rebuild(step));
+        syncEditControls();
+
+        Bitmap checkpoint = editHistory.takeCheckpoint(step);
+        if (checkpoint != null) {
+            renderScheduler.cancelPending();
+            showRenderedBitmap(checkpoint, step);
+        } else if (editHistory.hasSpilledCheckpoint(step)) {
+            // 在后台从磁盘缓存读取，读取失败时重新渲染
+            scheduleRender(step, null, null);
         } else {
-            Toast.makeText(this, "没有可撤销的操作", Toast.LENGTH_SHORT).show();
+            scheduleRender(null, null);
         }
     }
 
-    // 重做滤镜
-    private void redoFilter() {
-        if (filterManager != null && filterManager.canRedo()) {
-            new Thread(() -> {
-                Bitmap nextBitmap = filterManager.redo();
+    /**
+     * 按编辑记录同步界面上的状态（滑块、滤镜、旋转角度）
+     */
+    private void syncEditControls() {
+        AdjustmentPipeline color = editGraph.getColor();
+        currentBrightness = color.getBrightness();
+        currentContrast = color.getContrast();
+        useEnhancedBrightness = !color.isExtremeBrightness();
+        currentFilter = editGraph.getFilter();
 
-                runOnUiThread(() -> {
-                    if (nextBitmap != null) {
-                        if (currentBitmap != null && currentBitmap != originalBitmap) {
-                            currentBitmap.recycle();
-                        }
+        currentRotation = 0;
+        isFlippedHorizontal = false;
+        isFlippedVertical = false;
+        for (EditGraph.GeometryOp op : editGraph.getGeometry()) {
+            if (op.type == EditGraph.GeometryOp.Type.ROTATE) {
+                currentRotation = ((currentRotation + op.degrees) % 360 + 360) % 360;
+            } else if (op.type == EditGraph.GeometryOp.Type.FLIP) {
+                isFlippedHorizontal ^= op.horizontal;
+                isFlippedVertical ^= op.vertical;
+            }
+        }
 
-                        currentBitmap = nextBitmap;
-                        imageView.setImageBitmap(currentBitmap);
-                        Toast.makeText(this, "已重做", Toast.LENGTH_SHORT).show();
-                    }
-                });
-            }).start();
-        } else {
-            Toast.makeText(this, "没有可重做的操作", Toast.LENGTH_SHORT).show();
+        if (adjustmentPanel.getVisibility() == View.VISIBLE) {
+            int value = currentAdjustMode == 0 ? currentBrightness : currentContrast;
+            seekBarAdjust.setProgress(currentAdjustMode == 0 ? value + 150 : value + 50);
+            ((android.widget.TextView) findViewById(R.id.adjustmentValue)).setText(String.valueOf(value));
         }
     }
     private void saveImage() {
@@ -1257,77 +1511,76 @@ public class EditImageActivity extends AppCompatActivity {
 
         builder.show();
     }
-    //创建最终Bitmap（合并所有编辑效果）
-    private Bitmap createFinalBitmap() {
-        if (currentBitmap == null) {
-            return null;
-        }
-
-        // 创建最终Bitmap
-        Bitmap finalBitmap = Bitmap.createBitmap(
-                currentBitmap.getWidth(),
-                currentBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        Canvas canvas = new Canvas(finalBitmap);
-
-        //  绘制原始图片
-        canvas.drawBitmap(currentBitmap, 0, 0, null);
-
-        // 绘制贴纸图层
-        drawStickerLayers(canvas);
-        // 绘制文字图层
-        drawTextLayersReliable(canvas);
+    /**
+     * 在主线程截取叠加层（贴纸、文字），保存线程只读这份快照
+     */
+    private OverlaySnapshot captureOverlays() {
+        OverlaySnapshot overlays = new OverlaySnapshot(getImageDisplayRect());
+        captureStickerLayers(overlays);
+        captureTextLayers(overlays);
+        return overlays;
+    }
 
-        // 添加水印
-        finalBitmap = WatermarkUtils.addTextWatermark(finalBitmap, "训练营");
+    //合并所有编辑效果（直接绘制在可写的最终图片上，或全分辨率导出的条带上）
+    private void drawFinalLayers(EditGraph graph, Canvas canvas, int width, int height) {
+        // 绘制保存开始时截取的叠加层（贴纸、文字）
+        graph.drawOverlays(canvas, width, height);
 
-        return finalBitmap;
+        // 添加水印（保存时一直叠加绘制两次，两种导出方式保持一致）
+        WatermarkUtils.drawTextWatermark(canvas, "训练营", width, height);
+        WatermarkUtils.drawTextWatermark(canvas, "训练营", width, height);
     }
     // 开始保存过程
     private void startSaveProcess() {
+        if (currentImage == null) {
+            Toast.makeText(this, "无法生成最终图片", Toast.LENGTH_SHORT).show();
+            return;
+        }
         isSaving = true;
+        // 保存线程持有当前图片的引用，保存期间继续编辑也不会回收它
+        final ImageHandle image = currentImage.retain();
 
         // 显示进度对话框（带取消按钮）
         showCancelableProgressDialog();
 
+        // 编辑记录和叠加层都在开始保存时截取，保存期间继续编辑不影响结果
+        final EditGraph snapshot = editGraph.copy();
+        final OverlaySnapshot overlays = captureOverlays();
+        snapshot.addOverlay(overlays);
+
         // 启动保存线程
         saveThread = new Thread(() -> {
+            ImageHandle finalImage = image;
             try {
-                // 合并所有图层
-                Bitmap finalBitmap = createFinalBitmap();
-
-                if (finalBitmap == null) {
-                    runOnUiThread(() -> {
-                        hideProgressDialog();
-                        Toast.makeText(this, "无法生成最终图片", Toast.LENGTH_SHORT).show();
-                        isSaving = false;
-                    });
-                    return;
-                }
-
-                // 添加水印
-                Bitmap watermarkedBitmap = WatermarkUtils.addTextWatermark(finalBitmap, "训练营");
-
-                // 保存图片
-                Uri savedUri = imageSaver.saveImageToGallery(watermarkedBitmap, "PhotoEdit", null);
-
-                // 回收临时Bitmap
-                if (watermarkedBitmap != finalBitmap) {
-                    watermarkedBitmap.recycle();
-                }
-                if (finalBitmap != currentBitmap && finalBitmap != originalBitmap) {
-                    finalBitmap.recycle();
+                // 原图比工作分辨率大时在原图上重放编辑，否则保存工作分辨率的结果
+                Uri savedUri = saveFullResolution(snapshot, image.getWidth(), image.getHeight());
+                if (savedUri == null && !Thread.currentThread().isInterrupted()) {
+                    // 写时复制：界面仍在使用这张图片，要绘制叠加层时才复制一份，之后都在这一份上绘制
+                    finalImage = image.mutate();
+                    Bitmap finalBitmap = finalImage.get();
+
+                    // 合并所有图层
+                    drawFinalLayers(snapshot, new Canvas(finalBitmap), finalBitmap.getWidth(), finalBitmap.getHeight());
+
+                    // 保存图片
+                    savedUri = imageSaver.saveImageToGallery(finalBitmap, "PhotoEdit", null);
                 }
+                final Uri result = savedUri;
+                final boolean cancelled = Thread.currentThread().isInterrupted();
 
                 // 显示结果
                 runOnUiThread(() -> {
+                    if (destroyed) {
+                        return;
+                    }
                     hideProgressDialog();
                     isSaving = false;
 
-                    if (savedUri != null) {
-                        showSaveSuccessDialog(savedUri);
+                    if (cancelled) {
+                        return;
+                    }
+                    if (result != null) {
+                        showSaveSuccessDialog(result);
                     } else {
                         Toast.makeText(this, "保存失败", Toast.LENGTH_SHORT).show();
                     }
@@ -1336,108 +1589,78 @@ public class EditImageActivity extends AppCompatActivity {
             } catch (Exception e) {
                 e.printStackTrace();
                 runOnUiThread(() -> {
+                    if (destroyed) {
+                        return;
+                    }
                     hideProgressDialog();
                     isSaving = false;
                     Toast.makeText(this, "保存失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
+            } finally {
+                finalImage.release();
+                overlays.release();
             }
         });
 
         saveThread.start();
     }
 
-    private void drawTextLayersReliable(Canvas canvas) {
-        RelativeLayout textContainer = findViewById(R.id.textContainer);
-        if (textContainer.getVisibility() != View.VISIBLE || textViews.isEmpty()) {
-            return;
+    /**
+     * 原图比工作分辨率大时，在原图上重放编辑记录，分条带解码、处理并编码保存
+     * @return 保存结果；原图不比工作分辨率大、不支持分块解码或导出失败时返回 null
+     */
+    private Uri saveFullResolution(EditGraph snapshot, int workingWidth, int workingHeight) {
+        if (imageUri == null) {
+            return null;
+        }
+        FullResolutionExporter exporter;
+        try {
+            exporter = FullResolutionExporter.open(getContentResolver(), imageUri);
+        } catch (IOException e) {
+            Log.w(TAG, "无法全分辨率导出: " + e.getMessage());
+            return null;
         }
 
-        // 方法：直接截取整个文字容器，然后合并到图片上
-
-        // 获取图片显示区域
-        RectF imageRect = getImageDisplayRect();
-
-        //  计算缩放比例
-        float scaleX = currentBitmap.getWidth() / imageRect.width();
-        float scaleY = currentBitmap.getHeight() / imageRect.height();
-
-        // 创建一个与图片相同大小的临时Bitmap
-        Bitmap tempBitmap = Bitmap.createBitmap(
-                currentBitmap.getWidth(),
-                currentBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        Canvas tempCanvas = new Canvas(tempBitmap);
-
-        // 将文字容器绘制到临时Canvas
-        drawTextContainerToCanvas(tempCanvas, scaleX, scaleY, imageRect);
-
-        // 将临时Bitmap绘制到最终Canvas
-        canvas.drawBitmap(tempBitmap, 0, 0, null);
-
-        // 回收临时Bitmap
-        tempBitmap.recycle();
+        try {
+            int[] size = exporter.getOutputSize(snapshot);
+            if (size[0] <= workingWidth) {
+                return null;
+            }
+            return imageSaver.saveImageToGallery(outputStream -> exporter.export(this, snapshot,
+                    (canvas, width, height) -> drawFinalLayers(snapshot, canvas, width, height),
+                    workingWidth, workingHeight,
+                    memoryBudget.getTileCacheBytes(), ImageSaver.JPEG_QUALITY, outputStream),
+                    "PhotoEdit", null);
+        } finally {
+            exporter.close();
+        }
     }
 
-    private void drawTextContainerToCanvas(Canvas canvas, float scaleX, float scaleY, RectF imageRect) {
+    /**
+     * 截取文字图层：在主线程把文字绘制成图片，记录中心位置、缩放和旋转
+     */
+    private void captureTextLayers(OverlaySnapshot overlays) {
         RelativeLayout textContainer = findViewById(R.id.textContainer);
-
-        // 保存Canvas状态
-        canvas.save();
-
-        // 应用缩放，将Canvas坐标系映射到图片坐标系
-        canvas.scale(scaleX, scaleY);
-
-        // 应用平移，将Canvas原点移动到图片显示区域
-        canvas.translate(-imageRect.left, -imageRect.top);
-
-        // 绘制所有文字视图
-        for (DraggableTextView textView : textViews) {
-            drawTextToCanvas(canvas, textView);
+        if (textContainer.getVisibility() != View.VISIBLE || textViews.isEmpty()) {
+            return;
         }
-
-        canvas.restore();
-    }
-
-    private void drawTextToCanvas(Canvas canvas, DraggableTextView textView) {
-        // 获取文字在容器中的位置
-        float x = textView.getX();
-        float y = textView.getY();
-
-        // 获取文字中心点
-        float centerX = x + textView.getWidth() / 2f;
-        float centerY = y + textView.getHeight() / 2f;
-
-        // 保存Canvas状态
-        canvas.save();
-
-        try {
-            // 移动到文字中心点
-            canvas.translate(centerX, centerY);
-
-            // 应用缩放
-            canvas.scale(textView.getScaleFactor(), textView.getScaleFactor());
-
-            // 应用旋转
-            canvas.rotate(textView.getRotationAngle());
+        for (DraggableTextView textView : textViews) {
+            // 文字中心点（容器坐标）
+            float centerX = textView.getX() + textView.getWidth() / 2f;
+            float centerY = textView.getY() + textView.getHeight() / 2f;
 
             // 获取文字Bitmap（不包含变换）
             Bitmap textBitmap = createTextBitmapWithoutTransform(textView);
-            if (textBitmap != null) {
-                // 绘制文字（中心对齐）
-                canvas.drawBitmap(textBitmap,
-                        -textBitmap.getWidth() / 2f,
-                        -textBitmap.getHeight() / 2f,
-                        null);
-
-                textBitmap.recycle();
+            if (textBitmap == null) {
+                continue;
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            canvas.restore();
+            // 中心对齐，再依次旋转、缩放并移动到文字中心点
+            Matrix matrix = new Matrix();
+            matrix.setTranslate(-textBitmap.getWidth() / 2f, -textBitmap.getHeight() / 2f);
+            matrix.postRotate(textView.getRotationAngle());
+            matrix.postScale(textView.getScaleFactor(), textView.getScaleFactor());
+            matrix.postTranslate(centerX, centerY);
+            overlays.addLayer(textBitmap, matrix, 255);
         }
     }
 
@@ -1456,7 +1679,7 @@ public class EditImageActivity extends AppCompatActivity {
             textView.setTranslationY(0);
 
             // 创建Bitmap
-            Bitmap bitmap = Bitmap.createBitmap(
+            Bitmap bitmap = BitmapPool.obtainCleared(
                     textView.getWidth(),
                     textView.getHeight(),
                     Bitmap.Config.ARGB_8888
@@ -1529,8 +1752,8 @@ public class EditImageActivity extends AppCompatActivity {
 
         // 创建图片的边界
         RectF imageRect = new RectF(0, 0,
-                currentBitmap.getWidth(),
-                currentBitmap.getHeight());
+                currentImage.getWidth(),
+                currentImage.getHeight());
 
         // 应用ImageView的变换矩阵
         imageMatrix.mapRect(imageRect);
@@ -1568,8 +1791,8 @@ public class EditImageActivity extends AppCompatActivity {
             float imageY = relativeY - imageViewLocation[1] + containerLocation[1];
 
             // 考虑图片的缩放和平移
-            float scaleX = currentBitmap.getWidth() / imageRect.width();
-            float scaleY = currentBitmap.getHeight() / imageRect.height();
+            float scaleX = currentImage.getWidth() / imageRect.width();
+            float scaleY = currentImage.getHeight() / imageRect.height();
 
             // 转换为图片像素坐标
             float finalX = (imageX - imageRect.left) * scaleX;
@@ -1589,7 +1812,7 @@ public class EditImageActivity extends AppCompatActivity {
                         -textBitmap.getHeight() / 2f,
                         null);
 
-                textBitmap.recycle();
+                BitmapPool.release(textBitmap);
             }
 
         } catch (Exception e) {
@@ -1606,7 +1829,7 @@ public class EditImageActivity extends AppCompatActivity {
     private Bitmap createTextBitmap(DraggableTextView textView) {
         try {
             // 创建文字的Bitmap
-            Bitmap bitmap = Bitmap.createBitmap(
+            Bitmap bitmap = BitmapPool.obtainCleared(
                     textView.getWidth(),
                     textView.getHeight(),
                     Bitmap.Config.ARGB_8888
@@ -1781,23 +2004,85 @@ public class EditImageActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * 系统内存紧张时按级别缩减缓存，而不是等到分配失败
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        float retainRatio = MemoryBudget.retainRatioForTrimLevel(level);
+        if (retainRatio >= 1f || memoryBudget == null) {
+            return;
+        }
+        Log.w(TAG, "onTrimMemory(" + level + ")，缓存保留 " + retainRatio);
+
+        BitmapPool.trimToSize((long) (memoryBudget.getPoolBytes() * retainRatio));
+        editHistory.trimMemory(retainRatio);
+        if (tileSource != null) {
+            tileSource.trimMemory(retainRatio);
+        }
+        if (retainRatio < 0.5f) {
+            // 备用缓冲和滤镜预览都可以在下次使用时重新生成
+            renderScheduler.recycleWhenIdle(spareBitmap);
+            spareBitmap = null;
+            // 正在编辑的原图还被编辑页持有，只是不再缓存
+            DecodedImageCache.clear();
+            if (filterDialog != null) {
+                filterDialog.trimMemory();
+            }
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // 释放位图资源
-        if (originalBitmap != null && !originalBitmap.isRecycled()) {
-            originalBitmap.recycle();
+        destroyed = true;
+        // 取消还在进行的保存，保存线程只使用开始时截取的快照，结束后自行释放
+        if (saveThread != null && saveThread.isAlive()) {
+            saveThread.interrupt();
         }
-        if (currentBitmap != null && !currentBitmap.isRecycled() && currentBitmap != originalBitmap) {
-            currentBitmap.recycle();
+        imageView.setTileSource(null);
+        if (tileSource != null) {
+            tileSource.release();
+            tileSource = null;
         }
+        // 停止后台渲染，正在被读取的位图等任务结束后再释放
+        // （原图的句柄来自解码缓存，最后一个引用释放时直接放回缓冲池，不经过 recycleWhenIdle）
+        final ImageHandle original = originalImage;
+        final ImageHandle current = currentImage;
+        originalImage = null;
+        currentImage = null;
+        renderScheduler.release(() -> {
+            if (editRenderer != null) {
+                editRenderer.release();
+            }
+            if (original != null) {
+                original.release();
+            }
+            if (current != null) {
+                current.release();
+            }
+            // 编辑器是缓冲池的主要使用者，退出时不再保留空闲缓冲。
+            // 句柄的回收经主线程放回缓冲池，清空也排到主线程，在这些回收之后执行
+            runOnUiThread(BitmapPool::clear);
+        });
+        // 释放位图资源
+        if (placeholderBitmap != null) {
+            BitmapPool.release(placeholderBitmap);
+            placeholderBitmap = null;
+        }
+        renderScheduler.recycleWhenIdle(spareBitmap);
         // 释放贴纸资源
         for (DraggableStickerView sticker : stickers) {
             sticker.recycle();
         }
         stickers.clear();
-        if (filterManager != null) {
-            filterManager.cleanup();
+        if (editHistory != null) {
+            editHistory.clear();
+        }
+        if (filterDialog != null) {
+            filterDialog.release();
         }
+        renderScheduler.recycleWhenIdle(proxySourceBitmap);
     }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.example.photo;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+import java.io.IOException;
+
+/**
+ * 编辑记录渲染器：从原图计算 {@link EditGraph} 的结果。
+ * LUT 是逐像素变换，与旋转/翻转/裁剪可以交换顺序，所以先在原图上处理并缓存，
+ * 之后几何变换、矩阵滤镜和调色合并成一次绘制。
+ * 只调整几何或调色时直接从 LUT 缓存绘制一次，不会重新计算 LUT。
+ * 渲染请求被取代后在 LUT 的条带之间和最终绘制之前提前结束，不再算完整个结果。
+ *
+ * 缓存没有加锁，只能在同一个渲染线程上使用。
+ */
+public class EditRenderer {
+
+    private final Context context;
+
+    // LUT 阶段缓存：对应的源图和 LUT 名称
+    private Bitmap lutSource;
+    private String lutStageName;
+    private Bitmap lutStage;
+
+    public EditRenderer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * 渲染完整结果（不含叠加层）
+     * @param reuse 可复用的目标图，可以为 null
+     * @param ticket 渲染请求，已过期时提前结束
+     * @return 请求已过期时为 null
+     */
+    public Bitmap render(Bitmap source, EditGraph graph, Bitmap reuse, RenderScheduler.Ticket ticket)
+            throws IOException {
+        if (source == null || source.isRecycled()) {
+            return null;
+        }
+
+        Bitmap base = getFilterStage(source, graph, ticket);
+        if (base == null || ticket.isCancelled()) {
+            return null;
+        }
+        int[] size = new int[2];
+        Matrix geometry = graph.computeGeometry(base.getWidth(), base.getHeight(), size);
+        return graph.getColor().render(base, geometry, size[0], size[1], reuse);
+    }
+
+    /**
+     * 生成拖动滑块时使用的代理图：几何变换和滤镜之后、调色之前的结果，按比例缩小
+     * 之后调色只需在代理图上绘制
+     * @return 请求已过期时为 null
+     */
+    public Bitmap createPreviewSource(Bitmap source, EditGraph graph, float scale, RenderScheduler.Ticket ticket)
+            throws IOException {
+        if (source == null || source.isRecycled()) {
+            return null;
+        }
+
+        Bitmap base = getFilterStage(source, graph, ticket);
+        if (base == null || ticket.isCancelled()) {
+            return null;
+        }
+        int[] size = new int[2];
+        Matrix geometry = graph.computeGeometry(base.getWidth(), base.getHeight(), size);
+        geometry.postScale(scale, scale);
+
+        int width = Math.max(1, Math.round(size[0] * scale));
+        int height = Math.max(1, Math.round(size[1] * scale));
+        Bitmap preview = BitmapPool.obtainCleared(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(preview);
+        canvas.drawBitmap(base, geometry, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return preview;
+    }
+
+    /**
+     * 释放缓存
+     */
+    public void release() {
+        if (lutStage != null && !lutStage.isRecycled()) {
+            BitmapPool.release(lutStage);
+        }
+        lutStage = null;
+        lutSource = null;
+        lutStageName = null;
+    }
+
+    /**
+     * 获取滤镜阶段的结果：没有 LUT 时就是源图，否则使用缓存
+     * @return 计算 LUT 期间请求过期时为 null
+     */
+    private Bitmap getFilterStage(Bitmap source, EditGraph graph, RenderScheduler.Ticket ticket)
+            throws IOException {
+        String name = graph.getLutName();
+        if (name == null) {
+            // 不再使用 LUT，释放整幅图大小的缓存
+            release();
+            return source;
+        }
+
+        if (lutStage != null && !lutStage.isRecycled()
+                && lutSource == source && name.equals(lutStageName)) {
+            return lutStage;
+        }
+
+        CubeLut lut = LutLibrary.get(context, name);
+        if (lut == null) {
+            throw new IOException("无法加载LUT: " + name);
+        }
+
+        // 尺寸一致时复用之前的缓存
+        Bitmap target = lutStage;
+        if (target == null || target.isRecycled()
+                || target.getWidth() != source.getWidth() || target.getHeight() != source.getHeight()) {
+            release();
+            target = BitmapPool.obtain(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
+        }
+        if (!ImageProcessor.applyKernel(source, target, lut, ticket::isCancelled)) {
+            // 只算了一部分，不能作为缓存
+            lutStage = target;
+            lutSource = null;
+            lutStageName = null;
+            return null;
+        }
+
+        lutStage = target;
+        lutSource = source;
+        lutStageName = name;
+        return lutStage;
+    }
+}
@@ -11,25 +11,51 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import androidx.appcompat.app.AppCompatActivity;
+
 import com.example.photo.FilterProcessor.FilterType;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class FilterDialog {
 
+    // 预览缩略图的最长边
+    private static final int PREVIEW_SIZE = 200;
+
     private Context context;
-    private Bitmap originalBitmap;
+    private AppCompatActivity activity;
     private OnFilterSelectedListener listener;
 
     private List<FilterItem> filterItems = new ArrayList<>();
 
+    // 预览在共用的后台线程池中以预取优先级生成，完成后逐个回到主线程显示
+    private final List<BackgroundExecutor.Job> pendingPreviews = new ArrayList<>();
+    private int showGeneration = 0;
+
+    // 预览缓存：只在基础图片变化时失效（只在主线程访问）
+    private final Map<String, Bitmap> previewCache = new HashMap<>();
+    private String previewCacheKey;
+    private Bitmap thumbnail;
+
     public interface OnFilterSelectedListener {
         void onFilterSelected(FilterType filterType);
+
+        /**
+         * 选中了 3D LUT 滤镜（assets/luts 中的 .cube 文件名）
+         */
+        default void onLutSelected(String lutName) {
+        }
     }
 
-    public FilterDialog(Context context) {
-        this.context = context;
+    /**
+     * @param activity 编辑页，预览任务绑定它的生命周期
+     */
+    public FilterDialog(AppCompatActivity activity) {
+        this.context = activity;
+        this.activity = activity;
         initFilterItems();
     }
 
@@ -46,11 +72,20 @@ public class FilterDialog {
         filterItems.add(new FilterItem(FilterType.CONTRAST, "高对比"));
         filterItems.add(new FilterItem(FilterType.SEPIA, "怀旧"));
         filterItems.add(new FilterItem(FilterType.INVERT, "反色"));
+
+        // 内置的 3D LUT 滤镜排在矩阵滤镜后面
+        for (String lutName : LutLibrary.listNames(context)) {
+            filterItems.add(new FilterItem(lutName, LutLibrary.getDisplayName(context, lutName)));
+        }
     }
 
-    public void show(Bitmap previewBitmap, OnFilterSelectedListener listener) {
+    /**
+     * 显示滤镜对话框
+     * @param sourceBitmap 当前编辑的图片，只用来生成一张缩略图，不会被修改
+     */
+    public void show(Bitmap sourceBitmap, OnFilterSelectedListener listener) {
         this.listener = listener;
-        this.originalBitmap = previewBitmap;
+        prepareThumbnail(sourceBitmap);
 
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
         View dialogView = LayoutInflater.from(context).inflate(R.layout.dialog_filter, null);
@@ -62,13 +97,87 @@ public class FilterDialog {
         AlertDialog dialog = builder.create();
 
         // 创建滤镜预览项
+        showGeneration++;
         createFilterItems(filterContainer, dialog);
 
         btnCancel.setOnClickListener(v -> dialog.dismiss());
+        dialog.setOnDismissListener(d -> cancelPendingPreviews());
 
         dialog.show();
     }
 
+    /**
+     * 取消还没完成的预览并释放缓存（Activity 销毁时调用）
+     */
+    public void release() {
+        cancelPendingPreviews();
+        previewCache.clear();
+        previewCacheKey = null;
+        thumbnail = null;
+    }
+
+    /**
+     * 内存紧张时清空缩略图和预览缓存，下次打开对话框时重新生成
+     */
+    public void trimMemory() {
+        cancelPendingPreviews();
+        previewCache.clear();
+        previewCacheKey = null;
+        thumbnail = null;
+    }
+
+    /**
+     * 基础图片变化时重新生成缩略图并清空预览缓存
+     */
+    private void prepareThumbnail(Bitmap sourceBitmap) {
+        String key = buildStateKey(sourceBitmap);
+        if (key != null && key.equals(previewCacheKey) && thumbnail != null) {
+            return;
+        }
+
+        cancelPendingPreviews();
+        // 旧的预览可能还显示在已关闭的对话框中，交给GC回收，不手动recycle
+        previewCache.clear();
+        previewCacheKey = key;
+        thumbnail = createThumbnail(sourceBitmap);
+    }
+
+    /**
+     * 图片状态标识：同一个Bitmap的像素每次被修改，generationId 都会变化
+     */
+    private static String buildStateKey(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return null;
+        }
+        return System.identityHashCode(bitmap) + ":" + bitmap.getGenerationId()
+                + ":" + bitmap.getWidth() + "x" + bitmap.getHeight();
+    }
+
+    /**
+     * 按原图比例缩放的缩略图，所有滤镜预览共用
+     */
+    private static Bitmap createThumbnail(Bitmap sourceBitmap) {
+        if (sourceBitmap == null || sourceBitmap.isRecycled()) {
+            return null;
+        }
+
+        try {
+            int width = sourceBitmap.getWidth();
+            int height = sourceBitmap.getHeight();
+            float scale = Math.min(1f, PREVIEW_SIZE / (float) Math.max(width, height));
+            if (scale >= 1f) {
+                return sourceBitmap.copy(Bitmap.Config.ARGB_8888, false);
+            }
+            return Bitmap.createScaledBitmap(sourceBitmap,
+                    Math.max(1, Math.round(width * scale)),
+                    Math.max(1, Math.round(height * scale)),
+                    true);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     private void createFilterItems(LinearLayout container, AlertDialog dialog) {
         container.removeAllViews();
 
@@ -81,16 +190,22 @@ public class FilterDialog {
             // 设置滤镜名称
             filterName.setText(filterItem.name);
 
-            // 生成滤镜预览（使用缩略图提高性能）
-            Bitmap preview = createFilterPreview(filterItem.type);
-            if (preview != null) {
-                previewImage.setImageBitmap(preview);
+            // 有缓存直接显示，否则在后台生成
+            Bitmap cached = previewCache.get(filterItem.getKey());
+            if (cached != null) {
+                previewImage.setImageBitmap(cached);
+            } else {
+                schedulePreview(filterItem, previewImage);
             }
 
             // 设置点击事件
             filterView.setOnClickListener(v -> {
                 if (listener != null) {
-                    listener.onFilterSelected(filterItem.type);
+                    if (filterItem.isLut()) {
+                        listener.onLutSelected(filterItem.lutName);
+                    } else {
+                        listener.onFilterSelected(filterItem.type);
+                    }
                 }
                 dialog.dismiss();
             });
@@ -108,23 +223,58 @@ public class FilterDialog {
         }
     }
 
-    private Bitmap createFilterPreview(FilterType filterType) {
-        if (originalBitmap == null) {
-            return null;
+    /**
+     * 在后台生成单个滤镜预览，完成后回到主线程填充并写入缓存；用不上的预览放回缓冲池
+     */
+    private void schedulePreview(FilterItem filterItem, ImageView previewImage) {
+        final Bitmap source = thumbnail;
+        final String cacheKey = previewCacheKey;
+        final int generation = showGeneration;
+        if (source == null) {
+            return;
         }
 
-        try {
-            // 创建缩略图以提高预览性能
-            int previewSize = 200; // 预览图大小
-            Bitmap thumbnail = Bitmap.createScaledBitmap(
-                    originalBitmap,
-                    previewSize,
-                    previewSize,
-                    true
-            );
+        pendingPreviews.add(BackgroundExecutor.submit(activity, BackgroundExecutor.Priority.PREFETCH, job -> {
+            Bitmap preview = createFilterPreview(source, filterItem);
+            if (preview == null) {
+                return;
+            }
+            job.post(() -> {
+                // 基础图片已经变化，结果作废
+                if (cacheKey == null || !cacheKey.equals(previewCacheKey)) {
+                    BitmapPool.release(preview);
+                    return;
+                }
+                Bitmap cached = previewCache.get(filterItem.getKey());
+                if (cached == null) {
+                    previewCache.put(filterItem.getKey(), preview);
+                    cached = preview;
+                } else {
+                    // 已经有其他对话框生成的预览
+                    BitmapPool.release(preview);
+                }
+                if (generation == showGeneration) {
+                    previewImage.setImageBitmap(cached);
+                }
+            }, () -> BitmapPool.release(preview));
+        }));
+    }
 
+    private void cancelPendingPreviews() {
+        for (BackgroundExecutor.Job job : pendingPreviews) {
+            job.cancel();
+        }
+        pendingPreviews.clear();
+    }
+
+    private Bitmap createFilterPreview(Bitmap source, FilterItem filterItem) {
+        try {
             // 应用滤镜效果
-            return FilterProcessor.applyFilter(thumbnail, filterType);
+            if (filterItem.isLut()) {
+                return FilterProcessor.applyLutFilter(source,
+                        LutLibrary.get(context, filterItem.lutName));
+            }
+            return FilterProcessor.applyFilter(source, filterItem.type);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -133,11 +283,26 @@ public class FilterDialog {
 
     private static class FilterItem {
         FilterType type;
+        String lutName; // 不为空时表示 3D LUT 滤镜
         String name;
 
         FilterItem(FilterType type, String name) {
             this.type = type;
             this.name = name;
         }
+
+        FilterItem(String lutName, String name) {
+            this.type = FilterType.NONE;
+            this.lutName = lutName;
+            this.name = name;
+        }
+
+        boolean isLut() {
+            return lutName != null;
+        }
+
+        String getKey() {
+            return isLut() ? "lut:" + lutName : type.name();
+        }
     }
 }
\ No newline at end of file
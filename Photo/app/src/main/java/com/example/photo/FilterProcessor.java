@@ -2,10 +2,11 @@ package com.example.photo;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 
 public class FilterProcessor {
 
@@ -25,71 +26,95 @@ public class FilterProcessor {
 
     /**
      * 应用滤镜效果
+     * 直接从原图一次绘制到新的Bitmap，不再先复制一份
      */
     public static Bitmap applyFilter(Bitmap originalBitmap, FilterType filterType) {
         if (originalBitmap == null) {
             return null;
         }
 
-        // 创建新的Bitmap用于处理
-        Bitmap resultBitmap = originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
+        if (filterType == null || filterType == FilterType.NONE) {
+            return BitmapPool.copyOf(originalBitmap);
+        }
+
+        return applyColorMatrix(originalBitmap, getFilterMatrix(filterType));
+    }
+
+    /**
+     * 应用 3D LUT 滤镜（多核分块处理）
+     */
+    public static Bitmap applyLutFilter(Bitmap originalBitmap, CubeLut lut) {
+        if (originalBitmap == null) {
+            return null;
+        }
+        if (lut == null) {
+            return BitmapPool.copyOf(originalBitmap);
+        }
+        return ImageProcessor.applyKernel(originalBitmap, lut);
+    }
+
+    /**
+     * 使用颜色矩阵从源图绘制出结果图（只绘制一次）
+     */
+    public static Bitmap applyColorMatrix(Bitmap source, ColorMatrix matrix) {
+        Bitmap result = BitmapPool.obtain(source.getWidth(), source.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(result);
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        // 池中取出的缓冲内容未定义，直接覆盖而不是混合
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+        canvas.drawBitmap(source, 0, 0, paint);
+        return result;
+    }
+
+    /**
+     * 获取滤镜对应的颜色矩阵（原图返回单位矩阵）
+     * 返回新的实例，调用方可以直接与其他矩阵合并
+     */
+    public static ColorMatrix getFilterMatrix(FilterType filterType) {
+        if (filterType == null) {
+            return new ColorMatrix();
+        }
 
         switch (filterType) {
             case GRAYSCALE:
-                return applyGrayscale(resultBitmap);
+                return createGrayscaleMatrix();
             case VINTAGE:
-                return applyVintage(resultBitmap);
+                return createVintageMatrix();
             case FRESH:
-                return applyFresh(resultBitmap);
+                return createFreshMatrix();
             case WARM:
-                return applyWarm(resultBitmap);
+                return createWarmMatrix();
             case COOL:
-                return applyCool(resultBitmap);
+                return createCoolMatrix();
             case BRIGHT:
-                return applyBright(resultBitmap);
+                return createBrightMatrix();
             case CONTRAST:
-                return applyContrast(resultBitmap);
+                return createContrastMatrix();
             case SEPIA:
-                return applySepia(resultBitmap);
+                return createSepiaMatrix();
             case INVERT:
-                return applyInvert(resultBitmap);
+                return createInvertMatrix();
             case NONE:
             default:
-                return originalBitmap.copy(Bitmap.Config.ARGB_8888, true);
+                return new ColorMatrix();
         }
     }
 
     /**
      * 黑白滤镜
      */
-    private static Bitmap applyGrayscale(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
+    private static ColorMatrix createGrayscaleMatrix() {
         ColorMatrix matrix = new ColorMatrix();
         matrix.setSaturation(0); // 去饱和，变成灰度
-
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        return matrix;
     }
 
     /**
      * 复古滤镜
      */
-    private static Bitmap applyVintage(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
+    private static ColorMatrix createVintageMatrix() {
         // 复古效果：降低饱和度，增加红色通道，降低蓝色通道
         ColorMatrix matrix = new ColorMatrix();
 
@@ -106,24 +131,13 @@ public class FilterProcessor {
 
         ColorMatrix colorAdjust = new ColorMatrix(mat);
         matrix.postConcat(colorAdjust);
-
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        return matrix;
     }
 
     /**
      * 清新滤镜（提高亮度和饱和度）
      */
-    private static Bitmap applyFresh(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
+    private static ColorMatrix createFreshMatrix() {
         ColorMatrix matrix = new ColorMatrix();
 
         // 提高饱和度
@@ -139,182 +153,88 @@ public class FilterProcessor {
 
         ColorMatrix brightnessMatrix = new ColorMatrix(brightnessMat);
         matrix.postConcat(brightnessMatrix);
-
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        return matrix;
     }
 
     /**
      * 暖色调滤镜（增加红色和黄色）
      */
-    private static Bitmap applyWarm(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
+    private static ColorMatrix createWarmMatrix() {
         // 暖色调：增强红色和黄色，减弱蓝色
-        ColorMatrix matrix = new ColorMatrix();
-
-        float[] mat = new float[] {
+        return new ColorMatrix(new float[] {
                 1.2f, 0, 0, 0, 0,    // 增强红色
                 0, 1.1f, 0, 0, 0,    // 增强绿色（暖黄色）
                 0, 0, 0.9f, 0, 0,    // 减弱蓝色
                 0, 0, 0, 1, 0        // 透明度不变
-        };
-
-        matrix.set(mat);
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        });
     }
 
     /**
      * 冷色调滤镜（增加蓝色和青色）
      */
-    private static Bitmap applyCool(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
+    private static ColorMatrix createCoolMatrix() {
         // 冷色调：增强蓝色和青色，减弱红色
-        ColorMatrix matrix = new ColorMatrix();
-
-        float[] mat = new float[] {
+        return new ColorMatrix(new float[] {
                 0.9f, 0, 0, 0, 0,    // 减弱红色
                 0, 1.0f, 0, 0, 0,    // 绿色不变
                 0, 0, 1.2f, 0, 0,    // 增强蓝色
                 0, 0, 0, 1, 0        // 透明度不变
-        };
-
-        matrix.set(mat);
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        });
     }
 
     /**
      * 明亮滤镜
      */
-    private static Bitmap applyBright(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
-        ColorMatrix matrix = new ColorMatrix();
-
+    private static ColorMatrix createBrightMatrix() {
         // 提高亮度
-        float[] mat = new float[] {
+        return new ColorMatrix(new float[] {
                 1.3f, 0, 0, 0, 30,
                 0, 1.3f, 0, 0, 30,
                 0, 0, 1.3f, 0, 30,
                 0, 0, 0, 1, 0
-        };
-
-        matrix.set(mat);
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        });
     }
 
     /**
      * 高对比度滤镜
      */
-    private static Bitmap applyContrast(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
-        ColorMatrix matrix = new ColorMatrix();
-
+    private static ColorMatrix createContrastMatrix() {
         // 提高对比度
         float contrast = 1.5f;
         float translate = (-0.5f * contrast + 0.5f) * 255;
 
-        float[] mat = new float[] {
+        return new ColorMatrix(new float[] {
                 contrast, 0, 0, 0, translate,
                 0, contrast, 0, 0, translate,
                 0, 0, contrast, 0, translate,
                 0, 0, 0, 1, 0
-        };
-
-        matrix.set(mat);
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        });
     }
 
     /**
      * 怀旧（深褐色）滤镜
      */
-    private static Bitmap applySepia(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
-        ColorMatrix matrix = new ColorMatrix();
-
+    private static ColorMatrix createSepiaMatrix() {
         // 怀旧滤镜矩阵
-        float[] mat = new float[] {
+        return new ColorMatrix(new float[] {
                 0.393f, 0.769f, 0.189f, 0, 0,
                 0.349f, 0.686f, 0.168f, 0, 0,
                 0.272f, 0.534f, 0.131f, 0, 0,
                 0, 0, 0, 1, 0
-        };
-
-        matrix.set(mat);
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        });
     }
 
     /**
      * 反色滤镜
      */
-    private static Bitmap applyInvert(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
-        Paint paint = new Paint();
-
-        ColorMatrix matrix = new ColorMatrix();
-
+    private static ColorMatrix createInvertMatrix() {
         // 反色矩阵
-        float[] mat = new float[] {
+        return new ColorMatrix(new float[] {
                 -1, 0, 0, 0, 255,
                 0, -1, 0, 0, 255,
                 0, 0, -1, 0, 255,
                 0, 0, 0, 1, 0
-        };
-
-        matrix.set(mat);
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(bitmap, 0, 0, paint);
-
-        return result;
+        });
     }
 
     /**
@@ -8,11 +8,14 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class FolderAdapter extends RecyclerView.Adapter<FolderAdapter.ViewHolder> {
 
@@ -63,6 +66,41 @@ public class FolderAdapter extends RecyclerView.Adapter<FolderAdapter.ViewHolder
         return folderList.size();
     }
 
+    /**
+     * 替换为新的文件夹列表，只通知有变化的位置
+     */
+    public void updateFolders(List<FolderItem> folders) {
+        List<FolderItem> oldFolders = new ArrayList<>(folderList);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldFolders.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return folders.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldFolders.get(oldPosition).getBucketId() == folders.get(newPosition).getBucketId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                FolderItem oldFolder = oldFolders.get(oldPosition);
+                FolderItem newFolder = folders.get(newPosition);
+                return oldFolder.getImageCount() == newFolder.getImageCount()
+                        && oldFolder.getCoverId() == newFolder.getCoverId()
+                        && Objects.equals(oldFolder.getName(), newFolder.getName());
+            }
+        }, false);
+        folderList.clear();
+        folderList.addAll(folders);
+        diff.dispatchUpdatesTo(this);
+    }
+
     static class ViewHolder extends RecyclerView.ViewHolder {
         ImageView coverImage;
         TextView folderName;
@@ -0,0 +1,46 @@
+package com.example.photo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 文件夹统计：按 BUCKET_ID 汇总图片索引，同名的不同文件夹（例如两个 "Camera"）分开统计。
+ * 直接使用索引中每行的文件夹序号，计数和封面都存在按序号排列的基本类型数组里，
+ * 遍历一遍索引即可完成，不查询图片表，也不为每行创建对象。
+ */
+public final class FolderAggregator {
+
+    private FolderAggregator() {
+    }
+
+    /**
+     * @param images 按添加时间倒序排列的图片索引
+     * @return 文件夹列表，按最新一张图片的时间倒序，封面是文件夹中最新的一张
+     */
+    public static List<FolderItem> aggregate(MediaIndex images) {
+        int slotCount = images.getBucketSlotCount();
+        int[] counts = new int[slotCount];
+        int[] covers = new int[slotCount];
+        Arrays.fill(covers, -1);
+        // 按第一次出现的顺序记录文件夹，即最新一张图片的顺序
+        int[] order = new int[slotCount];
+        int folderCount = 0;
+
+        for (int i = 0; i < images.size(); i++) {
+            int slot = images.getBucketSlot(i);
+            if (counts[slot]++ == 0) {
+                covers[slot] = i;
+                order[folderCount++] = slot;
+            }
+        }
+
+        List<FolderItem> folders = new ArrayList<>(folderCount);
+        for (int k = 0; k < folderCount; k++) {
+            int slot = order[k];
+            folders.add(new FolderItem(images.getBucketIdOfSlot(slot), images.getBucketNameOfSlot(slot),
+                    images.getId(covers[slot]), counts[slot]));
+        }
+        return folders;
+    }
+}
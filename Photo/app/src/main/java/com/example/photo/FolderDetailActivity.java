@@ -1,31 +1,47 @@
 package com.example.photo;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
+import android.util.Log;
 import android.view.View;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.example.photo.ImageItem;
+public class FolderDetailActivity extends AppCompatActivity {
 
-import java.util.ArrayList;
-import java.util.List;
+    private static final String TAG = "FolderDetailActivity";
 
-public class FolderDetailActivity extends AppCompatActivity {
+    // 按 (DATE_ADDED, _ID) 分页读取：第一页只取一屏多一点，之后随滚动加载，
+    // 打开大文件夹和小文件夹一样快
+    private static final int FIRST_PAGE_SIZE = 60;
+    private static final int PAGE_SIZE = 300;
+    // 距离末尾不足这么多张时预加载下一页
+    private static final int PREFETCH_DISTANCE = 150;
 
     private RecyclerView recyclerView;
     private GalleryAdapter adapter;
-    private List<ImageItem> imageList = new ArrayList<>();
+    private MediaIndex images = new MediaIndex();
     private String folderName;
-    private String folderPath;
+    private long bucketId;
+    private MediaPageLoader pageLoader;
+    private boolean loading;
+    // 分页查询失败后不再随滚动重试，等下次同步之后再读
+    private boolean pageFailed;
+
+    // 增量同步：水位在加载第一页之前记录，之后只查询变化的行
+    private MediaSync.Watermark watermark;
+    private MediaSync.ChangeObserver changeObserver;
+    private boolean syncing;
+    private boolean syncPending;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,10 +50,17 @@ public class FolderDetailActivity extends AppCompatActivity {
 
         // 获取传递的文件夹信息
         folderName = getIntent().getStringExtra("folder_name");
-        folderPath = getIntent().getStringExtra("folder_path");
+        bucketId = getIntent().getLongExtra("bucket_id", 0);
 
         initViews();
         loadFolderImages();
+        changeObserver = MediaSync.observe(this, this::requestSync);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        changeObserver.close();
     }
 
     private void initViews() {
@@ -50,95 +73,149 @@ public class FolderDetailActivity extends AppCompatActivity {
         recyclerView = findViewById(R.id.recyclerView);
         recyclerView.setLayoutManager(new GridLayoutManager(this, 3));
 
-        adapter = new GalleryAdapter(this, imageList, new GalleryAdapter.OnImageClickListener() {
+        adapter = new GalleryAdapter(this, images, new GalleryAdapter.OnImageClickListener() {
             @Override
-            public void onImageClick(ImageItem imageItem) {
-                openEditActivity(imageItem.getUri());
+            public void onImageClick(Uri imageUri) {
+                openEditActivity(imageUri);
             }
 
             @Override
-            public void onImageLongClick(ImageItem imageItem) {
-                showImagePreview(imageItem.getUri());
+            public void onImageLongClick(Uri imageUri) {
+                showImagePreview(imageUri);
             }
         });
 
         recyclerView.setAdapter(adapter);
 
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                checkLoadMore();
+            }
+        });
+
         // 设置空视图
         View emptyView = findViewById(R.id.empty_view);
         adapter.setEmptyView(emptyView);
     }
 
     private void loadFolderImages() {
-        new Thread(() -> {
-            List<ImageItem> images = getImagesByFolder();
-            runOnUiThread(() -> {
-                imageList.clear();
-                imageList.addAll(images);
-                adapter.notifyDataSetChanged();
-
-                if (images.isEmpty()) {
-                    findViewById(R.id.empty_view).setVisibility(View.VISIBLE);
+        pageLoader = new MediaPageLoader(getContentResolver(), getFolderSelection(), getFolderSelectionArgs());
+        loadNextPage(FIRST_PAGE_SIZE);
+    }
+
+    /**
+     * 滚动到距离末尾不足 PREFETCH_DISTANCE 张时加载下一页
+     */
+    private void checkLoadMore() {
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager == null) {
+            return;
+        }
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible + PREFETCH_DISTANCE >= adapter.getItemCount()) {
+            loadNextPage(PAGE_SIZE);
+        }
+    }
+
+    private void loadNextPage(int pageSize) {
+        MediaPageLoader loader = pageLoader;
+        // 同步期间不追加新页，保证同步基于的内容不变
+        if (loading || syncing || pageFailed || loader.isExhausted()) {
+            return;
+        }
+        loading = true;
+        boolean firstLoad = watermark == null;
+        Context context = getApplicationContext();
+        // 第一页是首屏，之后的页随滚动预加载
+        BackgroundExecutor.Priority priority = firstLoad
+                ? BackgroundExecutor.Priority.VISIBLE : BackgroundExecutor.Priority.NORMAL;
+        // 绑定页面生命周期，退出后不再交回结果
+        BackgroundExecutor.submit(this, priority, job -> {
+            MediaSync.Watermark read = firstLoad
+                    ? MediaSync.readWatermark(context, getFolderSelection(), getFolderSelectionArgs()) : null;
+            // 读取水位失败时，第一次同步从头对账
+            MediaSync.Watermark mark = firstLoad && read == null ? MediaSync.unknownWatermark() : read;
+            MediaIndex page = loader.loadNextPage(pageSize);
+            job.post(() -> {
+                loading = false;
+                if (mark != null) {
+                    watermark = mark;
+                }
+                if (page == null) {
+                    pageFailed = true;
+                    Toast.makeText(this, "加载文件夹图片失败", Toast.LENGTH_SHORT).show();
                 } else {
-                    findViewById(R.id.empty_view).setVisibility(View.GONE);
+                    adapter.addImages(page);
+                }
+                if (syncPending) {
+                    requestSync();
                 }
+                // 首屏还没有铺满或离末尾太近时继续加载
+                checkLoadMore();
             });
-        }).start();
+        });
     }
 
-    private List<ImageItem> getImagesByFolder() {
-        List<ImageItem> images = new ArrayList<>();
-
-        String[] projection = {
-                MediaStore.Images.Media._ID,
-                MediaStore.Images.Media.DISPLAY_NAME,
-                MediaStore.Images.Media.DATA,
-                MediaStore.Images.Media.DATE_ADDED,
-                MediaStore.Images.Media.SIZE
-        };
-
-        // 根据文件夹路径筛选图片
-        String selection = MediaStore.Images.Media.DATA + " LIKE ?";
-        String[] selectionArgs = new String[]{folderPath + "%"};
-
-        String sortOrder = MediaStore.Images.Media.DATE_ADDED + " DESC";
-
-        try (Cursor cursor = getContentResolver().query(
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                projection,
-                selection,
-                selectionArgs,
-                sortOrder)) {
-
-            if (cursor != null) {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
-                int nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME);
-                int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-                int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED);
-                int sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.SIZE);
-
-                while (cursor.moveToNext()) {
-                    long id = cursor.getLong(idColumn);
-                    String name = cursor.getString(nameColumn);
-                    String data = cursor.getString(dataColumn);
-                    long dateAdded = cursor.getLong(dateColumn);
-                    long size = cursor.getLong(sizeColumn);
-
-                    Uri contentUri = Uri.withAppendedPath(
-                            MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                            Long.toString(id));
-
-                    ImageItem imageItem = new ImageItem(id, name, contentUri, data, dateAdded, size);
-                    images.add(imageItem);
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            runOnUiThread(() ->
-                    Toast.makeText(this, "加载文件夹图片失败", Toast.LENGTH_SHORT).show());
-        }
+    // 按 BUCKET_ID 筛选文件夹中的图片（同名的不同文件夹分开，也不包含子文件夹）
+    private String getFolderSelection() {
+        return MediaStore.Images.Media.BUCKET_ID + " = ?";
+    }
 
-        return images;
+    private String[] getFolderSelectionArgs() {
+        return new String[]{Long.toString(bucketId)};
+    }
+
+    /**
+     * 同步水位之后文件夹内的变化，按差异更新列表
+     */
+    private void requestSync() {
+        if (watermark == null || loading || syncing) {
+            // 第一页还没有加载完，或者正在加载、同步，完成后再同步
+            syncPending = true;
+            return;
+        }
+        syncPending = false;
+        syncing = true;
+
+        MediaSync.Watermark since = watermark;
+        MediaIndex snapshot = new MediaIndex();
+        snapshot.addAll(images);
+        boolean exhausted = pageLoader.isExhausted();
+        Context context = getApplicationContext();
+        BackgroundExecutor.submit(this, BackgroundExecutor.Priority.NORMAL, job -> {
+            MediaSync.Delta delta = MediaSync.fetchChanges(context, getFolderSelection(), getFolderSelectionArgs(),
+                    since, snapshot);
+            MediaIndex updated = null;
+            DiffUtil.DiffResult diff = null;
+            if (delta != null && !delta.isEmpty()) {
+                // 还没有分页加载到的行由之后的分页读取
+                updated = MediaIndex.merge(snapshot, delta.upserts, delta.deletedIds, !exhausted);
+                diff = GalleryAdapter.calculateDiff(snapshot, updated);
+            }
+            MediaIndex result = updated;
+            DiffUtil.DiffResult resultDiff = diff;
+            job.post(() -> {
+                syncing = false;
+                if (delta == null) {
+                    // 查询失败：保留旧水位，下次收到变化通知时重新同步，不会漏掉这段时间的变化
+                    Log.w(TAG, "同步失败，等待下次变化通知重试");
+                } else {
+                    watermark = delta.watermark;
+                }
+                if (result != null) {
+                    adapter.applyUpdate(result, resultDiff);
+                }
+                if (delta != null) {
+                    pageFailed = false;
+                }
+                if (syncPending) {
+                    requestSync();
+                } else {
+                    checkLoadMore();
+                }
+            });
+        });
     }
 
     private void openEditActivity(Uri imageUri) {
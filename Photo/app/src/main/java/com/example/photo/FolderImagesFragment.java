@@ -1,10 +1,7 @@
 package com.example.photo;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,13 +9,12 @@ import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class FolderImagesFragment extends Fragment {
 
@@ -26,15 +22,43 @@ public class FolderImagesFragment extends Fragment {
     private FolderAdapter adapter;
     private List<FolderItem> folderList = new ArrayList<>();
 
+    // 文件夹从 MediaLibrary 的图片索引统计，图片索引变化时重新统计
+    private final MediaLibrary.Listener libraryListener = new MediaLibrary.Listener() {
+        @Override
+        public void onImagesInserted(int position, int count) {
+            updateFolders();
+        }
+
+        @Override
+        public void onImagesChanged(DiffUtil.DiffResult diff) {
+            updateFolders();
+        }
+    };
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        MediaLibrary.start(requireContext());
+    }
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_folders, container, false);
         initViews(view);
-        loadFolders();
+        folderList.clear();
+        folderList.addAll(FolderAggregator.aggregate(MediaLibrary.getImages()));
+        adapter.notifyDataSetChanged();
+        MediaLibrary.addListener(libraryListener);
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        MediaLibrary.removeListener(libraryListener);
+    }
+
     private void initViews(View view) {
         recyclerView = view.findViewById(R.id.recyclerView);
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
@@ -50,77 +74,14 @@ public class FolderImagesFragment extends Fragment {
         recyclerView.setAdapter(adapter);
     }
 
-    private void loadFolders() {
-        new Thread(() -> {
-            List<FolderItem> folders = getFolders();
-            if (getActivity() != null) {
-                getActivity().runOnUiThread(() -> {
-                    folderList.clear();
-                    folderList.addAll(folders);
-                    adapter.notifyDataSetChanged();
-                });
-            }
-        }).start();
-    }
-
-    private List<FolderItem> getFolders() {
-        Map<String, FolderItem> folderMap = new HashMap<>();
-
-        String[] projection = {
-                MediaStore.Images.Media._ID,
-                MediaStore.Images.Media.DATA,
-                MediaStore.Images.Media.BUCKET_DISPLAY_NAME,
-                MediaStore.Images.Media.DATE_ADDED
-        };
-
-        String sortOrder = MediaStore.Images.Media.BUCKET_DISPLAY_NAME + " ASC";
-
-        try (Cursor cursor = getActivity().getContentResolver().query(
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                projection,
-                null,
-                null,
-                sortOrder)) {
-
-            if (cursor != null) {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
-                int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-                int bucketColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_DISPLAY_NAME);
-                int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED);
-
-                while (cursor.moveToNext()) {
-                    long id = cursor.getLong(idColumn);
-                    String data = cursor.getString(dataColumn);
-                    String bucketName = cursor.getString(bucketColumn);
-                    long dateAdded = cursor.getLong(dateColumn);
-
-                    Uri contentUri = Uri.withAppendedPath(
-                            MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                            Long.toString(id));
-
-                    // 获取文件夹路径
-                    String folderPath = data.substring(0, data.lastIndexOf("/"));
-
-                    if (!folderMap.containsKey(bucketName)) {
-                        FolderItem folderItem = new FolderItem(bucketName, folderPath, contentUri, 1);
-                        folderMap.put(bucketName, folderItem);
-                    } else {
-                        FolderItem folderItem = folderMap.get(bucketName);
-                        folderItem.setImageCount(folderItem.getImageCount() + 1);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return new ArrayList<>(folderMap.values());
+    private void updateFolders() {
+        adapter.updateFolders(FolderAggregator.aggregate(MediaLibrary.getImages()));
     }
 
     private void openFolderDetail(FolderItem folderItem) {
         Intent intent = new Intent(getActivity(), FolderDetailActivity.class);
         intent.putExtra("folder_name", folderItem.getName());
-        intent.putExtra("folder_path", folderItem.getPath());
+        intent.putExtra("bucket_id", folderItem.getBucketId());
         startActivity(intent);
     }
-}
\ No newline at end of file
+}
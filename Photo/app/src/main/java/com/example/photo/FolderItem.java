@@ -1,26 +1,29 @@
 package com.example.photo;
 
+import android.content.ContentUris;
 import android.net.Uri;
+import android.provider.MediaStore;
 
 public class FolderItem {
+    private long bucketId;
     private String name;
-    private String path;
-    private Uri firstImageUri;
+    private long coverId; // 最新一张图片的 id，作为封面
     private int imageCount;
 
-    public FolderItem(String name, String path, Uri firstImageUri, int imageCount) {
+    public FolderItem(long bucketId, String name, long coverId, int imageCount) {
+        this.bucketId = bucketId;
         this.name = name;
-        this.path = path;
-        this.firstImageUri = firstImageUri;
+        this.coverId = coverId;
         this.imageCount = imageCount;
     }
 
     // Getters
+    public long getBucketId() { return bucketId; }
     public String getName() { return name; }
-    public String getPath() { return path; }
-    public Uri getFirstImageUri() { return firstImageUri; }
+    public long getCoverId() { return coverId; }
     public int getImageCount() { return imageCount; }
 
-    // Setters
-    public void setImageCount(int imageCount) { this.imageCount = imageCount; }
-}
\ No newline at end of file
+    public Uri getFirstImageUri() {
+        return ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, coverId);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.photo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * 全分辨率导出：在原图上重放编辑记录，而不是保存工作分辨率的结果。
+ * 输出按水平条带逐条生成：把条带映射回原图，用 BitmapRegionDecoder 只解码对应区域，
+ * 依次做 LUT、几何变换和调色（与 {@link EditRenderer} 的顺序相同），再绘制叠加层，
+ * 然后交给 {@link StreamingJpegEncoder} 编码。
+ * 同一时刻只有一条条带和它对应的原图区域在内存中，峰值内存与原图大小无关。
+ *
+ * 耗时操作，只能在后台线程使用；线程被中断时抛出 InterruptedIOException。
+ */
+public class FullResolutionExporter {
+
+    private static final String TAG = "FullResolutionExporter";
+
+    // 条带高度是 MCU 行（16 行）的整数倍
+    private static final int STRIP_ALIGN = 16;
+    // 映射回原图时向外多解码的像素，保证边缘的双线性插值有数据
+    private static final int REGION_MARGIN = 2;
+
+    private final ParcelFileDescriptor descriptor;
+    private final BitmapRegionDecoder decoder;
+    private final int rawWidth;
+    private final int rawHeight;
+    // 摆正后的原图尺寸
+    private final int width;
+    private final int height;
+    private final Matrix orientation;
+
+    private FullResolutionExporter(ParcelFileDescriptor descriptor, BitmapRegionDecoder decoder,
+                                   int exifOrientation) {
+        this.descriptor = descriptor;
+        this.decoder = decoder;
+        this.rawWidth = decoder.getWidth();
+        this.rawHeight = decoder.getHeight();
+        boolean swapped = PhotoDecoder.isSwapped(exifOrientation);
+        this.width = swapped ? rawHeight : rawWidth;
+        this.height = swapped ? rawWidth : rawHeight;
+        Matrix matrix = PhotoDecoder.getOrientationMatrix(exifOrientation, rawWidth, rawHeight);
+        this.orientation = matrix != null ? matrix : new Matrix();
+    }
+
+    /**
+     * 打开原图（只读取文件头）
+     * @throws IOException 图片格式不支持分块解码时也会抛出，调用方应退回工作分辨率导出
+     */
+    @SuppressWarnings("deprecation")
+    public static FullResolutionExporter open(ContentResolver resolver, Uri uri) throws IOException {
+        int exifOrientation;
+        try (InputStream inputStream = resolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                throw new IOException("无法打开图片流");
+            }
+            exifOrientation = PhotoDecoder.readOrientation(inputStream);
+        }
+
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new IOException("无法打开图片文件");
+        }
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+            if (decoder == null) {
+                throw new IOException("不支持分块解码");
+            }
+            return new FullResolutionExporter(descriptor, decoder, exifOrientation);
+        } catch (IOException e) {
+            descriptor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 摆正后的原图宽度
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 按编辑记录导出后的尺寸
+     * @return {宽, 高}
+     */
+    public int[] getOutputSize(EditGraph graph) {
+        int[] size = new int[2];
+        graph.computeGeometry(width, height, size);
+        return size;
+    }
+
+    /**
+     * 重放编辑记录，把全分辨率结果编码为 JPEG 写入输出流
+     * @param graph 编辑记录快照（调色管线会在导出线程上使用）
+     * @param context 用于加载 LUT
+     * @param layers 最终图层（叠加层、水印），按工作分辨率的坐标绘制，导出时整体放大
+     * @param layerWidth 工作分辨率结果的宽度
+     * @param layerHeight 工作分辨率结果的高度
+     * @param stripBytes 每条条带（含对应的原图区域）可用的字节数
+     */
+    public void export(Context context, EditGraph graph, EditGraph.Overlay layers,
+                       int layerWidth, int layerHeight, long stripBytes,
+                       int quality, OutputStream out) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        CubeLut lut = null;
+        if (graph.getLutName() != null) {
+            lut = LutLibrary.get(context, graph.getLutName());
+            if (lut == null) {
+                throw new IOException("无法加载LUT: " + graph.getLutName());
+            }
+        }
+
+        // 原图（未摆正）到输出的变换
+        int[] size = new int[2];
+        Matrix rawToOutput = graph.computeGeometry(width, height, size);
+        rawToOutput.preConcat(orientation);
+        Matrix outputToRaw = new Matrix();
+        if (!rawToOutput.invert(outputToRaw)) {
+            throw new IOException("无法计算导出区域");
+        }
+        int outWidth = size[0];
+        int outHeight = size[1];
+
+        int stripRows = computeStripRows(outWidth, stripBytes);
+        StreamingJpegEncoder encoder = new StreamingJpegEncoder(out, outWidth, outHeight, quality);
+        int[] rowBuffer = new int[outWidth * stripRows];
+        Bitmap strip = BitmapPool.obtain(outWidth, stripRows, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(strip);
+        AdjustmentPipeline color = graph.getColor();
+        Matrix regionToStrip = new Matrix();
+        RectF bounds = new RectF();
+        Rect region = new Rect();
+
+        try {
+            for (int top = 0; top < outHeight; top += stripRows) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("导出已取消");
+                }
+                int rows = Math.min(stripRows, outHeight - top);
+
+                // 条带对应的原图区域
+                bounds.set(0, top, outWidth, top + rows);
+                outputToRaw.mapRect(bounds);
+                region.set((int) Math.floor(bounds.left) - REGION_MARGIN,
+                        (int) Math.floor(bounds.top) - REGION_MARGIN,
+                        (int) Math.ceil(bounds.right) + REGION_MARGIN,
+                        (int) Math.ceil(bounds.bottom) + REGION_MARGIN);
+                boolean intersects = region.intersect(0, 0, rawWidth, rawHeight);
+
+                Bitmap source = intersects ? decodeRegion(region) : null;
+                if (source == null) {
+                    // 任意角度旋转后的空白角落
+                    strip.eraseColor(0);
+                } else {
+                    if (lut != null) {
+                        ImageProcessor.applyKernel(source, source, lut);
+                    }
+                    regionToStrip.set(rawToOutput);
+                    regionToStrip.preTranslate(region.left, region.top);
+                    regionToStrip.postTranslate(0, -top);
+                    color.render(source, regionToStrip, outWidth, stripRows, strip);
+                    BitmapPool.release(source);
+                }
+
+                if (layers != null) {
+                    canvas.save();
+                    canvas.clipRect(0, 0, outWidth, rows);
+                    canvas.translate(0, -top);
+                    canvas.scale(outWidth / (float) layerWidth, outHeight / (float) layerHeight);
+                    layers.draw(canvas, layerWidth, layerHeight);
+                    canvas.restore();
+                }
+
+                strip.getPixels(rowBuffer, 0, outWidth, 0, 0, outWidth, rows);
+                encoder.writeRows(rowBuffer, 0, outWidth, rows);
+            }
+            encoder.finish();
+        } finally {
+            BitmapPool.release(strip);
+        }
+
+        Log.d(TAG, "全分辨率导出 " + outWidth + "x" + outHeight + "，条带 " + stripRows
+                + " 行，耗时 " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    /**
+     * 关闭原图
+     */
+    public void close() {
+        decoder.recycle();
+        try {
+            descriptor.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Bitmap decodeRegion(Rect region) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        BitmapPool.setInBitmap(options, region.width(), region.height());
+        Bitmap decoded = null;
+        try {
+            decoded = decoder.decodeRegion(region, options);
+            if (decoded == null) {
+                throw new IOException("分块解码失败: " + region);
+            }
+            return decoded;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException("分块解码失败: " + region, e);
+        } finally {
+            // 没有解码到复用的缓冲中时放回缓冲池
+            if (options.inBitmap != null && decoded != options.inBitmap) {
+                BitmapPool.release(options.inBitmap);
+            }
+        }
+    }
+
+    /**
+     * 条带行数：条带和对应的原图区域（按同样大小估算）不超过 stripBytes，至少一行 MCU
+     */
+    private static int computeStripRows(int outWidth, long stripBytes) {
+        long rows = stripBytes / (2L * 4 * outWidth);
+        rows = rows / STRIP_ALIGN * STRIP_ALIGN;
+        return (int) Math.max(STRIP_ALIGN, Math.min(rows, 1024));
+    }
+}
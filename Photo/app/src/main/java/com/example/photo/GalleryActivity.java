@@ -122,6 +122,14 @@ public class GalleryActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (MemoryBudget.retainRatioForTrimLevel(level) < 0.5f) {
+            DecodedImageCache.clear();
+        }
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         onBackPressed();
@@ -1,6 +1,8 @@
 package com.example.photo;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,23 +10,46 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
-import com.example.photo.ImageItem;
-
-import java.util.List;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
 
 public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
 
     private Context context;
-    private List<ImageItem> imageList;
+    private MediaIndex images;
     private OnImageClickListener listener;
     private View emptyView;
 
-    public GalleryAdapter(Context context, List<ImageItem> imageList, OnImageClickListener listener) {
+    // 第一张缩略图显示时回调一次（用于统计启动耗时）
+    private Runnable firstThumbnailListener;
+    private final RequestListener<Drawable> thumbnailRequestListener = new RequestListener<Drawable>() {
+        @Override
+        public boolean onLoadFailed(GlideException e, Object model, @NonNull Target<Drawable> target,
+                                    boolean isFirstResource) {
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model, Target<Drawable> target,
+                                       @NonNull DataSource dataSource, boolean isFirstResource) {
+            Runnable listener = firstThumbnailListener;
+            firstThumbnailListener = null;
+            if (listener != null) {
+                listener.run();
+            }
+            return false;
+        }
+    };
+
+    public GalleryAdapter(Context context, MediaIndex images, OnImageClickListener listener) {
         this.context = context;
-        this.imageList = imageList;
+        this.images = images;
         this.listener = listener;
     }
 
@@ -33,44 +58,125 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_gallery_image, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+
+        // 设置点击事件（在创建时设置一次，绑定时不再为每一项创建监听器）
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (listener != null && position != RecyclerView.NO_POSITION) {
+                listener.onImageClick(images.getUri(position));
+            }
+        });
+
+        // 设置长按事件（长按预览的图片很可能接着被编辑，先在后台按编辑页的尺寸解码）
+        view.setOnLongClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            Uri uri = images.getUri(position);
+            DecodedImageCache.prefetch(context, uri);
+            if (listener != null) {
+                listener.onImageLongClick(uri);
+            }
+            return true;
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        ImageItem imageItem = imageList.get(position);
-
         // 设置图片的内容描述（无障碍功能）
-        holder.imageView.setContentDescription("图片: " + imageItem.getName());
+        holder.imageView.setContentDescription("图片: " + images.getName(position));
 
         // 使用Glide加载图片缩略图
         Glide.with(context)
-                .load(imageItem.getUri())
+                .load(images.getUri(position))
                 .override(300, 300) // 缩略图大小
                 .centerCrop()
                 .placeholder(R.drawable.ic_launcher_foreground) // 临时使用系统图标
                 .error(android.R.drawable.ic_dialog_alert) // 错误图标
+                .listener(firstThumbnailListener != null ? thumbnailRequestListener : null)
                 .into(holder.imageView);
+    }
 
-        // 设置点击事件
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) {
-                listener.onImageClick(imageItem);
+    @Override
+    public int getItemCount() {
+        return images.size();
+    }
+
+    /**
+     * 追加一页图片，只通知新增的范围
+     */
+    public void addImages(MediaIndex page) {
+        int start = images.size();
+        images.addAll(page);
+        notifyImagesInserted(start, page.size());
+    }
+
+    /**
+     * 索引已经在外部追加了图片时调用
+     */
+    public void notifyImagesInserted(int position, int count) {
+        if (count > 0) {
+            notifyItemRangeInserted(position, count);
+        }
+        updateEmptyView();
+    }
+
+    /**
+     * 计算两份索引之间的差异（耗时操作，在后台线程调用）
+     */
+    public static DiffUtil.DiffResult calculateDiff(MediaIndex oldImages, MediaIndex newImages) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldImages.size();
             }
-        });
 
-        // 设置长按事件
-        holder.itemView.setOnLongClickListener(v -> {
-            if (listener != null) {
-                listener.onImageLongClick(imageItem);
+            @Override
+            public int getNewListSize() {
+                return newImages.size();
             }
-            return true;
-        });
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldImages.getId(oldPosition) == newImages.getId(newPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldImages.getDateAdded(oldPosition) == newImages.getDateAdded(newPosition)
+                        && oldImages.getSize(oldPosition) == newImages.getSize(newPosition)
+                        && oldImages.getName(oldPosition).equals(newImages.getName(newPosition));
+            }
+        }, false);
     }
 
-    @Override
-    public int getItemCount() {
-        return imageList.size();
+    /**
+     * 替换为同步后的索引，只通知有变化的位置
+     * @param diff 当前内容与 updated 之间的差异
+     */
+    public void applyUpdate(MediaIndex updated, DiffUtil.DiffResult diff) {
+        images.clear();
+        images.addAll(updated);
+        dispatchUpdate(diff);
+    }
+
+    /**
+     * 索引已经在外部替换为新内容时调用
+     * @param diff 替换前后的差异
+     */
+    public void dispatchUpdate(DiffUtil.DiffResult diff) {
+        diff.dispatchUpdatesTo(this);
+        updateEmptyView();
+    }
+
+    /**
+     * 第一张缩略图显示时回调一次
+     */
+    public void setOnFirstThumbnailListener(Runnable listener) {
+        this.firstThumbnailListener = listener;
     }
 
     public void setEmptyView(View emptyView) {
@@ -101,7 +207,7 @@ public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHold
     }
 
     public interface OnImageClickListener {
-        void onImageClick(ImageItem imageItem);
-        void onImageLongClick(ImageItem imageItem);
+        void onImageClick(Uri imageUri);
+        void onImageLongClick(Uri imageUri);
     }
 }
\ No newline at end of file
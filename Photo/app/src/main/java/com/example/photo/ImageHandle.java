@@ -0,0 +1,127 @@
+package com.example.photo;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 引用计数的图片句柄，写时复制：
+ * 多个持有者通过 {@link #retain()} 共享同一份像素，只读时不复制；
+ * 需要修改像素时调用 {@link #mutate()}，只有句柄被共享（或图片不可写）时才复制一份。
+ * 最后一个引用释放时通过 {@link Recycler} 回收图片，默认放回 {@link BitmapPool}。
+ * 引用计数是原子的，retain/release 可以在任意线程调用。
+ */
+public final class ImageHandle {
+
+    /**
+     * 引用计数归零时回收图片，可能在任意线程调用
+     */
+    public interface Recycler {
+        void recycle(Bitmap bitmap);
+    }
+
+    private final Bitmap bitmap;
+    private final Recycler recycler;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private ImageHandle(Bitmap bitmap, Recycler recycler) {
+        this.bitmap = bitmap;
+        this.recycler = recycler;
+    }
+
+    /**
+     * 包装一张图片，调用者持有第一个引用，释放时放回缓冲池
+     */
+    public static ImageHandle wrap(Bitmap bitmap) {
+        return wrap(bitmap, BitmapPool::release);
+    }
+
+    public static ImageHandle wrap(Bitmap bitmap, Recycler recycler) {
+        if (bitmap == null) {
+            throw new IllegalArgumentException("图片不能为空");
+        }
+        return new ImageHandle(bitmap, recycler);
+    }
+
+    /**
+     * 只读访问像素，调用者不能修改或回收返回的图片
+     */
+    public Bitmap get() {
+        if (refCount.get() <= 0) {
+            throw new IllegalStateException("图片句柄已释放");
+        }
+        return bitmap;
+    }
+
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    /**
+     * 增加一个引用，共享同一份像素
+     * @return 自身
+     */
+    public ImageHandle retain() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("图片句柄已释放");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时回收图片
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            recycler.recycle(bitmap);
+        } else if (count < 0) {
+            throw new IllegalStateException("图片句柄重复释放");
+        }
+    }
+
+    /**
+     * 是否还有其他持有者
+     */
+    public boolean isShared() {
+        return refCount.get() > 1;
+    }
+
+    /**
+     * 获取可以修改像素的句柄，会消耗调用者持有的这个引用：
+     * 没有被共享且图片可写时返回自身，否则复制一份并释放自身的引用
+     */
+    public ImageHandle mutate() {
+        if (refCount.get() == 1 && bitmap.isMutable()) {
+            return this;
+        }
+        ImageHandle copy = wrap(BitmapPool.copyOf(get()));
+        release();
+        return copy;
+    }
+
+    /**
+     * 放弃引用；这是最后一个引用时不回收，而是把图片交给调用者
+     * @return 图片的所有权已转交时返回图片，仍被共享时返回 null
+     */
+    public Bitmap detach() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("图片句柄已释放");
+            }
+            if (refCount.compareAndSet(count, count - 1)) {
+                return count == 1 ? bitmap : null;
+            }
+        }
+    }
+}
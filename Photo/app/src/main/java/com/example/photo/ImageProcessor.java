@@ -2,17 +2,24 @@ package com.example.photo;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+
+import java.util.function.BooleanSupplier;
 
 public class ImageProcessor {
 
+    // 每个工作线程复用的条带缓冲区
+    private static final ThreadLocal<int[]> STRIP_BUFFER = new ThreadLocal<>();
+
     // 增强版亮度调节算法 - 效果更明显
     public static Bitmap adjustBrightness(Bitmap originalBitmap, int value) {
-        Bitmap adjustedBitmap = Bitmap.createBitmap(
+        Bitmap adjustedBitmap = BitmapPool.obtain(
                 originalBitmap.getWidth(),
                 originalBitmap.getHeight(),
                 Bitmap.Config.ARGB_8888
@@ -20,6 +27,7 @@ public class ImageProcessor {
 
         Canvas canvas = new Canvas(adjustedBitmap);
         Paint paint = new Paint();
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
 
         // 大幅增强亮度调整效果
         float brightness = value / 50.0f;
@@ -38,57 +46,33 @@ public class ImageProcessor {
         return adjustedBitmap;
     }
 
-    // 对比度调节算法保持不变
+    // 对比度调节算法保持不变（基于查找表实现）
     public static Bitmap adjustContrast(Bitmap originalBitmap, int value) {
-        Bitmap adjustedBitmap = Bitmap.createBitmap(
-                originalBitmap.getWidth(),
-                originalBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        float contrast = (value + 50) / 50.0f;
-
-        int width = originalBitmap.getWidth();
-        int height = originalBitmap.getHeight();
-        int[] pixels = new int[width * height];
-
-        originalBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        for (int i = 0; i < pixels.length; i++) {
-            int alpha = Color.alpha(pixels[i]);
-            int red = Color.red(pixels[i]);
-            int green = Color.green(pixels[i]);
-            int blue = Color.blue(pixels[i]);
-
-            red = (int) (((red - 127) * contrast) + 127);
-            green = (int) (((green - 127) * contrast) + 127);
-            blue = (int) (((blue - 127) * contrast) + 127);
-
-            red = Math.max(0, Math.min(255, red));
-            green = Math.max(0, Math.min(255, green));
-            blue = Math.max(0, Math.min(255, blue));
-
-            pixels[i] = Color.argb(alpha, red, green, blue);
-        }
-
-        adjustedBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-        return adjustedBitmap;
+        return applyKernel(originalBitmap, ChannelLut.contrast(value));
     }
 
     // 同时调整亮度和对比度 - 只增强亮度部分
     public static Bitmap adjustBrightnessContrast(Bitmap originalBitmap, int brightness, int contrast) {
-        Bitmap adjustedBitmap = Bitmap.createBitmap(
-                originalBitmap.getWidth(),
-                originalBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        Canvas canvas = new Canvas(adjustedBitmap);
-        Paint paint = new Paint();
+        return FilterProcessor.applyColorMatrix(originalBitmap,
+                createBrightnessContrastMatrix(brightness, contrast));
+    }
 
+    /**
+     * 创建亮度+对比度的合并颜色矩阵（先对比度，后亮度）
+     */
+    public static ColorMatrix createBrightnessContrastMatrix(int brightness, int contrast) {
         // 增强亮度调整
         float bright = brightness / 50.0f;
 
+        return createOffsetContrastMatrix(bright, contrast);
+    }
+
+    /**
+     * 创建亮度偏移+对比度的合并颜色矩阵，亮度直接给出偏移量，不做换算
+     * @param brightOffset 各颜色通道的亮度偏移量（0-255 刻度）
+     * @param contrast 对比度值（-50 到 150）
+     */
+    public static ColorMatrix createOffsetContrastMatrix(float brightOffset, int contrast) {
         // 对比度调整保持不变
         float contr = (contrast + 50) / 50.0f;
 
@@ -107,57 +91,78 @@ public class ImageProcessor {
 
         // 亮度矩阵 - 增强效果
         ColorMatrix brightnessMatrix = new ColorMatrix(new float[] {
-                1, 0, 0, 0, bright,
-                0, 1, 0, 0, bright,
-                0, 0, 1, 0, bright,
+                1, 0, 0, 0, brightOffset,
+                0, 1, 0, 0, brightOffset,
+                0, 0, 1, 0, brightOffset,
                 0, 0, 0, 1, 0
         });
 
         // 合并两个矩阵
         matrix.postConcat(contrastMatrix);
         matrix.postConcat(brightnessMatrix);
+        return matrix;
+    }
 
-        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
-        canvas.drawBitmap(originalBitmap, 0, 0, paint);
-
-        return adjustedBitmap;
+    /**
+     * 超强亮度对应的通道偏移量（与 adjustBrightnessExtreme 的公式一致）
+     */
+    public static float getExtremeBrightnessOffset(int brightness) {
+        float brightFactor = brightness / 25.0f;
+        return brightFactor * 128 * (1 + Math.abs(brightFactor) / 10);
     }
 
-    // 超强亮度效果版本
+    // 超强亮度效果版本（基于查找表实现）
     public static Bitmap adjustBrightnessExtreme(Bitmap originalBitmap, int brightness) {
-        Bitmap adjustedBitmap = Bitmap.createBitmap(
-                originalBitmap.getWidth(),
-                originalBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888
-        );
-
-        int width = originalBitmap.getWidth();
-        int height = originalBitmap.getHeight();
-        int[] pixels = new int[width * height];
-
-        originalBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        float brightFactor = brightness / 25.0f;
+        return applyKernel(originalBitmap, ChannelLut.brightnessExtreme(brightness));
+    }
 
-        for (int i = 0; i < pixels.length; i++) {
-            int alpha = Color.alpha(pixels[i]);
-            int red = Color.red(pixels[i]);
-            int green = Color.green(pixels[i]);
-            int blue = Color.blue(pixels[i]);
+    /**
+     * 用像素内核处理整张图片，返回新的Bitmap
+     * 按行条带读写像素，条带缓冲区按线程复用，不再分配整帧的 int 数组
+     */
+    public static Bitmap applyKernel(Bitmap source, PixelKernel kernel) {
+        Bitmap result = BitmapPool.obtain(source.getWidth(), source.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        applyKernel(source, result, kernel);
+        return result;
+    }
 
-            red = (int) (red + brightFactor * 128 * (1 + Math.abs(brightFactor) / 10));
-            green = (int) (green + brightFactor * 128 * (1 + Math.abs(brightFactor) / 10));
-            blue = (int) (blue + brightFactor * 128 * (1 + Math.abs(brightFactor) / 10));
+    /**
+     * 用像素内核处理图片，结果写入 target（可以与 source 是同一个可写Bitmap）
+     * 各条带在 TileScheduler 的共享线程池中并行处理
+     */
+    public static void applyKernel(Bitmap source, Bitmap target, PixelKernel kernel) {
+        applyKernel(source, target, kernel, null);
+    }
 
-            red = Math.max(0, Math.min(255, red));
-            green = Math.max(0, Math.min(255, green));
-            blue = Math.max(0, Math.min(255, blue));
+    /**
+     * 同上，每个条带开始前检查是否已取消，取消后剩余的条带不再处理
+     * @param cancelled 可以为 null
+     * @return 是否处理完所有条带；返回 false 时 target 只处理了一部分
+     */
+    public static boolean applyKernel(Bitmap source, Bitmap target, PixelKernel kernel, BooleanSupplier cancelled) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        TileScheduler.forEachBand(height, TileScheduler.bandRowsFor(width), (top, rows) -> {
+            if (cancelled != null && cancelled.getAsBoolean()) {
+                return;
+            }
+            int[] buffer = obtainStripBuffer(width * rows);
+            source.getPixels(buffer, 0, width, 0, top, width, rows);
+            kernel.apply(buffer, 0, width * rows);
+            target.setPixels(buffer, 0, width, 0, top, width, rows);
+        });
+        return cancelled == null || !cancelled.getAsBoolean();
+    }
 
-            pixels[i] = Color.argb(alpha, red, green, blue);
+    private static int[] obtainStripBuffer(int size) {
+        int[] buffer = STRIP_BUFFER.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new int[size];
+            STRIP_BUFFER.set(buffer);
         }
-
-        adjustedBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-        return adjustedBitmap;
+        return buffer;
     }
 
     /**
@@ -170,8 +175,12 @@ public class ImageProcessor {
         Matrix matrix = new Matrix();
         matrix.postRotate(degrees);
 
-        return Bitmap.createBitmap(bitmap, 0, 0,
-                bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        // 旋转后平移回第一象限，结果从缓冲池取
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        return BitmapPool.transform(bitmap, matrix,
+                Math.round(bounds.width()), Math.round(bounds.height()));
     }
 
     /**
@@ -197,8 +206,7 @@ public class ImageProcessor {
             matrix.postTranslate(0, bitmap.getHeight());
         }
 
-        return Bitmap.createBitmap(bitmap, 0, 0,
-                bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        return BitmapPool.transform(bitmap, matrix, bitmap.getWidth(), bitmap.getHeight());
     }
 
     /**
@@ -12,9 +12,11 @@ import android.util.Log;
 
 import androidx.core.content.FileProvider;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -23,8 +25,16 @@ import java.util.Locale;
 public class ImageSaver {
 
     private static final String TAG = "ImageSaver";
+    public static final int JPEG_QUALITY = 90;
     private Context context;
 
+    /**
+     * 把图片编码后写入输出流（用于不在内存中保存整幅图片的导出）
+     */
+    public interface ImageWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
     public ImageSaver(Context context) {
         this.context = context;
     }
@@ -38,21 +48,36 @@ public class ImageSaver {
             return null;
         }
 
+        return saveImageToGallery(outputStream -> {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream)) {
+                throw new IOException("图片保存失败");
+            }
+        }, folderName, fileName);
+    }
+
+    /**
+     * 保存到相册，图片数据由 writer 直接写入文件（JPEG）
+     */
+    public Uri saveImageToGallery(ImageWriter writer, String folderName, String fileName) {
         Uri imageUri = null;
 
         try {
             // 使用MediaStore API保存到公共目录
-            imageUri = saveToMediaStore(bitmap, folderName, fileName);
+            imageUri = saveToMediaStore(writer, folderName, fileName);
 
             return imageUri;
 
+        } catch (InterruptedIOException e) {
+            // 用户取消，不再尝试私有目录
+            Log.d(TAG, "保存已取消");
+            return null;
         } catch (Exception e) {
             Log.e(TAG, "保存图片失败: " + e.getMessage());
             e.printStackTrace();
 
             // 如果MediaStore失败，尝试使用FileProvider保存到应用私有目录
             try {
-                return saveToPrivateStorage(bitmap, fileName);
+                return saveToPrivateStorage(writer, fileName);
             } catch (Exception ex) {
                 Log.e(TAG, "私有存储保存失败: " + ex.getMessage());
                 return null;
@@ -63,7 +88,7 @@ public class ImageSaver {
     /**
      * 使用MediaStore保存到公共目录（Android 10+）
      */
-    private Uri saveToMediaStore(Bitmap bitmap, String folderName, String fileName) throws IOException {
+    private Uri saveToMediaStore(ImageWriter writer, String folderName, String fileName) throws IOException {
         ContentResolver resolver = context.getContentResolver();
 
         // 设置图片信息
@@ -91,17 +116,17 @@ public class ImageSaver {
             throw new IOException("创建文件URI失败");
         }
 
-        // 保存图片数据
-        OutputStream outputStream = resolver.openOutputStream(imageUri);
-        if (outputStream == null) {
+        // 保存图片数据，失败时删除已插入的空记录
+        OutputStream rawStream = resolver.openOutputStream(imageUri);
+        if (rawStream == null) {
+            resolver.delete(imageUri, null, null);
             throw new IOException("无法打开输出流");
         }
-
-        boolean saved = bitmap.compress(Bitmap.CompressFormat.JPEG, 90, outputStream);
-        outputStream.close();
-
-        if (!saved) {
-            throw new IOException("图片保存失败");
+        try (OutputStream outputStream = new BufferedOutputStream(rawStream, 64 * 1024)) {
+            writer.writeTo(outputStream);
+        } catch (IOException e) {
+            resolver.delete(imageUri, null, null);
+            throw e;
         }
 
         Log.d(TAG, "图片已保存到MediaStore: " + imageUri);
@@ -111,7 +136,7 @@ public class ImageSaver {
     /**
      * 保存到应用私有目录（使用FileProvider共享）
      */
-    private Uri saveToPrivateStorage(Bitmap bitmap, String fileName) throws IOException {
+    private Uri saveToPrivateStorage(ImageWriter writer, String fileName) throws IOException {
         // 创建缓存目录
         File cacheDir = new File(context.getExternalCacheDir(), "images");
         if (!cacheDir.exists() && !cacheDir.mkdirs()) {
@@ -123,12 +148,11 @@ public class ImageSaver {
         File imageFile = new File(cacheDir, imageName);
 
         // 保存图片
-        FileOutputStream outputStream = new FileOutputStream(imageFile);
-        boolean saved = bitmap.compress(Bitmap.CompressFormat.JPEG, 90, outputStream);
-        outputStream.close();
-
-        if (!saved) {
-            throw new IOException("图片保存失败");
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(imageFile), 64 * 1024)) {
+            writer.writeTo(outputStream);
+        } catch (IOException e) {
+            imageFile.delete();
+            throw e;
         }
 
         Log.d(TAG, "图片已保存到私有目录: " + imageFile.getAbsolutePath());
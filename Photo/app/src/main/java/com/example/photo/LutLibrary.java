@@ -0,0 +1,120 @@
+package com.example.photo;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LUT 滤镜库：从 assets/luts 目录读取 .cube 文件，解析结果按名称缓存在内存中
+ */
+public class LutLibrary {
+
+    private static final String TAG = "LutLibrary";
+    private static final String LUT_DIR = "luts";
+    private static final String LUT_SUFFIX = ".cube";
+
+    // 最多缓存的 LUT 数量（65³ 的 LUT 约占 3MB）
+    private static final int MAX_CACHED = 6;
+
+    // 按访问顺序排列，超出数量时移除最久未使用的
+    private static final Map<String, CubeLut> cache =
+            new LinkedHashMap<String, CubeLut>(MAX_CACHED, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CubeLut> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    private LutLibrary() {
+    }
+
+    /**
+     * 列出内置的 LUT 名称（不含扩展名）
+     */
+    public static List<String> listNames(Context context) {
+        List<String> names = new ArrayList<>();
+        try {
+            String[] files = context.getAssets().list(LUT_DIR);
+            if (files != null) {
+                Arrays.sort(files);
+                for (String file : files) {
+                    if (file.endsWith(LUT_SUFFIX)) {
+                        names.add(file.substring(0, file.length() - LUT_SUFFIX.length()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "读取LUT列表失败: " + e.getMessage());
+        }
+        return names;
+    }
+
+    /**
+     * 按名称获取 LUT，第一次使用时解析并缓存
+     * @return 解析失败时返回 null
+     */
+    public static CubeLut get(Context context, String name) {
+        synchronized (cache) {
+            CubeLut cached = cache.get(name);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        CubeLut lut;
+        try (InputStream inputStream = context.getAssets().open(LUT_DIR + "/" + name + LUT_SUFFIX)) {
+            lut = CubeLut.parse(inputStream);
+        } catch (IOException e) {
+            Log.e(TAG, "解析LUT失败: " + name + ", " + e.getMessage());
+            return null;
+        }
+
+        synchronized (cache) {
+            cache.put(name, lut);
+        }
+        return lut;
+    }
+
+    /**
+     * 获取 LUT 的显示名称，优先使用文件中的 TITLE
+     * 只读取文件头，不解析整个网格
+     */
+    public static String getDisplayName(Context context, String name) {
+        synchronized (cache) {
+            CubeLut cached = cache.get(name);
+            if (cached != null && cached.getTitle() != null && !cached.getTitle().isEmpty()) {
+                return cached.getTitle();
+            }
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getAssets().open(LUT_DIR + "/" + name + LUT_SUFFIX), StandardCharsets.UTF_8))) {
+            String title = CubeLut.readTitle(reader);
+            if (title != null && !title.isEmpty()) {
+                return title;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "读取LUT标题失败: " + name + ", " + e.getMessage());
+        }
+        return name;
+    }
+
+    /**
+     * 清空缓存（内存紧张时调用）
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.photo;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按列存储的图片索引：id、添加时间、大小放在 long 数组里，文件夹按 BUCKET_ID 去重后只存序号，
+ * 文件名连续存放在一个 char 数组中。
+ * 每张图片只占几十字节，没有逐行的对象；Uri 和文件名在绑定时才创建。
+ *
+ * 非线程安全：后台线程填充单独的一页，再在主线程通过 {@link #addAll} 合并。
+ */
+public class MediaIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] dates = new long[INITIAL_CAPACITY];
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private int[] buckets = new int[INITIAL_CAPACITY];
+
+    // 第 i 个文件名是 nameChars[nameStarts[i], nameStarts[i + 1])
+    private int[] nameStarts = new int[INITIAL_CAPACITY + 1];
+    private char[] nameChars = new char[INITIAL_CAPACITY * 16];
+
+    // 文件夹表：序号 -> BUCKET_ID、名称
+    private final List<Long> bucketIds = new ArrayList<>();
+    private final List<String> bucketNames = new ArrayList<>();
+    private final Map<Long, Integer> bucketSlots = new HashMap<>();
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getId(int position) {
+        return ids[position];
+    }
+
+    public long getDateAdded(int position) {
+        return dates[position];
+    }
+
+    public long getSize(int position) {
+        return sizes[position];
+    }
+
+    public long getBucketId(int position) {
+        return bucketIds.get(buckets[position]);
+    }
+
+    public String getBucketName(int position) {
+        return bucketNames.get(buckets[position]);
+    }
+
+    /**
+     * 所在文件夹在文件夹表中的序号（0 到 {@link #getBucketSlotCount()} - 1）
+     */
+    public int getBucketSlot(int position) {
+        return buckets[position];
+    }
+
+    public int getBucketSlotCount() {
+        return bucketIds.size();
+    }
+
+    public long getBucketIdOfSlot(int slot) {
+        return bucketIds.get(slot);
+    }
+
+    public String getBucketNameOfSlot(int slot) {
+        return bucketNames.get(slot);
+    }
+
+    public String getName(int position) {
+        int start = nameStarts[position];
+        return new String(nameChars, start, nameStarts[position + 1] - start);
+    }
+
+    public Uri getUri(int position) {
+        return ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, ids[position]);
+    }
+
+    /**
+     * 追加一张图片
+     * @param name 文件名，可以为 null（按空字符串存储）
+     */
+    public void add(long id, String name, long dateAdded, long size, long bucketId, String bucketName) {
+        ensureCapacity(this.size + 1);
+        int position = this.size;
+        ids[position] = id;
+        dates[position] = dateAdded;
+        sizes[position] = size;
+        buckets[position] = internBucket(bucketId, bucketName);
+
+        int start = nameStarts[position];
+        int length = name != null ? name.length() : 0;
+        ensureNameCapacity(start + length);
+        if (length > 0) {
+            name.getChars(0, length, nameChars, start);
+        }
+        nameStarts[position + 1] = start + length;
+        this.size++;
+    }
+
+    /**
+     * 把另一个索引的全部图片追加到末尾
+     */
+    public void addAll(MediaIndex other) {
+        int count = other.size;
+        ensureCapacity(size + count);
+        System.arraycopy(other.ids, 0, ids, size, count);
+        System.arraycopy(other.dates, 0, dates, size, count);
+        System.arraycopy(other.sizes, 0, sizes, size, count);
+
+        int[] slotMap = new int[other.bucketIds.size()];
+        for (int slot = 0; slot < slotMap.length; slot++) {
+            slotMap[slot] = internBucket(other.bucketIds.get(slot), other.bucketNames.get(slot));
+        }
+        for (int i = 0; i < count; i++) {
+            buckets[size + i] = slotMap[other.buckets[i]];
+        }
+
+        int base = nameStarts[size];
+        int charCount = other.nameStarts[count];
+        ensureNameCapacity(base + charCount);
+        System.arraycopy(other.nameChars, 0, nameChars, base, charCount);
+        for (int i = 1; i <= count; i++) {
+            nameStarts[size + i] = base + other.nameStarts[i];
+        }
+        size += count;
+    }
+
+    /**
+     * 把增量变更合并到按 (DATE_ADDED, _ID) 倒序排列的索引，返回新的索引（不修改 base）
+     * @param upserts 新增或修改的行，顺序任意；id 已在 base 中的行会替换原来的行
+     * @param deletedIds 被删除的行
+     * @param clipToTail 为 true 时丢弃排在 base 最后一行之后的行（还没有分页加载到的部分，之后由分页读取）
+     */
+    public static MediaIndex merge(MediaIndex base, MediaIndex upserts, long[] deletedIds, boolean clipToTail) {
+        Set<Long> removed = new HashSet<>();
+        for (long id : deletedIds) {
+            removed.add(id);
+        }
+        for (int i = 0; i < upserts.size; i++) {
+            removed.add(upserts.ids[i]);
+        }
+
+        Integer[] order = new Integer[upserts.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compareOrder(upserts, a, upserts, b));
+
+        int last = base.size - 1;
+        MediaIndex merged = new MediaIndex();
+        merged.ensureCapacity(base.size + upserts.size);
+        int i = 0;
+        int j = 0;
+        while (i < base.size || j < order.length) {
+            if (j < order.length && (i >= base.size || compareOrder(upserts, order[j], base, i) < 0)) {
+                int row = order[j++];
+                if (clipToTail && (last < 0 || compareOrder(upserts, row, base, last) > 0)) {
+                    continue;
+                }
+                merged.addRow(upserts, row);
+            } else {
+                if (!removed.contains(base.ids[i])) {
+                    merged.addRow(base, i);
+                }
+                i++;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 倒序比较：添加时间更晚（或相同时 id 更大）的行排在前面
+     */
+    private static int compareOrder(MediaIndex a, int rowA, MediaIndex b, int rowB) {
+        int result = Long.compare(b.dates[rowB], a.dates[rowA]);
+        return result != 0 ? result : Long.compare(b.ids[rowB], a.ids[rowA]);
+    }
+
+    private void addRow(MediaIndex other, int row) {
+        ensureCapacity(size + 1);
+        ids[size] = other.ids[row];
+        dates[size] = other.dates[row];
+        sizes[size] = other.sizes[row];
+        buckets[size] = internBucket(other.getBucketId(row), other.getBucketName(row));
+
+        int otherStart = other.nameStarts[row];
+        int length = other.nameStarts[row + 1] - otherStart;
+        int start = nameStarts[size];
+        ensureNameCapacity(start + length);
+        System.arraycopy(other.nameChars, otherStart, nameChars, start, length);
+        nameStarts[size + 1] = start + length;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+        nameStarts[0] = 0;
+        bucketIds.clear();
+        bucketNames.clear();
+        bucketSlots.clear();
+    }
+
+    /**
+     * 估算占用的堆内存（字节）
+     */
+    public long estimateBytes() {
+        return (long) ids.length * (8 * 3 + 4 + 4) + nameChars.length * 2L;
+    }
+
+    /**
+     * 序列化后的字节数
+     */
+    public int getSerializedSize() {
+        int bytes = 4 + size * (8 * 3 + 4) + (size + 1) * 4 + 4 + nameStarts[size] * 2;
+        bytes += 4;
+        for (int slot = 0; slot < bucketIds.size(); slot++) {
+            bytes += 8 + getStringSize(bucketNames.get(slot));
+        }
+        return bytes;
+    }
+
+    /**
+     * 按列写入缓冲区（批量复制数组，不逐行处理）
+     */
+    public void writeTo(ByteBuffer out) {
+        out.putInt(size);
+        out.asLongBuffer().put(ids, 0, size);
+        out.position(out.position() + size * 8);
+        out.asLongBuffer().put(dates, 0, size);
+        out.position(out.position() + size * 8);
+        out.asLongBuffer().put(sizes, 0, size);
+        out.position(out.position() + size * 8);
+        out.asIntBuffer().put(buckets, 0, size);
+        out.position(out.position() + size * 4);
+        out.asIntBuffer().put(nameStarts, 0, size + 1);
+        out.position(out.position() + (size + 1) * 4);
+        int charCount = nameStarts[size];
+        out.putInt(charCount);
+        out.asCharBuffer().put(nameChars, 0, charCount);
+        out.position(out.position() + charCount * 2);
+
+        out.putInt(bucketIds.size());
+        for (int slot = 0; slot < bucketIds.size(); slot++) {
+            out.putLong(bucketIds.get(slot));
+            putString(out, bucketNames.get(slot));
+        }
+    }
+
+    /**
+     * 读取 {@link #writeTo} 写入的索引
+     * @throws RuntimeException 数据不完整或损坏时
+     */
+    public static MediaIndex readFrom(ByteBuffer in) {
+        MediaIndex index = new MediaIndex();
+        int size = in.getInt();
+        index.ensureCapacity(size);
+        in.asLongBuffer().get(index.ids, 0, size);
+        in.position(in.position() + size * 8);
+        in.asLongBuffer().get(index.dates, 0, size);
+        in.position(in.position() + size * 8);
+        in.asLongBuffer().get(index.sizes, 0, size);
+        in.position(in.position() + size * 8);
+        in.asIntBuffer().get(index.buckets, 0, size);
+        in.position(in.position() + size * 4);
+        in.asIntBuffer().get(index.nameStarts, 0, size + 1);
+        in.position(in.position() + (size + 1) * 4);
+        int charCount = in.getInt();
+        index.ensureNameCapacity(charCount);
+        in.asCharBuffer().get(index.nameChars, 0, charCount);
+        in.position(in.position() + charCount * 2);
+
+        int bucketCount = in.getInt();
+        for (int slot = 0; slot < bucketCount; slot++) {
+            index.internBucket(in.getLong(), getString(in));
+        }
+        for (int i = 0; i < size; i++) {
+            if (index.buckets[i] < 0 || index.buckets[i] >= bucketCount
+                    || index.nameStarts[i] > index.nameStarts[i + 1]) {
+                throw new IllegalStateException("索引数据损坏: " + i);
+            }
+        }
+        if (index.nameStarts[0] != 0 || index.nameStarts[size] != charCount) {
+            throw new IllegalStateException("索引数据损坏");
+        }
+        index.size = size;
+        return index;
+    }
+
+    static int getStringSize(String value) {
+        return 4 + (value != null ? value.length() * 2 : 0);
+    }
+
+    /**
+     * 写入字符串：长度（null 为 -1）和字符
+     */
+    static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            out.putChar(value.charAt(i));
+        }
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + length * 2);
+        return new String(chars);
+    }
+
+    private int internBucket(long bucketId, String bucketName) {
+        Integer slot = bucketSlots.get(bucketId);
+        if (slot == null) {
+            slot = bucketIds.size();
+            bucketIds.add(bucketId);
+            bucketNames.add(bucketName);
+            bucketSlots.put(bucketId, slot);
+        }
+        return slot;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        dates = Arrays.copyOf(dates, newCapacity);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+        buckets = Arrays.copyOf(buckets, newCapacity);
+        nameStarts = Arrays.copyOf(nameStarts, newCapacity + 1);
+    }
+
+    private void ensureNameCapacity(int capacity) {
+        if (capacity > nameChars.length) {
+            nameChars = Arrays.copyOf(nameChars, Math.max(capacity, nameChars.length * 2));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.photo;
+
+import android.content.Context;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 图库索引的本地存储：把图片索引和同步水位写入 noBackup 目录下的二进制文件。
+ * 冷启动时直接从文件显示，再用 {@link MediaSync} 从保存的水位开始在后台与 MediaStore 对账，
+ * 不需要重新扫描整个图片表。
+ * MediaStore 版本变化（数据库重建，id 和 generation 都不再有效）时丢弃旧文件。
+ *
+ * 读写都是耗时操作，只能在后台线程调用。
+ */
+public class MediaIndexStore {
+
+    private static final String TAG = "MediaIndexStore";
+
+    private static final String IMAGES_FILE = "media_index.bin";
+    // 旧版本单独保存的文件夹统计，现在从图片索引计算，升级后删除
+    private static final String LEGACY_FOLDERS_FILE = "media_folders.bin";
+
+    private static final int MAGIC = 0x4d494458;
+    // 文件格式变化时递增，旧文件直接丢弃
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * 读取到的内容和保存时的同步水位
+     */
+    public static final class Snapshot<T> {
+        public final T data;
+        public final MediaSync.Watermark watermark;
+
+        Snapshot(T data, MediaSync.Watermark watermark) {
+            this.data = data;
+            this.watermark = watermark;
+        }
+    }
+
+    private MediaIndexStore() {
+    }
+
+    /**
+     * 读取全部图片的索引
+     * @return 没有保存过、版本不符或文件损坏时为 null
+     */
+    public static Snapshot<MediaIndex> loadImages(Context context) {
+        delete(context, LEGACY_FOLDERS_FILE);
+        ByteBuffer buffer = read(context, IMAGES_FILE);
+        if (buffer == null) {
+            return null;
+        }
+        try {
+            MediaSync.Watermark watermark = readWatermark(buffer);
+            return new Snapshot<>(MediaIndex.readFrom(buffer), watermark);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "图片索引损坏，重新建立: " + e.getMessage());
+            delete(context, IMAGES_FILE);
+            return null;
+        }
+    }
+
+    /**
+     * 保存全部图片的索引
+     * @param watermark 与 images 对应的同步水位
+     */
+    public static void saveImages(Context context, MediaIndex images, MediaSync.Watermark watermark) {
+        ByteBuffer buffer = ByteBuffer.allocate(getHeaderSize(context) + images.getSerializedSize());
+        writeHeader(context, buffer, watermark);
+        images.writeTo(buffer);
+        write(context, IMAGES_FILE, buffer);
+    }
+
+    // ============ 文件头 ============
+
+    private static int getHeaderSize(Context context) {
+        return 8 + MediaIndex.getStringSize(getMediaStoreVersion(context)) + 8 + 8 + 4;
+    }
+
+    private static void writeHeader(Context context, ByteBuffer buffer, MediaSync.Watermark watermark) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        MediaIndex.putString(buffer, getMediaStoreVersion(context));
+        buffer.putLong(watermark.generation);
+        buffer.putLong(watermark.timeSeconds);
+        buffer.putInt(watermark.count);
+    }
+
+    private static MediaSync.Watermark readWatermark(ByteBuffer buffer) {
+        return new MediaSync.Watermark(buffer.getLong(), buffer.getLong(), buffer.getInt());
+    }
+
+    /**
+     * MediaStore 的版本，数据库重建后会变化（Android 10 以下没有，返回空字符串）
+     */
+    private static String getMediaStoreVersion(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            String version = MediaStore.getVersion(context);
+            return version != null ? version : "";
+        }
+        return "";
+    }
+
+    // ============ 文件读写 ============
+
+    /**
+     * 读取整个文件，并检查文件头中的格式和 MediaStore 版本
+     * @return 定位到水位之后的缓冲区，文件不存在或不可用时为 null
+     */
+    private static synchronized ByteBuffer read(Context context, String name) {
+        File file = new File(context.getNoBackupFilesDir(), name);
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileInputStream inputStream = new FileInputStream(file);
+             FileChannel channel = inputStream.getChannel()) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("文件不完整");
+                }
+            }
+            buffer.flip();
+        } catch (IOException e) {
+            Log.w(TAG, "读取索引失败: " + e.getMessage());
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || !getMediaStoreVersion(context).equals(MediaIndex.getString(buffer))) {
+                Log.d(TAG, "索引版本不符，重新建立: " + name);
+                file.delete();
+                return null;
+            }
+        } catch (RuntimeException e) {
+            file.delete();
+            return null;
+        }
+        return buffer;
+    }
+
+    private static synchronized void write(Context context, String name, ByteBuffer buffer) {
+        File dir = context.getNoBackupFilesDir();
+        File file = new File(dir, name);
+        // 先写临时文件再改名，避免读到写了一半的文件
+        File temp = new File(dir, name + ".tmp");
+        buffer.flip();
+        try (FileOutputStream outputStream = new FileOutputStream(temp);
+             FileChannel channel = outputStream.getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "保存索引失败: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private static synchronized void delete(Context context, String name) {
+        new File(context.getNoBackupFilesDir(), name).delete();
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.photo;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 全局的图库数据：全部图片的列式索引，图库的各个页面共用一份，文件夹统计也从它计算，
+ * 打开图库时只读取一遍图片表。
+ * 启动时先读本地索引（{@link MediaIndexStore}），没有时分页读取 MediaStore：
+ * 第一页只取一屏多一点，尽快显示，之后在后台读完剩余的页并保存为本地索引。
+ * 之后通过 {@link MediaSync} 增量同步；没有页面在显示时只记下有变化，等页面回来再同步。
+ *
+ * 所有方法只能在主线程调用，查询在后台线程进行。
+ */
+public final class MediaLibrary {
+
+    private static final String TAG = "MediaLibrary";
+
+    private static final int FIRST_PAGE_SIZE = 60;
+    private static final int PAGE_SIZE = 2000;
+
+    /**
+     * 图片索引变化的监听（在主线程回调，回调时索引已经更新）
+     */
+    public interface Listener {
+        /**
+         * 在 position 处追加了 count 张
+         */
+        void onImagesInserted(int position, int count);
+
+        /**
+         * 同步后的变化
+         * @param diff 变化前后的差异
+         */
+        void onImagesChanged(DiffUtil.DiffResult diff);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final List<Listener> listeners = new ArrayList<>();
+    private static final MediaIndex images = new MediaIndex();
+
+    private static Context appContext;
+    private static MediaPageLoader pageLoader;
+    private static boolean loading;
+    private static long startTime;
+    // 首屏数据的来源，用于统计启动耗时
+    private static String source;
+
+    // 增量同步：水位在加载第一页之前记录（或随本地索引保存），之后只查询变化的行
+    private static MediaSync.Watermark watermark;
+    private static boolean syncing;
+    private static boolean syncPending;
+
+    private MediaLibrary() {
+    }
+
+    /**
+     * 开始加载并监听图片表的变化（只有第一次调用有效，需要已经获得读取权限）
+     */
+    public static void start(Context context) {
+        if (appContext != null) {
+            return;
+        }
+        appContext = context.getApplicationContext();
+        MediaSync.observe(appContext, MediaLibrary::requestSync);
+        load();
+    }
+
+    /**
+     * 当前的图片索引（只读，只能在主线程访问，内容会在回调监听之前变化）
+     */
+    public static MediaIndex getImages() {
+        return images;
+    }
+
+    /**
+     * 首屏数据的来源：本地索引或 MediaStore，还没有数据时为 null
+     */
+    public static String getSource() {
+        return source;
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+        if (syncPending) {
+            requestSync();
+        }
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void load() {
+        startTime = SystemClock.elapsedRealtime();
+        MediaPageLoader loader = new MediaPageLoader(appContext.getContentResolver());
+        pageLoader = loader;
+        loading = true;
+        BackgroundExecutor.submit(BackgroundExecutor.Priority.VISIBLE, job -> {
+            // 有本地索引时直接显示，再在后台与 MediaStore 对账
+            MediaIndexStore.Snapshot<MediaIndex> stored = MediaIndexStore.loadImages(appContext);
+            MediaSync.Watermark mark = null;
+            MediaIndex page = null;
+            if (stored == null) {
+                mark = MediaSync.readWatermark(appContext, null, null);
+                if (mark == null) {
+                    // 读取水位失败时，第一次同步从头对账
+                    mark = MediaSync.unknownWatermark();
+                }
+                page = loader.loadNextPage(FIRST_PAGE_SIZE);
+            }
+            MediaSync.Watermark firstMark = mark;
+            MediaIndex firstPage = page;
+            mainHandler.post(() -> {
+                loading = false;
+                if (stored != null) {
+                    source = "本地索引";
+                    pageLoader = MediaPageLoader.exhausted();
+                    watermark = stored.watermark;
+                    appendImages(stored.data);
+                    Log.d(TAG, "从本地索引读取 " + stored.data.size() + " 张，耗时 "
+                            + (SystemClock.elapsedRealtime() - startTime) + "ms");
+                    requestSync();
+                } else {
+                    source = "MediaStore";
+                    watermark = firstMark;
+                    onPageLoaded(loader, firstPage);
+                }
+            });
+        });
+    }
+
+    private static void loadNextPage() {
+        MediaPageLoader loader = pageLoader;
+        // 同步期间不追加新页，保证同步基于的内容不变
+        if (loading || syncing || loader.isExhausted()) {
+            return;
+        }
+        loading = true;
+        BackgroundExecutor.submit(BackgroundExecutor.Priority.NORMAL, job -> {
+            MediaIndex page = loader.loadNextPage(PAGE_SIZE);
+            mainHandler.post(() -> {
+                loading = false;
+                onPageLoaded(loader, page);
+            });
+        });
+    }
+
+    /**
+     * @param page 查询失败时为 null：没有读完，不保存本地索引，等下次同步之后再重试
+     */
+    private static void onPageLoaded(MediaPageLoader loader, MediaIndex page) {
+        if (page == null) {
+            Log.w(TAG, "分页读取失败，已读取 " + images.size() + " 张");
+            if (syncPending) {
+                requestSync();
+            }
+            return;
+        }
+        boolean firstPage = images.isEmpty();
+        appendImages(page);
+        if (firstPage) {
+            Log.d(TAG, "首屏 " + page.size() + " 张，耗时 "
+                    + (SystemClock.elapsedRealtime() - startTime) + "ms");
+        }
+        if (loader.isExhausted()) {
+            Log.d(TAG, "已加载全部 " + images.size() + " 张，索引约 "
+                    + images.estimateBytes() / 1024 + "KB");
+            saveIndex();
+        }
+        if (syncPending) {
+            requestSync();
+        } else {
+            loadNextPage();
+        }
+    }
+
+    private static void appendImages(MediaIndex page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        int start = images.size();
+        images.addAll(page);
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onImagesInserted(start, page.size());
+        }
+    }
+
+    /**
+     * 全部页都读取成功后保存本地索引，只读了一部分的索引不能保存
+     */
+    private static void saveIndex() {
+        if (!pageLoader.isExhausted()) {
+            return;
+        }
+        MediaIndex snapshot = new MediaIndex();
+        snapshot.addAll(images);
+        MediaSync.Watermark mark = watermark;
+        BackgroundExecutor.submit(BackgroundExecutor.Priority.PREFETCH,
+                job -> MediaIndexStore.saveImages(appContext, snapshot, mark));
+    }
+
+    /**
+     * 同步水位之后的变化，合并到已加载的数据，按差异通知监听
+     */
+    private static void requestSync() {
+        if (watermark == null || loading || syncing || listeners.isEmpty()) {
+            // 第一页还没有加载完、正在加载或同步、没有页面在显示，之后再同步
+            syncPending = true;
+            return;
+        }
+        syncPending = false;
+        syncing = true;
+
+        MediaSync.Watermark since = watermark;
+        MediaIndex snapshot = new MediaIndex();
+        snapshot.addAll(images);
+        boolean exhausted = pageLoader.isExhausted();
+        BackgroundExecutor.submit(BackgroundExecutor.Priority.NORMAL, job -> {
+            MediaSync.Delta delta = MediaSync.fetchChanges(appContext, null, null, since, snapshot);
+            MediaIndex updated = null;
+            DiffUtil.DiffResult diff = null;
+            if (delta != null && !delta.isEmpty()) {
+                // 还没有分页加载到的行由之后的分页读取
+                updated = MediaIndex.merge(snapshot, delta.upserts, delta.deletedIds, !exhausted);
+                diff = GalleryAdapter.calculateDiff(snapshot, updated);
+            }
+            MediaIndex result = updated;
+            DiffUtil.DiffResult resultDiff = diff;
+            mainHandler.post(() -> {
+                syncing = false;
+                if (delta == null) {
+                    // 查询失败：保留旧水位，下次收到变化通知时重新同步，不会漏掉这段时间的变化
+                    Log.w(TAG, "同步失败，等待下次变化通知重试");
+                } else {
+                    watermark = delta.watermark;
+                }
+                if (result != null) {
+                    images.clear();
+                    images.addAll(result);
+                    for (Listener listener : new ArrayList<>(listeners)) {
+                        listener.onImagesChanged(resultDiff);
+                    }
+                    saveIndex();
+                }
+                if (syncPending) {
+                    requestSync();
+                } else {
+                    loadNextPage();
+                }
+            });
+        });
+    }
+}
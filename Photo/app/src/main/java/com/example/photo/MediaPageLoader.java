@@ -0,0 +1,167 @@
+package com.example.photo;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.util.Log;
+
+/**
+ * 分页读取 MediaStore 图片，按 DATE_ADDED、_ID 倒序。
+ * 每页以上一页最后一行的 (DATE_ADDED, _ID) 为起点（keyset 分页），
+ * 只查询下一页的行，不需要 OFFSET 跳过前面的行，也不会一次读出整个图片表。
+ *
+ * 非线程安全：同一时刻只能有一个线程调用 {@link #loadNextPage}。
+ */
+public class MediaPageLoader {
+
+    private static final String TAG = "MediaPageLoader";
+
+    // 只读取 MediaIndex 需要的列
+    static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID,
+            MediaStore.Images.Media.DISPLAY_NAME,
+            MediaStore.Images.Media.DATE_ADDED,
+            MediaStore.Images.Media.SIZE,
+            MediaStore.Images.Media.BUCKET_ID,
+            MediaStore.Images.Media.BUCKET_DISPLAY_NAME
+    };
+
+    private static final String SORT_ORDER = MediaStore.Images.Media.DATE_ADDED + " DESC, "
+            + MediaStore.Images.Media._ID + " DESC";
+
+    private final ContentResolver resolver;
+    // 范围（例如某个文件夹），null 表示全部图片
+    private final String selection;
+    private final String[] selectionArgs;
+
+    // 已读取的最后一行，下一页从它之后开始
+    private boolean started;
+    private long lastDateAdded;
+    private long lastId;
+    private boolean exhausted;
+
+    public MediaPageLoader(ContentResolver resolver) {
+        this(resolver, null, null);
+    }
+
+    /**
+     * 只读取 selection 范围内的图片
+     */
+    public MediaPageLoader(ContentResolver resolver, String selection, String[] selectionArgs) {
+        this.resolver = resolver;
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+    }
+
+    /**
+     * 已经有完整的数据（从本地索引读取）时使用，不再分页
+     */
+    public static MediaPageLoader exhausted() {
+        MediaPageLoader loader = new MediaPageLoader(null);
+        loader.exhausted = true;
+        return loader;
+    }
+
+    /**
+     * 读取下一页（耗时操作，只能在后台线程调用）
+     * @return 不超过 pageSize 张图片，已经读完时为空；查询失败时为 null，
+     *         这时不算读完，起点不变，之后可以重试
+     */
+    public MediaIndex loadNextPage(int pageSize) {
+        MediaIndex page = new MediaIndex();
+        if (exhausted) {
+            return page;
+        }
+
+        String pageSelection = selection;
+        String[] pageArgs = selectionArgs;
+        if (started) {
+            pageSelection = MediaSync.and(selection, buildKeysetSelection());
+            pageArgs = MediaSync.concat(selectionArgs, buildKeysetArgs(lastDateAdded, lastId));
+        }
+
+        try (Cursor cursor = query(pageSelection, pageArgs, pageSize)) {
+            if (cursor == null) {
+                Log.w(TAG, "查询图片失败：没有返回游标");
+                return null;
+            }
+            // 旧版本可能忽略 LIMIT，最多只取 pageSize 行
+            readRows(cursor, page, pageSize);
+        } catch (Exception e) {
+            // 读到一半失败时丢弃这一页，不能当作已经读完
+            e.printStackTrace();
+            return null;
+        }
+
+        if (!page.isEmpty()) {
+            started = true;
+            lastDateAdded = page.getDateAdded(page.size() - 1);
+            lastId = page.getId(page.size() - 1);
+        }
+        if (page.size() < pageSize) {
+            exhausted = true;
+        }
+        return page;
+    }
+
+    /**
+     * 把游标中的行（{@link #PROJECTION} 的列）追加到索引
+     * @param maxRows 最多读取的行数
+     */
+    static void readRows(Cursor cursor, MediaIndex index, int maxRows) {
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+        int nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME);
+        int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED);
+        int sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.SIZE);
+        int bucketIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_ID);
+        int bucketColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.BUCKET_DISPLAY_NAME);
+
+        int rows = 0;
+        while (rows < maxRows && cursor.moveToNext()) {
+            index.add(cursor.getLong(idColumn),
+                    cursor.getString(nameColumn),
+                    cursor.getLong(dateColumn),
+                    cursor.getLong(sizeColumn),
+                    cursor.getLong(bucketIdColumn),
+                    cursor.getString(bucketColumn));
+            rows++;
+        }
+    }
+
+    /**
+     * 是否已经读完
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    private Cursor query(String pageSelection, String[] pageArgs, int limit) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Android 11 起 sortOrder 中不能再拼 LIMIT
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, pageSelection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, pageArgs);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER);
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+            return resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION, queryArgs, null);
+        }
+        return resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                pageSelection, pageArgs, SORT_ORDER + " LIMIT " + limit);
+    }
+
+    /**
+     * 排在 (DATE_ADDED, _ID) 之后的行（倒序）
+     */
+    static String buildKeysetSelection() {
+        return MediaStore.Images.Media.DATE_ADDED + " < ? OR ("
+                + MediaStore.Images.Media.DATE_ADDED + " = ? AND "
+                + MediaStore.Images.Media._ID + " < ?)";
+    }
+
+    static String[] buildKeysetArgs(long dateAdded, long id) {
+        String date = Long.toString(dateAdded);
+        return new String[]{date, date, Long.toString(id)};
+    }
+}
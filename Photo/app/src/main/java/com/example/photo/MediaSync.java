@@ -0,0 +1,288 @@
+package com.example.photo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 图库增量同步：加载数据前记录水位（Android 11 起是 MediaStore generation，旧版本是时间），
+ * 之后只查询水位之后新增或修改的行；行数和预期不一致时，再只读 _ID 一列找出被删除的行。
+ * 拍一张照片后回到图库只需要读取一行，而不是重新扫描整个图片表。
+ *
+ * 查询失败时不返回新的水位，调用方保留旧水位，下次收到变化通知时重试，不会漏掉失败期间的变化。
+ *
+ * 所有查询都是耗时操作，只能在后台线程调用。
+ */
+public class MediaSync {
+
+    private static final String TAG = "MediaSync";
+
+    // ContentObserver 的通知往往成批到达（插入、扫描、生成缩略图），合并后再同步
+    private static final long NOTIFY_DELAY_MS = 300;
+
+    /**
+     * 同步水位
+     */
+    public static final class Watermark {
+        // Android 11 起使用
+        final long generation;
+        // 旧版本使用，单位秒
+        final long timeSeconds;
+        // 记录水位时范围内的行数
+        final int count;
+
+        Watermark(long generation, long timeSeconds, int count) {
+            this.generation = generation;
+            this.timeSeconds = timeSeconds;
+            this.count = count;
+        }
+    }
+
+    /**
+     * 一次增量同步的结果
+     */
+    public static final class Delta {
+        // 新增或修改的行
+        public final MediaIndex upserts;
+        // 已加载的行中被删除的行
+        public final long[] deletedIds;
+        // 有行被删除，但调用方没有提供已加载的行，无法确定是哪些
+        public final boolean countChanged;
+        // 下次同步的起点
+        public final Watermark watermark;
+
+        Delta(MediaIndex upserts, long[] deletedIds, boolean countChanged, Watermark watermark) {
+            this.upserts = upserts;
+            this.deletedIds = deletedIds;
+            this.countChanged = countChanged;
+            this.watermark = watermark;
+        }
+
+        public boolean isEmpty() {
+            return upserts.isEmpty() && deletedIds.length == 0 && !countChanged;
+        }
+    }
+
+    /**
+     * 图库变化的监听，多次通知合并为一次回调（在主线程）
+     */
+    public static final class ChangeObserver extends ContentObserver {
+
+        private final Context context;
+        private final Handler handler;
+        private final Runnable onChange;
+
+        private ChangeObserver(Context context, Handler handler, Runnable onChange) {
+            super(handler);
+            this.context = context;
+            this.handler = handler;
+            this.onChange = onChange;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            handler.removeCallbacks(onChange);
+            handler.postDelayed(onChange, NOTIFY_DELAY_MS);
+        }
+
+        /**
+         * 取消监听，丢弃还没有执行的回调
+         */
+        public void close() {
+            context.getContentResolver().unregisterContentObserver(this);
+            handler.removeCallbacks(onChange);
+        }
+    }
+
+    private MediaSync() {
+    }
+
+    /**
+     * 读取水位失败时使用：下次同步从头读取所有行，并检查删除
+     */
+    public static Watermark unknownWatermark() {
+        return new Watermark(0, 0, -1);
+    }
+
+    /**
+     * 开始监听图片表的变化
+     */
+    public static ChangeObserver observe(Context context, Runnable onChange) {
+        Context appContext = context.getApplicationContext();
+        ChangeObserver observer = new ChangeObserver(appContext, new Handler(Looper.getMainLooper()), onChange);
+        appContext.getContentResolver().registerContentObserver(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+        return observer;
+    }
+
+    /**
+     * 记录当前水位，需要在加载数据之前调用，加载期间的变化会在下次同步时取到
+     * @param selection 同步范围，null 表示全部图片
+     * @return 查询失败时为 null
+     */
+    public static Watermark readWatermark(Context context, String selection, String[] selectionArgs) {
+        long generation = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // 所有外部卷共用一个数据库和 generation 计数
+            generation = MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        }
+        long timeSeconds = System.currentTimeMillis() / 1000;
+        int count = queryCount(context.getContentResolver(), selection, selectionArgs);
+        if (count < 0) {
+            return null;
+        }
+        return new Watermark(generation, timeSeconds, count);
+    }
+
+    /**
+     * 查询水位之后的变化
+     * @param selection 同步范围，与记录水位时相同
+     * @param known 已加载的行，用于找出被删除的行；为 null 时只通过 {@link Delta#countChanged} 报告
+     * @return 任何一步查询失败时为 null，调用方保留 since，之后重试
+     */
+    public static Delta fetchChanges(Context context, String selection, String[] selectionArgs,
+                                     Watermark since, MediaIndex known) {
+        ContentResolver resolver = context.getContentResolver();
+        Watermark watermark = readWatermark(context, selection, selectionArgs);
+        if (watermark == null) {
+            return null;
+        }
+
+        String changed;
+        String[] changedArgs;
+        String addedColumn;
+        long addedSince;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            changed = MediaStore.MediaColumns.GENERATION_MODIFIED + " > ?";
+            changedArgs = new String[]{Long.toString(since.generation)};
+            addedColumn = MediaStore.MediaColumns.GENERATION_ADDED;
+            addedSince = since.generation + 1;
+        } else {
+            // DATE_MODIFIED 是文件的修改时间，复制进来的旧照片要靠 DATE_ADDED 发现
+            String time = Long.toString(since.timeSeconds);
+            changed = MediaStore.Images.Media.DATE_ADDED + " >= ? OR "
+                    + MediaStore.Images.Media.DATE_MODIFIED + " >= ?";
+            changedArgs = new String[]{time, time};
+            addedColumn = MediaStore.Images.Media.DATE_ADDED;
+            addedSince = since.timeSeconds;
+        }
+
+        String[] projection = Arrays.copyOf(MediaPageLoader.PROJECTION, MediaPageLoader.PROJECTION.length + 1);
+        projection[projection.length - 1] = addedColumn;
+
+        MediaIndex upserts = new MediaIndex();
+        int added = 0;
+        try (Cursor cursor = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, projection,
+                and(selection, changed), concat(selectionArgs, changedArgs), null)) {
+            if (cursor == null) {
+                Log.w(TAG, "查询变化失败：没有返回游标");
+                return null;
+            }
+            MediaPageLoader.readRows(cursor, upserts, Integer.MAX_VALUE);
+            int addedIndex = cursor.getColumnIndexOrThrow(addedColumn);
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(addedIndex) >= addedSince) {
+                    added++;
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // 新增的行数和总行数对不上，说明有行被删除
+        long[] deletedIds = new long[0];
+        boolean countChanged = false;
+        if (since.count + added != watermark.count) {
+            if (known != null) {
+                deletedIds = findDeleted(resolver, selection, selectionArgs, known);
+                if (deletedIds == null) {
+                    return null;
+                }
+            } else {
+                countChanged = true;
+            }
+        }
+
+        Log.d(TAG, "增量同步：变化 " + upserts.size() + " 行，新增 " + added
+                + " 行，删除 " + (countChanged ? "?" : deletedIds.length) + " 行");
+        return new Delta(upserts, deletedIds, countChanged, watermark);
+    }
+
+    /**
+     * 只读取 _ID 一列，找出 known 中已经不存在的行
+     * @return 查询失败时为 null
+     */
+    private static long[] findDeleted(ContentResolver resolver, String selection, String[] selectionArgs,
+                                      MediaIndex known) {
+        long[] existing;
+        try (Cursor cursor = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                new String[]{MediaStore.Images.Media._ID}, selection, selectionArgs, null)) {
+            if (cursor == null) {
+                return null;
+            }
+            existing = new long[cursor.getCount()];
+            int count = 0;
+            while (cursor.moveToNext() && count < existing.length) {
+                existing[count++] = cursor.getLong(0);
+            }
+            Arrays.sort(existing, 0, count);
+            existing = Arrays.copyOf(existing, count);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        List<Long> deleted = new ArrayList<>();
+        for (int i = 0; i < known.size(); i++) {
+            if (Arrays.binarySearch(existing, known.getId(i)) < 0) {
+                deleted.add(known.getId(i));
+            }
+        }
+        long[] result = new long[deleted.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = deleted.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return 查询失败时为 -1
+     */
+    private static int queryCount(ContentResolver resolver, String selection, String[] selectionArgs) {
+        try (Cursor cursor = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                new String[]{MediaStore.Images.Media._ID}, selection, selectionArgs, null)) {
+            return cursor != null ? cursor.getCount() : -1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * 用 AND 连接两个条件，selection 为 null 时只用 extra
+     */
+    static String and(String selection, String extra) {
+        return selection == null ? extra : "(" + selection + ") AND (" + extra + ")";
+    }
+
+    static String[] concat(String[] first, String[] second) {
+        if (first == null) {
+            return second;
+        }
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.photo;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.BitmapFactory;
+
+/**
+ * 按设备内存计算图片内存预算和工作分辨率。
+ * 堆大小取 {@link ActivityManager#getMemoryClass()}（与实际堆上限取较小值），
+ * 其中一部分留给整幅图片，低内存设备比例更低。
+ * 编辑时常驻的整幅图片有：原图、当前结果、备用缓冲、LUT 缓存，按工作分辨率保存时还有一份写时复制的结果，
+ * 再加上内存中的撤销检查点，工作分辨率要保证这些图片同时存在时不超出预算。
+ * 叠加层直接绘制在输出上，原图更大时的导出按条带流式处理，都不需要额外的整幅图片。
+ */
+public class MemoryBudget {
+
+    private static final long MB = 1024L * 1024;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // 编辑时常驻的整幅图片：原图、当前结果、备用缓冲、LUT 缓存、按工作分辨率保存时复制的结果
+    public static final int BASE_FRAMES = 5;
+
+    // 导出时同时存在的叠加层临时图层数：叠加层直接绘制在输出上，没有临时图层
+    public static final int EXPORT_TEMP_LAYERS = 0;
+
+    // 工作分辨率长边的上下限
+    static final int MIN_LONG_SIDE = 1024;
+    static final int MAX_LONG_SIDE = 4096;
+
+    private final long heapBytes;
+    private final boolean lowRam;
+
+    public MemoryBudget(long heapBytes, boolean lowRam) {
+        this.heapBytes = heapBytes;
+        this.lowRam = lowRam;
+    }
+
+    /**
+     * 读取当前设备的内存级别
+     */
+    public static MemoryBudget from(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long heap = Runtime.getRuntime().maxMemory();
+        boolean lowRam = false;
+        if (activityManager != null) {
+            heap = Math.min(heap, activityManager.getMemoryClass() * MB);
+            lowRam = activityManager.isLowRamDevice();
+        }
+        return new MemoryBudget(heap, lowRam);
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public boolean isLowRam() {
+        return lowRam;
+    }
+
+    /**
+     * 所有整幅图片可用的总字节数：普通设备为堆的 3/4，低内存设备为 1/2
+     */
+    public long getImageBudgetBytes() {
+        return lowRam ? heapBytes / 2 : heapBytes * 3 / 4;
+    }
+
+    /**
+     * 工作分辨率的像素上限
+     * @param liveLayers 导出时同时存在的整幅临时图层数
+     * @param checkpoints 内存中保留的撤销检查点数
+     */
+    public long getMaxWorkingPixels(int liveLayers, int checkpoints) {
+        int frames = BASE_FRAMES + Math.max(0, liveLayers) + Math.max(0, checkpoints);
+        long pixels = getImageBudgetBytes() / ((long) frames * BYTES_PER_PIXEL);
+        long min = (long) MIN_LONG_SIDE * MIN_LONG_SIDE;
+        long max = (long) MAX_LONG_SIDE * MAX_LONG_SIDE;
+        return Math.max(min, Math.min(max, pixels));
+    }
+
+    /**
+     * 编辑页的工作分辨率像素上限（内存中的撤销检查点计算在内）
+     */
+    public long getEditorWorkingPixels() {
+        return getMaxWorkingPixels(EXPORT_TEMP_LAYERS, EditHistory.MAX_HOT_CHECKPOINTS);
+    }
+
+    /**
+     * 撤销检查点可用的字节数（工作分辨率下每张检查点一整幅）
+     */
+    public long getCheckpointBudgetBytes(long workingPixels, int checkpoints) {
+        return workingPixels * BYTES_PER_PIXEL * Math.max(1, checkpoints);
+    }
+
+    /**
+     * Bitmap 缓冲池上限：总预算的 1/8，低内存设备 1/16
+     */
+    public long getPoolBytes() {
+        return getImageBudgetBytes() / (lowRam ? 16 : 8);
+    }
+
+    /**
+     * 超大图片分块缓存的上限：与缓冲池相同
+     */
+    public long getTileCacheBytes() {
+        return getPoolBytes();
+    }
+
+    /**
+     * 计算解码目标尺寸：保持宽高比，不超过像素上限和长边上限，不放大
+     * @return {宽, 高}
+     */
+    public static int[] computeTargetSize(int sourceWidth, int sourceHeight, long maxPixels) {
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            return new int[] {sourceWidth, sourceHeight};
+        }
+        double scale = Math.sqrt(maxPixels / ((double) sourceWidth * sourceHeight));
+        scale = Math.min(scale, MAX_LONG_SIDE / (double) Math.max(sourceWidth, sourceHeight));
+        if (scale >= 1) {
+            return new int[] {sourceWidth, sourceHeight};
+        }
+        int width = Math.max(1, (int) Math.floor(sourceWidth * scale));
+        int height = Math.max(1, (int) Math.floor(sourceHeight * scale));
+        return new int[] {width, height};
+    }
+
+    /**
+     * 设置解码参数，使解码结果正好是目标宽度：
+     * 先用 2 的幂的 inSampleSize 在解码时缩小到不小于目标，再通过密度缩放到精确尺寸
+     */
+    public static void setDecodeTarget(BitmapFactory.Options options, int sourceWidth, int targetWidth) {
+        int sampleSize = computeSampleSize(sourceWidth, targetWidth);
+        options.inSampleSize = sampleSize;
+        int sampledWidth = sourceWidth / sampleSize;
+        if (targetWidth > 0 && sampledWidth > targetWidth) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+        } else {
+            options.inScaled = false;
+        }
+    }
+
+    /**
+     * 不小于目标宽度的最大 2 的幂采样率
+     */
+    static int computeSampleSize(int sourceWidth, int targetWidth) {
+        int sampleSize = 1;
+        while (targetWidth > 0 && sourceWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 根据 onTrimMemory 的级别决定缓存保留的比例
+     * @return 0 表示全部释放，1 表示不需要处理
+     */
+    @SuppressWarnings("deprecation")
+    public static float retainRatioForTrimLevel(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0f;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 0.25f;
+        }
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.5f;
+        }
+        return 1f;
+    }
+
+    /**
+     * 预算说明（写入日志）
+     */
+    public String describe(long workingPixels) {
+        return "内存级别 " + heapBytes / MB + "MB" + (lowRam ? "（低内存设备）" : "")
+                + "，图片预算 " + getImageBudgetBytes() / MB + "MB"
+                + "，工作分辨率上限 " + workingPixels / 1000000f + "MP"
+                + "，缓冲池 " + getPoolBytes() / MB + "MB";
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.photo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 保存时在主线程截取的叠加层（贴纸、文字）：图片的显示区域，以及每一层的图片、变换和透明度。
+ * 保存线程逐条带绘制时只读这份快照，保存期间继续编辑或退出编辑页都不会影响导出结果。
+ * 坐标是图片在界面上的显示坐标，绘制时按画布上图片的尺寸整体缩放。
+ */
+public class OverlaySnapshot implements EditGraph.Overlay {
+
+    private static final class Layer {
+        final Bitmap bitmap;
+        final Matrix matrix;
+        final Paint paint;
+
+        Layer(Bitmap bitmap, Matrix matrix, Paint paint) {
+            this.bitmap = bitmap;
+            this.matrix = matrix;
+            this.paint = paint;
+        }
+    }
+
+    private final RectF imageRect;
+    private final List<Layer> layers = new ArrayList<>();
+
+    /**
+     * @param imageRect 图片在界面上的显示区域
+     */
+    public OverlaySnapshot(RectF imageRect) {
+        this.imageRect = new RectF(imageRect);
+    }
+
+    /**
+     * 添加一层，先添加的在下面
+     * @param bitmap 由快照持有，{@link #release()} 时放回缓冲池
+     * @param matrix 图片到显示坐标的变换
+     * @param alpha 透明度 0-255
+     */
+    public void addLayer(Bitmap bitmap, Matrix matrix, int alpha) {
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setAlpha(alpha);
+        layers.add(new Layer(bitmap, new Matrix(matrix), paint));
+    }
+
+    @Override
+    public void draw(Canvas canvas, int width, int height) {
+        if (layers.isEmpty() || imageRect.isEmpty()) {
+            return;
+        }
+        canvas.save();
+        // 把显示坐标映射到画布上的图片
+        canvas.scale(width / imageRect.width(), height / imageRect.height());
+        canvas.translate(-imageRect.left, -imageRect.top);
+        for (Layer layer : layers) {
+            canvas.drawBitmap(layer.bitmap, layer.matrix, layer.paint);
+        }
+        canvas.restore();
+    }
+
+    /**
+     * 保存结束后调用，释放各层的图片
+     */
+    public void release() {
+        for (Layer layer : layers) {
+            BitmapPool.release(layer.bitmap);
+        }
+        layers.clear();
+    }
+}
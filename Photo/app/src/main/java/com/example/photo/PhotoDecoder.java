@@ -0,0 +1,282 @@
+package com.example.photo;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 统一的图片解码：内容流只打开一次，直接解码到精确的目标尺寸，并按 EXIF 方向摆正。
+ * Android 9 及以上使用 ImageDecoder，在读到文件头时设置目标尺寸，方向在解码时处理；
+ * 更低的版本在可回退的缓冲流上依次读取 EXIF 和尺寸，再用采样率加密度缩放解码，
+ * 方向不正时额外旋转一次（文件头超出缓冲范围时才重新打开一次流）。
+ */
+public class PhotoDecoder {
+
+    private static final String TAG = "PhotoDecoder";
+
+    // 文件头（EXIF、尺寸）需要的缓冲上限
+    private static final int HEADER_MARK_LIMIT = 1024 * 1024;
+
+    // 占位缩略图的最长边
+    private static final int THUMBNAIL_SIZE = 512;
+
+    /**
+     * 读到文件头、确定解码尺寸时回调（在解码线程上，像素解码之前）
+     */
+    public interface SizeListener {
+        void onSizeKnown(int width, int height);
+
+        /**
+         * 原图尺寸（摆正之前），在 {@link #onSizeKnown} 之前回调
+         */
+        default void onSourceSizeKnown(int width, int height) {
+        }
+    }
+
+    private PhotoDecoder() {
+    }
+
+    /**
+     * 解码图片，结果已按 EXIF 方向摆正
+     * @param maxPixels 像素数上限（见 {@link MemoryBudget#getMaxWorkingPixels}）
+     */
+    public static Bitmap decode(ContentResolver resolver, Uri uri, long maxPixels) throws IOException {
+        return decode(resolver, uri, maxPixels, null);
+    }
+
+    /**
+     * 解码图片，结果已按 EXIF 方向摆正
+     * @param sizeListener 摆正后的解码尺寸确定时回调，可以为 null
+     */
+    public static Bitmap decode(ContentResolver resolver, Uri uri, long maxPixels,
+                                SizeListener sizeListener) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        Bitmap bitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                ? decodeWithImageDecoder(resolver, uri, maxPixels, sizeListener)
+                : decodeWithBitmapFactory(resolver, uri, maxPixels, sizeListener);
+        if (bitmap == null) {
+            throw new IOException("无法解码图片");
+        }
+        Log.d(TAG, "解码完成 " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                + "，耗时 " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return bitmap;
+    }
+
+    private static Bitmap decodeWithImageDecoder(ContentResolver resolver, Uri uri, long maxPixels,
+                                                 SizeListener sizeListener) throws IOException {
+        ImageDecoder.Source source = ImageDecoder.createSource(resolver, uri);
+        return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+            Size size = info.getSize();
+            int[] target = MemoryBudget.computeTargetSize(size.getWidth(), size.getHeight(), maxPixels);
+            decoder.setTargetSize(target[0], target[1]);
+            if (sizeListener != null) {
+                sizeListener.onSourceSizeKnown(size.getWidth(), size.getHeight());
+                sizeListener.onSizeKnown(target[0], target[1]);
+            }
+            // 编辑时需要在软件画布上读取像素，不能使用硬件位图
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+        });
+    }
+
+    private static Bitmap decodeWithBitmapFactory(ContentResolver resolver, Uri uri, long maxPixels,
+                                                  SizeListener sizeListener) throws IOException {
+        InputStream inputStream = open(resolver, uri);
+        try {
+            int orientation = readOrientation(inputStream);
+            inputStream = rewind(inputStream, resolver, uri);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(inputStream, null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                throw new IOException("无法读取图片尺寸");
+            }
+            inputStream = rewind(inputStream, resolver, uri);
+
+            int[] target = MemoryBudget.computeTargetSize(options.outWidth, options.outHeight, maxPixels);
+            if (sizeListener != null) {
+                sizeListener.onSourceSizeKnown(options.outWidth, options.outHeight);
+                boolean swapped = isSwapped(orientation);
+                sizeListener.onSizeKnown(swapped ? target[1] : target[0], swapped ? target[0] : target[1]);
+            }
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            MemoryBudget.setDecodeTarget(options, options.outWidth, target[0]);
+            return applyOrientation(BitmapFactory.decodeStream(inputStream, null, options), orientation);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 读取系统缓存的缩略图，用于完整解码之前的占位显示，结果已摆正
+     * Android 10 及以上使用 loadThumbnail，更低的版本读取媒体库的缩略图，
+     * 都没有时读取 EXIF 中内嵌的缩略图
+     * @return 没有可用的缩略图时返回 null
+     */
+    @SuppressWarnings("deprecation")
+    public static Bitmap loadThumbnail(ContentResolver resolver, Uri uri) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            try {
+                return resolver.loadThumbnail(uri, new Size(THUMBNAIL_SIZE, THUMBNAIL_SIZE), null);
+            } catch (IOException | RuntimeException e) {
+                Log.d(TAG, "没有系统缩略图: " + e.getMessage());
+            }
+        }
+
+        int orientation = ExifInterface.ORIENTATION_NORMAL;
+        Bitmap thumbnail = null;
+        try (InputStream inputStream = resolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                return null;
+            }
+            ExifInterface exif = new ExifInterface(inputStream);
+            orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                    && MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+                thumbnail = MediaStore.Images.Thumbnails.getThumbnail(resolver,
+                        ContentUris.parseId(uri), MediaStore.Images.Thumbnails.MINI_KIND, null);
+            }
+            if (thumbnail == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                thumbnail = exif.getThumbnailBitmap();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, "读取缩略图失败: " + e.getMessage());
+        }
+        // 媒体库和 EXIF 的缩略图都没有摆正
+        return applyOrientation(thumbnail, orientation);
+    }
+
+    /**
+     * 打开可回退到开头的缓冲流
+     */
+    private static InputStream open(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream raw = resolver.openInputStream(uri);
+        if (raw == null) {
+            throw new IOException("无法打开图片流");
+        }
+        InputStream inputStream = new BufferedInputStream(raw, 64 * 1024);
+        inputStream.mark(HEADER_MARK_LIMIT);
+        return inputStream;
+    }
+
+    /**
+     * 回到流的开头；读取的文件头超出缓冲范围时关闭并重新打开
+     */
+    private static InputStream rewind(InputStream inputStream, ContentResolver resolver, Uri uri)
+            throws IOException {
+        try {
+            inputStream.reset();
+            inputStream.mark(HEADER_MARK_LIMIT);
+            return inputStream;
+        } catch (IOException e) {
+            Log.w(TAG, "文件头超出缓冲范围，重新打开图片流");
+            inputStream.close();
+            return open(resolver, uri);
+        }
+    }
+
+    static int readOrientation(InputStream inputStream) {
+        try {
+            ExifInterface exif = new ExifInterface(inputStream);
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "读取EXIF失败: " + e.getMessage());
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * 按 EXIF 方向摆正（ImageDecoder 之外的解码路径使用），方向正常时直接返回
+     */
+    static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        if (bitmap == null) {
+            return null;
+        }
+        Matrix matrix = getOrientationMatrix(orientation, bitmap.getWidth(), bitmap.getHeight());
+        if (matrix == null) {
+            return bitmap;
+        }
+
+        boolean swapped = isSwapped(orientation);
+        Bitmap rotated = BitmapPool.transform(bitmap, matrix,
+                swapped ? bitmap.getHeight() : bitmap.getWidth(),
+                swapped ? bitmap.getWidth() : bitmap.getHeight());
+        BitmapPool.release(bitmap);
+        return rotated;
+    }
+
+    /**
+     * 该方向摆正后宽高是否互换
+     */
+    static boolean isSwapped(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * 从未摆正的图片坐标到摆正后坐标的变换（已平移回第一象限），方向正常时返回 null
+     */
+    static Matrix getOrientationMatrix(int orientation, int width, int height) {
+        Matrix matrix = getOrientationTransform(orientation);
+        if (matrix == null) {
+            return null;
+        }
+        RectF bounds = new RectF(0, 0, width, height);
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        return matrix;
+    }
+
+    /**
+     * EXIF 方向对应的变换，方向正常时返回 null
+     */
+    private static Matrix getOrientationTransform(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return null;
+        }
+        return matrix;
+    }
+}
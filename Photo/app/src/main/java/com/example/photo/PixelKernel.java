@@ -0,0 +1,13 @@
+package com.example.photo;
+
+/**
+ * 逐像素处理内核，直接处理 ARGB 像素数组的一段
+ * 实现类不能在 apply 中分配内存，以便在拖动滑块时反复调用
+ */
+public interface PixelKernel {
+
+    /**
+     * 原地处理 pixels[offset, offset + length) 范围内的像素
+     */
+    void apply(int[] pixels, int offset, int length);
+}
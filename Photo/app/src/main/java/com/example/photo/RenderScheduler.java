@@ -0,0 +1,215 @@
+package com.example.photo;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 编辑渲染调度器：所有耗时的编辑渲染都在同一个后台线程上按提交顺序执行，
+ * 结果按提交顺序回到主线程。
+ * 新请求提交时，之前还没交付的请求全部作废（最新的请求优先）：
+ * 未开始的直接跳过，正在执行的通过 {@link Ticket#isCancelled()} 提前结束，结果会被丢弃并回收。
+ * 请求引用的源图在交付之前会被锁定，主线程通过 {@link #recycleWhenIdle(Bitmap)}
+ * 回收图片时会推迟到没有任务使用它之后，避免渲染过程中源图被回收。
+ *
+ * 除 {@link RenderJob#render(Ticket)} 外，所有方法都只能在主线程调用。
+ */
+public class RenderScheduler {
+
+    private static final String TAG = "RenderScheduler";
+
+    /**
+     * 渲染任务，在后台线程执行
+     */
+    public interface RenderJob {
+        Bitmap render(Ticket ticket) throws Exception;
+    }
+
+    /**
+     * 渲染结果回调，在主线程执行
+     */
+    public interface Callback {
+        void onRendered(Bitmap result);
+
+        /**
+         * 请求已过期，默认把结果放回缓冲池
+         */
+        default void onDiscarded(Bitmap result) {
+            if (result != null && !result.isRecycled()) {
+                BitmapPool.release(result);
+            }
+        }
+
+        default void onFailed(Exception e) {
+        }
+    }
+
+    /**
+     * 请求凭证，任务可以在阶段之间检查是否已经过期，提前结束
+     */
+    public static final class Ticket {
+        private final long sequence;
+        private volatile boolean cancelled;
+
+        private Ticket(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "edit-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下状态只在主线程访问
+    private final List<Ticket> activeTickets = new ArrayList<>();
+    private final Map<Bitmap, Integer> pinnedBitmaps = new IdentityHashMap<>();
+    private final List<Bitmap> pendingRecycle = new ArrayList<>();
+    private long nextSequence = 0;
+    private long lastDelivered = -1;
+    private boolean released = false;
+
+    /**
+     * 提交请求：会被之后提交的任何请求取代
+     * @param source 任务读取的源图，交付前不会被回收，可以为 null
+     */
+    public Ticket submitLatest(Bitmap source, RenderJob job, Callback callback) {
+        cancelPending();
+
+        final Ticket ticket = new Ticket(nextSequence++);
+        if (released) {
+            ticket.cancelled = true;
+            callback.onDiscarded(null);
+            return ticket;
+        }
+
+        activeTickets.add(ticket);
+        pin(source);
+
+        executor.execute(() -> {
+            Bitmap result = null;
+            Exception error = null;
+            if (!ticket.cancelled) {
+                try {
+                    result = job.render(ticket);
+                } catch (Exception e) {
+                    error = e;
+                }
+            }
+
+            final Bitmap rendered = result;
+            final Exception failure = error;
+            mainHandler.post(() -> deliver(ticket, source, rendered, failure, callback));
+        });
+        return ticket;
+    }
+
+    private void deliver(Ticket ticket, Bitmap source, Bitmap result, Exception error, Callback callback) {
+        activeTickets.remove(ticket);
+        unpin(source);
+
+        if (ticket.cancelled || released || ticket.sequence <= lastDelivered) {
+            callback.onDiscarded(result);
+            return;
+        }
+        lastDelivered = ticket.sequence;
+
+        if (error != null) {
+            Log.e(TAG, "渲染失败: " + error.getMessage());
+            error.printStackTrace();
+            callback.onFailed(error);
+        } else if (result != null) {
+            callback.onRendered(result);
+        }
+    }
+
+    /**
+     * 作废所有还没交付的请求
+     */
+    public void cancelPending() {
+        for (Ticket ticket : activeTickets) {
+            ticket.cancelled = true;
+        }
+    }
+
+    /**
+     * 是否还有请求没有交付
+     */
+    public boolean isBusy() {
+        return !activeTickets.isEmpty();
+    }
+
+    /**
+     * 图片是否正在被渲染任务使用
+     */
+    public boolean isInUse(Bitmap bitmap) {
+        return bitmap != null && pinnedBitmaps.containsKey(bitmap);
+    }
+
+    /**
+     * 回收图片（放回缓冲池）；正在被渲染任务读取时推迟到任务交付之后
+     */
+    public void recycleWhenIdle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (isInUse(bitmap)) {
+            if (!pendingRecycle.contains(bitmap)) {
+                pendingRecycle.add(bitmap);
+            }
+        } else {
+            BitmapPool.release(bitmap);
+        }
+    }
+
+    /**
+     * 释放调度器（Activity 销毁时调用），之后的结果全部丢弃
+     * @param cleanup 在渲染线程上、所有已提交任务结束后执行，用于释放渲染缓存，可以为 null
+     */
+    public void release(Runnable cleanup) {
+        released = true;
+        for (Ticket ticket : activeTickets) {
+            ticket.cancelled = true;
+        }
+        if (cleanup != null) {
+            executor.execute(cleanup);
+        }
+        executor.shutdown();
+    }
+
+    private void pin(Bitmap bitmap) {
+        if (bitmap != null) {
+            Integer count = pinnedBitmaps.get(bitmap);
+            pinnedBitmaps.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    private void unpin(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        Integer count = pinnedBitmaps.get(bitmap);
+        if (count == null || count <= 1) {
+            pinnedBitmaps.remove(bitmap);
+            if (pendingRecycle.remove(bitmap) && !bitmap.isRecycled()) {
+                BitmapPool.release(bitmap);
+            }
+        } else {
+            pinnedBitmaps.put(bitmap, count - 1);
+        }
+    }
+}
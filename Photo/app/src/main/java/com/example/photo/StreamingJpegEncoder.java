@@ -0,0 +1,487 @@
+package com.example.photo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 按行流式写入的 JPEG 编码器（基线 JPEG，YCbCr 4:2:0，标准哈夫曼表）。
+ * Bitmap.compress 需要整幅图片在内存中，全分辨率导出时改用本类：
+ * 调用方按任意行数分批写入像素，每凑满 16 行（一行 MCU）就编码输出，
+ * 占用的内存只有 16 行像素，与图片高度无关。
+ * 不依赖 Android 类，可以直接在 JVM 上测试。
+ */
+public class StreamingJpegEncoder {
+
+    private static final int MCU_SIZE = 16;
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final int[] STD_LUMINANCE_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    private static final int[] STD_CHROMINANCE_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    // 标准哈夫曼表（JPEG 规范附录 K.3）：各码长的码字数和对应的符号
+    private static final int[] DC_LUMINANCE_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_CHROMINANCE_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+
+    private static final int[] AC_LUMINANCE_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] AC_LUMINANCE_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    private static final int[] AC_CHROMINANCE_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] AC_CHROMINANCE_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    // AAN 算法各行/列的缩放系数
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602,
+            1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    // 哈夫曼码表：下标为符号，分别保存码字和码长
+    private static final int[][] DC_LUMINANCE = buildHuffmanTable(DC_LUMINANCE_BITS, DC_VALUES);
+    private static final int[][] DC_CHROMINANCE = buildHuffmanTable(DC_CHROMINANCE_BITS, DC_VALUES);
+    private static final int[][] AC_LUMINANCE = buildHuffmanTable(AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+    private static final int[][] AC_CHROMINANCE = buildHuffmanTable(AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+
+    // 量化表（自然顺序）和 DCT 后的除数
+    private final int[] luminanceQuant = new int[64];
+    private final int[] chrominanceQuant = new int[64];
+    private final float[] luminanceDivisors = new float[64];
+    private final float[] chrominanceDivisors = new float[64];
+
+    // 当前 MCU 行的像素（按 16 的倍数补齐宽度）
+    private final int paddedWidth;
+    private final int[] band;
+    private int bandRows = 0;
+    private int rowsWritten = 0;
+
+    private final float[] block = new float[64];
+    private final float[] cbBlock = new float[64];
+    private final float[] crBlock = new float[64];
+    private final int[] quantized = new int[64];
+    private int previousY = 0;
+    private int previousCb = 0;
+    private int previousCr = 0;
+
+    // 位输出缓冲
+    private final byte[] buffer = new byte[64 * 1024];
+    private int bufferLength = 0;
+    private int bitBuffer = 0;
+    private int bitCount = 0;
+    private boolean finished = false;
+
+    /**
+     * 写入文件头
+     * @param quality 1-100，与 Bitmap.compress 的质量含义相同
+     */
+    public StreamingJpegEncoder(OutputStream out, int width, int height, int quality) throws IOException {
+        if (width <= 0 || height <= 0 || width > 65535 || height > 65535) {
+            throw new IOException("图片尺寸不支持: " + width + "x" + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.paddedWidth = (width + MCU_SIZE - 1) / MCU_SIZE * MCU_SIZE;
+        this.band = new int[paddedWidth * MCU_SIZE];
+
+        initQuantTable(STD_LUMINANCE_QUANT, quality, luminanceQuant, luminanceDivisors);
+        initQuantTable(STD_CHROMINANCE_QUANT, quality, chrominanceQuant, chrominanceDivisors);
+        writeHeaders();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 写入若干行像素
+     * @param pixels ARGB 像素（忽略透明度）
+     * @param stride 每行的像素数
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if (finished) {
+            throw new IOException("编码已结束");
+        }
+        if (rowsWritten + rows > height) {
+            throw new IOException("写入的行数超出图片高度");
+        }
+        for (int row = 0; row < rows; row++) {
+            int target = bandRows * paddedWidth;
+            System.arraycopy(pixels, offset + row * stride, band, target, width);
+            // 右侧补齐到 16 的倍数：重复最后一列，避免边缘出现色块
+            int last = band[target + width - 1];
+            for (int x = width; x < paddedWidth; x++) {
+                band[target + x] = last;
+            }
+            bandRows++;
+            rowsWritten++;
+            if (bandRows == MCU_SIZE || rowsWritten == height) {
+                encodeBand();
+            }
+        }
+    }
+
+    /**
+     * 写入所有行后调用，输出结束标记（不关闭输出流）
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (rowsWritten != height) {
+            throw new IOException("写入的行数不足: " + rowsWritten + "/" + height);
+        }
+        // 补齐最后一个字节（填 1）
+        if (bitCount > 0) {
+            writeBits(0x7f, 7);
+        }
+        bitBuffer = 0;
+        bitCount = 0;
+        writeMarker(0xD9);
+        flushBuffer();
+        out.flush();
+        finished = true;
+    }
+
+    private void encodeBand() throws IOException {
+        // 下方补齐到 16 行：重复最后一行
+        int lastRow = (bandRows - 1) * paddedWidth;
+        for (int row = bandRows; row < MCU_SIZE; row++) {
+            System.arraycopy(band, lastRow, band, row * paddedWidth, paddedWidth);
+        }
+
+        for (int mcuX = 0; mcuX < paddedWidth; mcuX += MCU_SIZE) {
+            // 4 个亮度块
+            for (int blockIndex = 0; blockIndex < 4; blockIndex++) {
+                int startX = mcuX + (blockIndex & 1) * 8;
+                int startY = (blockIndex >> 1) * 8;
+                for (int y = 0; y < 8; y++) {
+                    int base = (startY + y) * paddedWidth + startX;
+                    for (int x = 0; x < 8; x++) {
+                        int color = band[base + x];
+                        int r = (color >> 16) & 0xff;
+                        int g = (color >> 8) & 0xff;
+                        int b = color & 0xff;
+                        block[y * 8 + x] = 0.299f * r + 0.587f * g + 0.114f * b - 128f;
+                    }
+                }
+                previousY = encodeBlock(block, luminanceDivisors, previousY, DC_LUMINANCE, AC_LUMINANCE);
+            }
+
+            // 色度按 2x2 取平均
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 8; x++) {
+                    int index = (y * 2) * paddedWidth + mcuX + x * 2;
+                    int r = 0;
+                    int g = 0;
+                    int b = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int color = band[index + (i >> 1) * paddedWidth + (i & 1)];
+                        r += (color >> 16) & 0xff;
+                        g += (color >> 8) & 0xff;
+                        b += color & 0xff;
+                    }
+                    cbBlock[y * 8 + x] = (-0.168736f * r - 0.331264f * g + 0.5f * b) / 4f;
+                    crBlock[y * 8 + x] = (0.5f * r - 0.418688f * g - 0.081312f * b) / 4f;
+                }
+            }
+            previousCb = encodeBlock(cbBlock, chrominanceDivisors, previousCb, DC_CHROMINANCE, AC_CHROMINANCE);
+            previousCr = encodeBlock(crBlock, chrominanceDivisors, previousCr, DC_CHROMINANCE, AC_CHROMINANCE);
+        }
+        bandRows = 0;
+    }
+
+    /**
+     * DCT、量化并用哈夫曼编码输出一个 8x8 块
+     * @return 本块的 DC 值（下一块按差值编码）
+     */
+    private int encodeBlock(float[] data, float[] divisors, int previousDc,
+                            int[][] dcTable, int[][] acTable) throws IOException {
+        forwardDct(data);
+        for (int i = 0; i < 64; i++) {
+            int natural = ZIGZAG[i];
+            quantized[i] = Math.round(data[natural] * divisors[natural]);
+        }
+
+        int dc = quantized[0];
+        int diff = dc - previousDc;
+        int category = bitLength(diff);
+        writeBits(dcTable[0][category], dcTable[1][category]);
+        if (category > 0) {
+            writeBits(diff < 0 ? diff - 1 : diff, category);
+        }
+
+        int zeroRun = 0;
+        for (int i = 1; i < 64; i++) {
+            int value = quantized[i];
+            if (value == 0) {
+                zeroRun++;
+                continue;
+            }
+            while (zeroRun >= 16) {
+                writeBits(acTable[0][0xF0], acTable[1][0xF0]);
+                zeroRun -= 16;
+            }
+            int size = bitLength(value);
+            int symbol = (zeroRun << 4) | size;
+            writeBits(acTable[0][symbol], acTable[1][symbol]);
+            writeBits(value < 0 ? value - 1 : value, size);
+            zeroRun = 0;
+        }
+        if (zeroRun > 0) {
+            writeBits(acTable[0][0x00], acTable[1][0x00]);
+        }
+        return dc;
+    }
+
+    /**
+     * 浮点 AAN 正向 DCT（结果带缩放，由量化除数补偿）
+     */
+    private static void forwardDct(float[] data) {
+        for (int pass = 0; pass < 2; pass++) {
+            // 第一遍处理行，第二遍处理列
+            int step = pass == 0 ? 1 : 8;
+            int stride = pass == 0 ? 8 : 1;
+            for (int line = 0; line < 8; line++) {
+                int p = line * stride;
+                float d0 = data[p];
+                float d1 = data[p + step];
+                float d2 = data[p + 2 * step];
+                float d3 = data[p + 3 * step];
+                float d4 = data[p + 4 * step];
+                float d5 = data[p + 5 * step];
+                float d6 = data[p + 6 * step];
+                float d7 = data[p + 7 * step];
+
+                float tmp0 = d0 + d7;
+                float tmp7 = d0 - d7;
+                float tmp1 = d1 + d6;
+                float tmp6 = d1 - d6;
+                float tmp2 = d2 + d5;
+                float tmp5 = d2 - d5;
+                float tmp3 = d3 + d4;
+                float tmp4 = d3 - d4;
+
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                data[p] = tmp10 + tmp11;
+                data[p + 4 * step] = tmp10 - tmp11;
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[p + 2 * step] = tmp13 + z1;
+                data[p + 6 * step] = tmp13 - z1;
+
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+
+                data[p + 5 * step] = z13 + z2;
+                data[p + 3 * step] = z13 - z2;
+                data[p + step] = z11 + z4;
+                data[p + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    /**
+     * 按 IJG 的质量公式缩放标准量化表
+     */
+    private static void initQuantTable(int[] standard, int quality, int[] table, float[] divisors) {
+        quality = Math.max(1, Math.min(100, quality));
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int i = 0; i < 64; i++) {
+            int value = (standard[i] * scale + 50) / 100;
+            table[i] = Math.max(1, Math.min(255, value));
+        }
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                int i = row * 8 + column;
+                divisors[i] = (float) (1.0 / (table[i] * AAN_SCALE[row] * AAN_SCALE[column] * 8.0));
+            }
+        }
+    }
+
+    private static int[][] buildHuffmanTable(int[] bits, int[] values) {
+        int[][] table = new int[2][256];
+        int code = 0;
+        int index = 0;
+        for (int length = 1; length <= 16; length++) {
+            for (int i = 0; i < bits[length - 1]; i++) {
+                table[0][values[index]] = code;
+                table[1][values[index]] = length;
+                index++;
+                code++;
+            }
+            code <<= 1;
+        }
+        return table;
+    }
+
+    private static int bitLength(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    // ============ 输出 ============
+
+    private void writeHeaders() throws IOException {
+        writeMarker(0xD8);
+
+        // APP0：JFIF 1.01，无缩略图
+        writeMarker(0xE0);
+        writeShort(16);
+        writeBytes('J', 'F', 'I', 'F', 0, 1, 1, 0);
+        writeShort(1);
+        writeShort(1);
+        writeBytes(0, 0);
+
+        // DQT
+        writeMarker(0xDB);
+        writeShort(2 + 2 * 65);
+        writeQuantTable(0, luminanceQuant);
+        writeQuantTable(1, chrominanceQuant);
+
+        // SOF0：Y 2x2 采样，Cb、Cr 1x1
+        writeMarker(0xC0);
+        writeShort(17);
+        writeBytes(8);
+        writeShort(height);
+        writeShort(width);
+        writeBytes(3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1);
+
+        // DHT
+        writeMarker(0xC4);
+        writeShort(2 + 4 * 17 + 2 * DC_VALUES.length
+                + AC_LUMINANCE_VALUES.length + AC_CHROMINANCE_VALUES.length);
+        writeHuffmanTable(0x00, DC_LUMINANCE_BITS, DC_VALUES);
+        writeHuffmanTable(0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+        writeHuffmanTable(0x01, DC_CHROMINANCE_BITS, DC_VALUES);
+        writeHuffmanTable(0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+        // SOS
+        writeMarker(0xDA);
+        writeShort(12);
+        writeBytes(3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0);
+    }
+
+    private void writeQuantTable(int id, int[] table) throws IOException {
+        writeBytes(id);
+        for (int i = 0; i < 64; i++) {
+            writeBytes(table[ZIGZAG[i]]);
+        }
+    }
+
+    private void writeHuffmanTable(int id, int[] bits, int[] values) throws IOException {
+        writeBytes(id);
+        for (int count : bits) {
+            writeBytes(count);
+        }
+        for (int value : values) {
+            writeBytes(value);
+        }
+    }
+
+    private void writeMarker(int marker) throws IOException {
+        writeBytes(0xFF, marker);
+    }
+
+    private void writeShort(int value) throws IOException {
+        writeBytes(value >> 8, value);
+    }
+
+    private void writeBytes(int... values) throws IOException {
+        for (int value : values) {
+            putByte(value);
+        }
+    }
+
+    /**
+     * 写入 value 的低 length 位；熵编码数据中的 0xFF 后面要补 0x00
+     */
+    private void writeBits(int value, int length) throws IOException {
+        bitBuffer = (bitBuffer << length) | (value & ((1 << length) - 1));
+        bitCount += length;
+        while (bitCount >= 8) {
+            int b = (bitBuffer >> (bitCount - 8)) & 0xff;
+            putByte(b);
+            if (b == 0xff) {
+                putByte(0);
+            }
+            bitCount -= 8;
+        }
+    }
+
+    private void putByte(int value) throws IOException {
+        if (bufferLength == buffer.length) {
+            flushBuffer();
+        }
+        buffer[bufferLength++] = (byte) value;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, bufferLength);
+        bufferLength = 0;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.photo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 像素内核的多核分块调度器
+ * 把整帧按行切成适合缓存大小的条带，在共享的 ForkJoin 线程池中并行处理。
+ * 每个条带互不重叠，处理结果与单线程完全一致。
+ */
+public final class TileScheduler {
+
+    // 每个条带的目标像素数（约256KB），与 ImageProcessor 的条带缓冲区一致
+    public static final int BAND_PIXELS = 64 * 1024;
+
+    // 小于该像素数的图片直接在调用线程处理，避免调度开销
+    private static final int MIN_PARALLEL_PIXELS = 2 * BAND_PIXELS;
+
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // 全局共享的线程池，整个应用只创建一次
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("pixel-worker-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    /**
+     * 条带任务，处理 [top, top + rows) 行
+     */
+    public interface BandTask {
+        void run(int top, int rows);
+    }
+
+    private TileScheduler() {
+    }
+
+    /**
+     * 并行线程数
+     */
+    public static int getParallelism() {
+        return PARALLELISM;
+    }
+
+    /**
+     * 根据图片宽度计算每个条带的行数
+     */
+    public static int bandRowsFor(int width) {
+        return Math.max(1, BAND_PIXELS / Math.max(1, width));
+    }
+
+    /**
+     * 把 height 行按 bandRows 切分成条带并行执行，所有条带完成后才返回
+     */
+    public static void forEachBand(int height, int bandRows, BandTask task) {
+        if (height <= 0) {
+            return;
+        }
+        int bands = (height + bandRows - 1) / bandRows;
+        if (bands == 1 || PARALLELISM == 1) {
+            runBands(0, bands, height, bandRows, task);
+            return;
+        }
+        POOL.invoke(new BandAction(0, bands, height, bandRows, task));
+    }
+
+    /**
+     * 用内核并行处理整帧像素数组（原地修改）
+     */
+    public static void apply(int[] pixels, int width, int height, PixelKernel kernel) {
+        if (width * height < MIN_PARALLEL_PIXELS) {
+            kernel.apply(pixels, 0, width * height);
+            return;
+        }
+        forEachBand(height, bandRowsFor(width),
+                (top, rows) -> kernel.apply(pixels, top * width, rows * width));
+    }
+
+    /**
+     * 单线程处理整帧像素数组，用于对比测试
+     */
+    public static void applySequential(int[] pixels, int width, int height, PixelKernel kernel) {
+        int bandRows = bandRowsFor(width);
+        int bands = (height + bandRows - 1) / bandRows;
+        runBands(0, bands, height, bandRows,
+                (top, rows) -> kernel.apply(pixels, top * width, rows * width));
+    }
+
+    private static void runBands(int from, int to, int height, int bandRows, BandTask task) {
+        for (int band = from; band < to; band++) {
+            int top = band * bandRows;
+            task.run(top, Math.min(bandRows, height - top));
+        }
+    }
+
+    /**
+     * 二分拆分条带区间，直到只剩一个条带
+     */
+    private static class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int height;
+        private final int bandRows;
+        private final BandTask task;
+
+        BandAction(int from, int to, int height, int bandRows, BandTask task) {
+            this.from = from;
+            this.to = to;
+            this.height = height;
+            this.bandRows = bandRows;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                runBands(from, to, height, bandRows, task);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BandAction(from, mid, height, bandRows, task),
+                    new BandAction(mid, to, height, bandRows, task));
+        }
+    }
+}
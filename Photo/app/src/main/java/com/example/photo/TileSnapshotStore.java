@@ -0,0 +1,322 @@
+package com.example.photo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 撤销快照的磁盘存储：把图片切成 64x64 的分块，通过 FileChannel.map 写入缓存文件。
+ * 内容相同的分块按哈希去重，只保存一份，相邻两步之间只有改动过的分块会占用新的空间。
+ * 文件按固定大小的段映射，每个分块占一个固定大小的槽位，删除快照后槽位回收复用。
+ * 所有方法都是同步的，可以在任意线程调用。
+ */
+public class TileSnapshotStore {
+
+    public static final int TILE_SIZE = 64;
+    private static final int SLOT_INTS = TILE_SIZE * TILE_SIZE;
+    private static final int SLOT_BYTES = SLOT_INTS * 4;
+    // 每段 4MB，容纳 256 个分块
+    private static final int SEGMENT_SLOTS = 256;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_SLOTS * SLOT_BYTES;
+
+    /**
+     * 按行读取像素（保存快照时调用）
+     */
+    public interface RowReader {
+        void readRows(int top, int rows, int[] out);
+    }
+
+    /**
+     * 按行写回像素（读取快照时调用）
+     */
+    public interface RowWriter {
+        void writeRows(int top, int rows, int[] in);
+    }
+
+    private static final class Snapshot {
+        final int width;
+        final int height;
+        final int[] slots;
+
+        Snapshot(int width, int height, int[] slots) {
+            this.width = width;
+            this.height = height;
+            this.slots = slots;
+        }
+    }
+
+    private final File file;
+    private final long maxBytes;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private final List<IntBuffer> segments = new ArrayList<>();
+
+    private final Map<Integer, Snapshot> snapshots = new HashMap<>();
+    // 分块哈希 -> 槽位
+    private final Map<Long, Integer> slotsByHash = new HashMap<>();
+    private long[] slotHashes = new long[SEGMENT_SLOTS];
+    private int[] slotRefs = new int[SEGMENT_SLOTS];
+    private int slotCount = 0;
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    private final int[] tileBuffer = new int[SLOT_INTS];
+    private final int[] compareBuffer = new int[SLOT_INTS];
+
+    /**
+     * @param file 缓存文件，已存在时会被清空
+     * @param maxBytes 文件大小上限
+     */
+    public TileSnapshotStore(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = Math.max(SEGMENT_BYTES, maxBytes);
+    }
+
+    /**
+     * 保存一份快照，key 已存在时覆盖
+     */
+    public synchronized void put(int key, int width, int height, RowReader reader) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IOException("快照尺寸无效: " + width + "x" + height);
+        }
+        ensureOpen();
+
+        int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int[] slots = new int[columns * tileRows];
+        int[] band = new int[width * TILE_SIZE];
+        int stored = 0;
+
+        try {
+            for (int tileY = 0; tileY < tileRows; tileY++) {
+                int top = tileY * TILE_SIZE;
+                int rows = Math.min(TILE_SIZE, height - top);
+                reader.readRows(top, rows, band);
+
+                for (int tileX = 0; tileX < columns; tileX++) {
+                    int left = tileX * TILE_SIZE;
+                    int columnsInTile = Math.min(TILE_SIZE, width - left);
+                    int length = copyTile(band, width, left, columnsInTile, rows, tileBuffer);
+                    slots[stored++] = storeTile(tileBuffer, length);
+                }
+            }
+        } catch (IOException e) {
+            // 已经引用的分块要释放
+            for (int i = 0; i < stored; i++) {
+                releaseSlot(slots[i]);
+            }
+            throw e;
+        }
+
+        remove(key);
+        snapshots.put(key, new Snapshot(width, height, slots));
+    }
+
+    public synchronized boolean contains(int key) {
+        return snapshots.containsKey(key);
+    }
+
+    /**
+     * 快照尺寸
+     * @return {宽, 高}，不存在时返回 null
+     */
+    public synchronized int[] getSize(int key) {
+        Snapshot snapshot = snapshots.get(key);
+        return snapshot != null ? new int[] {snapshot.width, snapshot.height} : null;
+    }
+
+    /**
+     * 读取快照
+     * @return 不存在时返回 false
+     */
+    public synchronized boolean read(int key, RowWriter writer) {
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            return false;
+        }
+
+        int width = snapshot.width;
+        int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tileRows = (snapshot.height + TILE_SIZE - 1) / TILE_SIZE;
+        int[] band = new int[width * TILE_SIZE];
+
+        for (int tileY = 0; tileY < tileRows; tileY++) {
+            int top = tileY * TILE_SIZE;
+            int rows = Math.min(TILE_SIZE, snapshot.height - top);
+            for (int tileX = 0; tileX < columns; tileX++) {
+                int left = tileX * TILE_SIZE;
+                int columnsInTile = Math.min(TILE_SIZE, width - left);
+                readSlot(snapshot.slots[tileY * columns + tileX], tileBuffer, columnsInTile * rows);
+                for (int y = 0; y < rows; y++) {
+                    System.arraycopy(tileBuffer, y * columnsInTile, band, y * width + left, columnsInTile);
+                }
+            }
+            writer.writeRows(top, rows, band);
+        }
+        return true;
+    }
+
+    /**
+     * 删除快照，不再被引用的分块槽位会被复用
+     */
+    public synchronized void remove(int key) {
+        Snapshot snapshot = snapshots.remove(key);
+        if (snapshot != null) {
+            for (int slot : snapshot.slots) {
+                releaseSlot(slot);
+            }
+        }
+    }
+
+    /**
+     * 当前实际占用的分块数（去重之后）
+     */
+    public synchronized int getUsedTileCount() {
+        return slotCount - freeSlots.size();
+    }
+
+    public synchronized long getFileBytes() {
+        return segments.size() * SEGMENT_BYTES;
+    }
+
+    /**
+     * 关闭并删除缓存文件
+     */
+    public synchronized void close() {
+        snapshots.clear();
+        slotsByHash.clear();
+        freeSlots.clear();
+        slotCount = 0;
+        segments.clear();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        randomAccessFile = null;
+        file.delete();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(0);
+            channel = randomAccessFile.getChannel();
+        }
+    }
+
+    /**
+     * 从条带中取出一个分块，按行紧密排列
+     * @return 像素数
+     */
+    private static int copyTile(int[] band, int width, int left, int columns, int rows, int[] out) {
+        for (int y = 0; y < rows; y++) {
+            System.arraycopy(band, y * width + left, out, y * columns, columns);
+        }
+        return columns * rows;
+    }
+
+    /**
+     * 保存一个分块，内容相同时复用已有槽位
+     * @return 槽位
+     */
+    private int storeTile(int[] tile, int length) throws IOException {
+        long hash = hashTile(tile, length);
+        Integer existing = slotsByHash.get(hash);
+        if (existing != null) {
+            readSlot(existing, compareBuffer, length);
+            if (equalsRange(tile, compareBuffer, length)) {
+                slotRefs[existing]++;
+                return existing;
+            }
+        }
+
+        int slot = allocateSlot();
+        IntBuffer segment = segments.get(slot / SEGMENT_SLOTS).duplicate();
+        segment.position((slot % SEGMENT_SLOTS) * SLOT_INTS);
+        segment.put(tile, 0, length);
+
+        slotHashes[slot] = hash;
+        slotRefs[slot] = 1;
+        if (existing == null) {
+            // 哈希冲突时保留原来的映射，新分块不参与去重
+            slotsByHash.put(hash, slot);
+        }
+        return slot;
+    }
+
+    private void readSlot(int slot, int[] out, int length) {
+        IntBuffer segment = segments.get(slot / SEGMENT_SLOTS).duplicate();
+        segment.position((slot % SEGMENT_SLOTS) * SLOT_INTS);
+        segment.get(out, 0, length);
+    }
+
+    private int allocateSlot() throws IOException {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.pop();
+        }
+
+        int slot = slotCount;
+        if (slot / SEGMENT_SLOTS >= segments.size()) {
+            long offset = segments.size() * SEGMENT_BYTES;
+            if (offset + SEGMENT_BYTES > maxBytes) {
+                throw new IOException("撤销缓存已满");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, SEGMENT_BYTES);
+            buffer.order(ByteOrder.nativeOrder());
+            segments.add(buffer.asIntBuffer());
+        }
+        if (slot >= slotRefs.length) {
+            slotRefs = Arrays.copyOf(slotRefs, slotRefs.length * 2);
+            slotHashes = Arrays.copyOf(slotHashes, slotHashes.length * 2);
+        }
+        slotCount++;
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        if (--slotRefs[slot] == 0) {
+            Integer mapped = slotsByHash.get(slotHashes[slot]);
+            if (mapped != null && mapped == slot) {
+                slotsByHash.remove(slotHashes[slot]);
+            }
+            freeSlots.push(slot);
+        }
+    }
+
+    /**
+     * 64 位 FNV-1a 哈希
+     */
+    private static long hashTile(int[] tile, int length) {
+        long hash = 0xcbf29ce484222325L ^ length;
+        for (int i = 0; i < length; i++) {
+            hash ^= tile[i];
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static boolean equalsRange(int[] a, int[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.photo;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 超大图片的分块查看：用 BitmapRegionDecoder 按需解码原图的局部区域。
+ * 分块按多级金字塔组织，第 n 级的采样率为 2^n，每块解码后为 TILE_SIZE 大小；
+ * 绘制时按当前缩放选择级别，只解码屏幕上可见的分块，解码在后台线程进行，
+ * 不再可见的分块请求会被取消。解码结果放在按字节数限制的 LRU 缓存中。
+ * 分块在未摆正的原图坐标中切分，绘制时通过 EXIF 方向的变换摆正，不需要旋转分块。
+ *
+ * 除 {@link #open} 外只能在主线程使用。
+ */
+public class TiledImageSource {
+
+    private static final String TAG = "TiledImageSource";
+
+    // 每块解码后的边长
+    private static final int TILE_SIZE = 512;
+
+    /**
+     * 有新的分块解码完成，需要重绘
+     */
+    public interface Listener {
+        void onTileLoaded();
+    }
+
+    private final ParcelFileDescriptor descriptor;
+    private final BitmapRegionDecoder decoder;
+    // 未摆正的原图尺寸
+    private final int rawWidth;
+    private final int rawHeight;
+    // 摆正后的尺寸
+    private final int width;
+    private final int height;
+    private final Matrix orientation;
+
+    private final LruCache<Long, Bitmap> cache;
+    private final Map<Long, Future<?>> pending = new HashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tile-decode");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+    private boolean released = false;
+
+    // 绘制时复用的对象
+    private final Matrix rawToView = new Matrix();
+    private final Matrix viewToRaw = new Matrix();
+    private final RectF visible = new RectF();
+    private final Rect tileRect = new Rect();
+    private final Set<Long> wanted = new HashSet<>();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private TiledImageSource(ParcelFileDescriptor descriptor, BitmapRegionDecoder decoder,
+                             int exifOrientation, long cacheBytes) {
+        this.descriptor = descriptor;
+        this.decoder = decoder;
+        this.rawWidth = decoder.getWidth();
+        this.rawHeight = decoder.getHeight();
+        boolean swapped = PhotoDecoder.isSwapped(exifOrientation);
+        this.width = swapped ? rawHeight : rawWidth;
+        this.height = swapped ? rawWidth : rawHeight;
+        Matrix matrix = PhotoDecoder.getOrientationMatrix(exifOrientation, rawWidth, rawHeight);
+        this.orientation = matrix != null ? matrix : new Matrix();
+
+        // 淘汰的分块可能还在本帧的绘制中，不手动回收，交给GC
+        int maxSize = (int) Math.min(Integer.MAX_VALUE, Math.max(cacheBytes, 1));
+        this.cache = new LruCache<Long, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * 打开图片（读取文件头，耗时操作，在后台线程调用）
+     * @param cacheBytes 分块缓存的字节上限
+     */
+    @SuppressWarnings("deprecation")
+    public static TiledImageSource open(ContentResolver resolver, Uri uri, long cacheBytes) throws IOException {
+        int exifOrientation;
+        try (InputStream inputStream = resolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                throw new IOException("无法打开图片流");
+            }
+            exifOrientation = PhotoDecoder.readOrientation(inputStream);
+        }
+
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new IOException("无法打开图片文件");
+        }
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+            if (decoder == null) {
+                throw new IOException("不支持分块解码");
+            }
+            return new TiledImageSource(descriptor, decoder, exifOrientation, cacheBytes);
+        } catch (IOException e) {
+            descriptor.close();
+            throw e;
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 摆正后的原图宽度
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 在底图上叠加绘制可见区域的高清分块；底图的分辨率已经足够时不绘制
+     * @param baseToView 底图坐标到画布坐标的变换
+     * @param baseWidth 底图宽度（与原图宽高比相同）
+     */
+    public void draw(Canvas canvas, Matrix baseToView, int baseWidth, int baseHeight,
+                     int viewWidth, int viewHeight) {
+        if (released || baseWidth <= 0 || baseHeight <= 0) {
+            return;
+        }
+
+        rawToView.set(baseToView);
+        rawToView.preScale(baseWidth / (float) width, baseHeight / (float) height);
+        rawToView.preConcat(orientation);
+
+        // 每个屏幕像素对应的原图像素数
+        float rawPerView = 1f / Math.max(1e-6f, rawToView.mapRadius(1f));
+        if (rawPerView >= width / (float) baseWidth || !rawToView.invert(viewToRaw)) {
+            cancelUnwanted(null);
+            return;
+        }
+        int sampleSize = 1;
+        while (sampleSize * 2 <= rawPerView) {
+            sampleSize *= 2;
+        }
+        int tileRaw = TILE_SIZE * sampleSize;
+
+        visible.set(0, 0, viewWidth, viewHeight);
+        viewToRaw.mapRect(visible);
+        int left = Math.max(0, (int) Math.floor(visible.left / tileRaw));
+        int top = Math.max(0, (int) Math.floor(visible.top / tileRaw));
+        int right = Math.min((rawWidth - 1) / tileRaw, (int) Math.floor(visible.right / tileRaw));
+        int bottom = Math.min((rawHeight - 1) / tileRaw, (int) Math.floor(visible.bottom / tileRaw));
+
+        wanted.clear();
+        canvas.save();
+        canvas.concat(rawToView);
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                long key = tileKey(sampleSize, column, row);
+                tileRect.set(column * tileRaw, row * tileRaw,
+                        Math.min(rawWidth, (column + 1) * tileRaw), Math.min(rawHeight, (row + 1) * tileRaw));
+                Bitmap tile = cache.get(key);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, tileRect, paint);
+                } else {
+                    wanted.add(key);
+                    request(key, tileRect, sampleSize);
+                }
+            }
+        }
+        canvas.restore();
+        cancelUnwanted(wanted);
+    }
+
+    /**
+     * 内存紧张时缩减分块缓存
+     * @param retainRatio 保留的比例，0 表示清空
+     */
+    public void trimMemory(float retainRatio) {
+        cache.trimToSize((int) (cache.maxSize() * Math.max(0f, Math.min(1f, retainRatio))));
+    }
+
+    /**
+     * 释放解码器和缓存，已提交的解码结束后关闭文件
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        cancelUnwanted(null);
+        cache.evictAll();
+        executor.execute(() -> {
+            decoder.recycle();
+            try {
+                descriptor.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        executor.shutdown();
+    }
+
+    private void request(long key, Rect region, int sampleSize) {
+        if (pending.containsKey(key)) {
+            return;
+        }
+        final Rect rect = new Rect(region);
+        pending.put(key, executor.submit(() -> {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap tile = null;
+            try {
+                tile = decoder.decodeRegion(rect, options);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.e(TAG, "分块解码失败: " + rect + ", " + e.getMessage());
+            }
+
+            final Bitmap decoded = tile;
+            mainHandler.post(() -> {
+                pending.remove(key);
+                if (decoded == null || released) {
+                    return;
+                }
+                cache.put(key, decoded);
+                if (listener != null) {
+                    listener.onTileLoaded();
+                }
+            });
+        }));
+    }
+
+    /**
+     * 取消不在当前可见范围内、还没开始的解码请求
+     * @param keep 需要保留的分块，为 null 时全部取消
+     */
+    private void cancelUnwanted(Set<Long> keep) {
+        Iterator<Map.Entry<Long, Future<?>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Future<?>> entry = iterator.next();
+            if (keep == null || !keep.contains(entry.getKey())) {
+                if (entry.getValue().cancel(false)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 分块键：采样率的级别、列、行
+     */
+    private static long tileKey(int sampleSize, int column, int row) {
+        long level = Integer.numberOfTrailingZeros(sampleSize);
+        return (level << 48) | ((long) column << 24) | row;
+    }
+}
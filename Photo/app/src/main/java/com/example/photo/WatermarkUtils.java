@@ -20,9 +20,22 @@ public class WatermarkUtils {
         }
 
         // 创建一个可修改的Bitmap副本
-        Bitmap result = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(result);
+        Bitmap result = BitmapPool.copyOf(bitmap);
+        drawTextWatermark(new Canvas(result), watermarkText);
+        return result;
+    }
 
+    /**
+     * 直接在画布上绘制文字水印（右下角），不复制图片
+     */
+    public static void drawTextWatermark(Canvas canvas, String watermarkText) {
+        drawTextWatermark(canvas, watermarkText, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * 在画布上按指定的图片尺寸绘制文字水印（画布只是图片的一部分时使用，如分条带导出）
+     */
+    public static void drawTextWatermark(Canvas canvas, String watermarkText, int width, int height) {
         Paint paint = new Paint();
         paint.setColor(Color.WHITE);
         paint.setTextSize(40);
@@ -34,13 +47,11 @@ public class WatermarkUtils {
 
         // 计算水印位置（右下角，留出边距）
         int padding = 20;
-        float x = canvas.getWidth() - paint.measureText(watermarkText) - padding;
-        float y = canvas.getHeight() - padding;
+        float x = width - paint.measureText(watermarkText) - padding;
+        float y = height - padding;
 
         // 绘制水印
         canvas.drawText(watermarkText, x, y, paint);
-
-        return result;
     }
 
     /**
@@ -51,7 +62,7 @@ public class WatermarkUtils {
             return null;
         }
 
-        Bitmap result = bitmap.copy(Bitmap.Config.ARGB_8888, true);
+        Bitmap result = BitmapPool.copyOf(bitmap);
         Canvas canvas = new Canvas(result);
 
         Paint paint = new Paint();
@@ -91,7 +102,7 @@ public class WatermarkUtils {
             return null;
         }
 
-        Bitmap result = bitmap.copy(Bitmap.Config.ARGB_8888, true);
+        Bitmap result = BitmapPool.copyOf(bitmap);
         Canvas canvas = new Canvas(result);
 
         // 创建背景矩形
@@ -1,6 +1,8 @@
 package com.example.photo;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.PointF;
 import android.util.AttributeSet;
@@ -24,12 +26,23 @@ public class ZoomableImageView extends AppCompatImageView {
     private PointF mid = new PointF();
     private float oldDist = 1f;
 
+    private static final float DEFAULT_MAX_SCALE = 2.0f;
     private float minScale = 0.5f;
-    private float maxScale = 2.0f;
+    private float maxScale = DEFAULT_MAX_SCALE;
     private float[] matrixValues = new float[9];
 
     private ScaleGestureDetector scaleGestureDetector;
 
+    // 低分辨率代理图：显示时按比例放大，保持与原图相同的显示大小和位置
+    private boolean hasProxy = false;
+    private float proxyScaleX = 1f;
+    private float proxyScaleY = 1f;
+    private final Matrix displayMatrix = new Matrix();
+
+    // 超大图片的分块源：放大到底图分辨率不够时叠加绘制原图的高清分块
+    private TiledImageSource tileSource;
+    private final Matrix tileMatrix = new Matrix();
+
     public ZoomableImageView(Context context) {
         super(context);
         init();
@@ -101,7 +114,7 @@ public class ZoomableImageView extends AppCompatImageView {
             matrix.postTranslate(matrixValues[Matrix.MTRANS_X], matrixValues[Matrix.MTRANS_Y]);
         }
 
-        setImageMatrix(matrix);
+        applyMatrix();
         return true;
     }
 
@@ -127,7 +140,7 @@ public class ZoomableImageView extends AppCompatImageView {
             if ((currentScale < maxScale && scaleFactor > 1.0f) ||
                     (currentScale > minScale && scaleFactor < 1.0f)) {
                 matrix.postScale(scaleFactor, scaleFactor, detector.getFocusX(), detector.getFocusY());
-                setImageMatrix(matrix);
+                applyMatrix();
             }
             return true;
         }
@@ -135,6 +148,82 @@ public class ZoomableImageView extends AppCompatImageView {
 
     public void resetZoom() {
         matrix.reset();
-        setImageMatrix(matrix);
+        applyMatrix();
+    }
+
+    @Override
+    public void setImageBitmap(Bitmap bm) {
+        if (hasProxy) {
+            // 换回正常图片，去掉代理图的放大
+            hasProxy = false;
+            proxyScaleX = 1f;
+            proxyScaleY = 1f;
+            super.setImageBitmap(bm);
+            applyMatrix();
+        } else {
+            super.setImageBitmap(bm);
+        }
+    }
+
+    /**
+     * 显示低分辨率代理图（拖动滑块预览时使用）
+     * @param proxy 代理图
+     * @param fullWidth 对应的原图宽度
+     * @param fullHeight 对应的原图高度
+     */
+    public void setProxyBitmap(Bitmap proxy, int fullWidth, int fullHeight) {
+        hasProxy = true;
+        proxyScaleX = fullWidth / (float) proxy.getWidth();
+        proxyScaleY = fullHeight / (float) proxy.getHeight();
+        super.setImageBitmap(proxy);
+        applyMatrix();
+    }
+
+    public boolean isShowingProxy() {
+        return hasProxy;
+    }
+
+    /**
+     * 设置当前图片对应的原图分块源（当前图片必须是原图按比例缩小的结果），为 null 时关闭分块显示。
+     * 设置后允许放大到原图的 2 倍像素密度
+     */
+    public void setTileSource(TiledImageSource source) {
+        if (tileSource != null) {
+            tileSource.setListener(null);
+        }
+        tileSource = source;
+        maxScale = DEFAULT_MAX_SCALE;
+        if (source != null) {
+            source.setListener(this::invalidate);
+            if (getDrawable() != null && getDrawable().getIntrinsicWidth() > 0) {
+                maxScale = Math.max(DEFAULT_MAX_SCALE,
+                        DEFAULT_MAX_SCALE * source.getWidth() / getDrawable().getIntrinsicWidth());
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (tileSource == null || hasProxy || getDrawable() == null) {
+            return;
+        }
+        // 与 ImageView 绘制底图时相同的变换
+        tileMatrix.set(matrix);
+        tileMatrix.postTranslate(getPaddingLeft(), getPaddingTop());
+        tileSource.draw(canvas, tileMatrix,
+                getDrawable().getIntrinsicWidth(), getDrawable().getIntrinsicHeight(),
+                getWidth(), getHeight());
+    }
+
+    private void applyMatrix() {
+        if (hasProxy) {
+            displayMatrix.set(matrix);
+            displayMatrix.preScale(proxyScaleX, proxyScaleY);
+            setImageMatrix(displayMatrix);
+        } else {
+            setImageMatrix(matrix);
+        }
     }
 }
\ No newline at end of file
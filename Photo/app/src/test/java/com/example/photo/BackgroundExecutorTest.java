@@ -0,0 +1,42 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.util.concurrent.PriorityBlockingQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * 后台任务队列的排序：优先级高的先执行，同一优先级按提交顺序
+ */
+public class BackgroundExecutorTest {
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Test
+    public void queue_runsVisibleBeforePrefetch() {
+        PriorityBlockingQueue<BackgroundExecutor.Entry> queue = new PriorityBlockingQueue<>();
+        queue.add(new BackgroundExecutor.Entry(BackgroundExecutor.Priority.PREFETCH, 0, NOOP));
+        queue.add(new BackgroundExecutor.Entry(BackgroundExecutor.Priority.NORMAL, 1, NOOP));
+        queue.add(new BackgroundExecutor.Entry(BackgroundExecutor.Priority.VISIBLE, 2, NOOP));
+
+        assertEquals(BackgroundExecutor.Priority.VISIBLE, queue.poll().priority);
+        assertEquals(BackgroundExecutor.Priority.NORMAL, queue.poll().priority);
+        assertEquals(BackgroundExecutor.Priority.PREFETCH, queue.poll().priority);
+    }
+
+    @Test
+    public void queue_keepsSubmitOrderWithinPriority() {
+        PriorityBlockingQueue<BackgroundExecutor.Entry> queue = new PriorityBlockingQueue<>();
+        for (long i = 9; i >= 0; i--) {
+            queue.add(new BackgroundExecutor.Entry(BackgroundExecutor.Priority.NORMAL, i, NOOP));
+        }
+        queue.add(new BackgroundExecutor.Entry(BackgroundExecutor.Priority.VISIBLE, 10, NOOP));
+
+        assertEquals(10, queue.poll().sequence);
+        for (long i = 0; i < 10; i++) {
+            assertEquals(i, queue.poll().sequence);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 查找表内核与原有浮点算法的对比测试（纯 JVM，不依赖 Android 框架）
+ */
+public class ChannelLutTest {
+
+    @Test
+    public void contrast_matchesFloatPath() {
+        for (int value = -50; value <= 150; value += 5) {
+            ChannelLut lut = ChannelLut.contrast(value);
+            float contrast = (value + 50) / 50.0f;
+            for (int c = 0; c < 256; c++) {
+                int expected = clamp((int) (((c - 127) * contrast) + 127));
+                assertWithinOne(expected, lut.mapRed(c));
+                assertWithinOne(expected, lut.mapGreen(c));
+                assertWithinOne(expected, lut.mapBlue(c));
+            }
+        }
+    }
+
+    @Test
+    public void brightnessExtreme_matchesFloatPath() {
+        for (int brightness = -150; brightness <= 150; brightness += 3) {
+            ChannelLut lut = ChannelLut.brightnessExtreme(brightness);
+            float brightFactor = brightness / 25.0f;
+            for (int c = 0; c < 256; c++) {
+                int expected = clamp((int) (c + brightFactor * 128 * (1 + Math.abs(brightFactor) / 10)));
+                assertWithinOne(expected, lut.mapRed(c));
+            }
+        }
+    }
+
+    @Test
+    public void apply_matchesPerPixelFloatPath() {
+        int[] pixels = randomPixels(4096, 42);
+        int[] expected = pixels.clone();
+        int value = 37;
+        float contrast = (value + 50) / 50.0f;
+        for (int i = 0; i < expected.length; i++) {
+            int color = expected[i];
+            int a = color >>> 24;
+            int r = clamp((int) ((((color >> 16) & 0xFF) - 127) * contrast + 127));
+            int g = clamp((int) ((((color >> 8) & 0xFF) - 127) * contrast + 127));
+            int b = clamp((int) (((color & 0xFF) - 127) * contrast + 127));
+            expected[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+
+        ChannelLut.contrast(value).apply(pixels, 0, pixels.length);
+
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(expected[i] >>> 24, pixels[i] >>> 24);
+            assertWithinOne((expected[i] >> 16) & 0xFF, (pixels[i] >> 16) & 0xFF);
+            assertWithinOne((expected[i] >> 8) & 0xFF, (pixels[i] >> 8) & 0xFF);
+            assertWithinOne(expected[i] & 0xFF, pixels[i] & 0xFF);
+        }
+    }
+
+    @Test
+    public void apply_onlyTouchesRequestedRange() {
+        int[] pixels = randomPixels(100, 7);
+        int[] original = pixels.clone();
+
+        ChannelLut.brightnessExtreme(80).apply(pixels, 10, 20);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(original[i], pixels[i]);
+        }
+        for (int i = 30; i < pixels.length; i++) {
+            assertEquals(original[i], pixels[i]);
+        }
+    }
+
+    @Test
+    public void then_equalsSequentialApplication() {
+        ChannelLut contrast = ChannelLut.contrast(60);
+        ChannelLut brightness = ChannelLut.brightnessExtreme(-40);
+        ChannelLut combined = contrast.then(brightness);
+
+        int[] sequential = randomPixels(2048, 3);
+        int[] fused = sequential.clone();
+
+        contrast.apply(sequential, 0, sequential.length);
+        brightness.apply(sequential, 0, sequential.length);
+        combined.apply(fused, 0, fused.length);
+
+        assertArrayEquals(sequential, fused);
+    }
+
+    @Test
+    public void identity_keepsPixels() {
+        int[] pixels = randomPixels(512, 11);
+        int[] original = pixels.clone();
+
+        ChannelLut.identity().apply(pixels, 0, pixels.length);
+
+        assertArrayEquals(original, pixels);
+    }
+
+    private static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static void assertWithinOne(int expected, int actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= 1);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * .cube 解析与四面体插值测试
+ */
+public class CubeLutTest {
+
+    @Test
+    public void parse_readsHeaderAndLattice() throws IOException {
+        CubeLut lut = CubeLut.parse(new StringReader(identityCube(2, "Identity")));
+
+        assertEquals("Identity", lut.getTitle());
+        assertEquals(2, lut.getSize());
+        assertEquals(0xFF123456, lut.map(0xFF123456));
+    }
+
+    @Test
+    public void parse_identityKeepsColorsWithinOne() throws IOException {
+        CubeLut lut = CubeLut.parse(new StringReader(identityCube(17, null)));
+        Random random = new Random(1);
+
+        for (int i = 0; i < 10000; i++) {
+            int color = random.nextInt();
+            assertColorWithinOne(color, lut.map(color));
+        }
+    }
+
+    @Test
+    public void parse_respectsDomain() throws IOException {
+        String cube = "LUT_3D_SIZE 2\n"
+                + "DOMAIN_MIN 0 0 0\n"
+                + "DOMAIN_MAX 255 255 255\n"
+                + "0 0 0\n255 0 0\n0 255 0\n255 255 0\n"
+                + "0 0 255\n255 0 255\n0 255 255\n255 255 255\n";
+
+        CubeLut lut = CubeLut.parse(new StringReader(cube));
+
+        assertColorWithinOne(0xFF808080, lut.map(0xFF808080));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsMissingSize() throws IOException {
+        CubeLut.parse(new StringReader("0 0 0\n1 1 1\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsIncompleteData() throws IOException {
+        CubeLut.parse(new StringReader("LUT_3D_SIZE 2\n0 0 0\n1 0 0\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsBadNumbers() throws IOException {
+        CubeLut.parse(new StringReader("LUT_3D_SIZE 2\n0 zero 0\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_rejectsOversizedLattice() throws IOException {
+        CubeLut.parse(new StringReader("LUT_3D_SIZE 256\n0 0 0\n"));
+    }
+
+    @Test
+    public void readTitle_stopsAtData() throws IOException {
+        assertEquals("胶片", CubeLut.readTitle(new java.io.BufferedReader(
+                new StringReader("# comment\nTITLE \"胶片\"\nLUT_3D_SIZE 2\n0 0 0\n"))));
+        assertNull(CubeLut.readTitle(new java.io.BufferedReader(
+                new StringReader("LUT_3D_SIZE 2\n0 0 0\nTITLE \"late\"\n"))));
+    }
+
+    @Test
+    public void map_interpolatesLinearLutExactly() {
+        // 四面体插值对线性映射是精确的（反色）
+        CubeLut lut = CubeLut.fromFunction(null, 5, (r, g, b, out) -> {
+            out[0] = 1 - r;
+            out[1] = 1 - g;
+            out[2] = 1 - b;
+        });
+        Random random = new Random(2);
+
+        for (int i = 0; i < 10000; i++) {
+            int color = random.nextInt();
+            int inverted = (color & 0xFF000000) | (~color & 0x00FFFFFF);
+            assertColorWithinOne(inverted, lut.map(color));
+        }
+    }
+
+    @Test
+    public void map_hitsLatticePointsExactly() {
+        CubeLut lut = CubeLut.fromFunction(null, 18, (r, g, b, out) -> {
+            out[0] = g;
+            out[1] = b;
+            out[2] = r;
+        });
+
+        // 255 / 17 = 15，每 15 落在一个网格点上
+        for (int v = 0; v <= 255; v += 15) {
+            int color = 0xFF000000 | (v << 16) | ((255 - v) << 8) | (v / 2);
+            int expected = 0xFF000000 | ((255 - v) << 16) | ((v / 2) << 8) | v;
+            assertColorWithinOne(expected, lut.map(color));
+        }
+    }
+
+    @Test
+    public void apply_matchesMapAndKeepsAlpha() {
+        CubeLut lut = CubeLut.fromFunction(null, 9, (r, g, b, out) -> {
+            out[0] = r * r;
+            out[1] = (float) Math.sqrt(g);
+            out[2] = (r + g + b) / 3;
+        });
+        int[] pixels = new int[4000];
+        Random random = new Random(3);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        int[] expected = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            expected[i] = lut.map(pixels[i]);
+        }
+
+        TileScheduler.apply(pixels, 80, 50, lut);
+
+        assertArrayEquals(expected, pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(expected[i] >>> 24, pixels[i] >>> 24);
+        }
+    }
+
+    private static String identityCube(int size, String title) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# identity\n");
+        if (title != null) {
+            builder.append("TITLE \"").append(title).append("\"\n");
+        }
+        builder.append("LUT_3D_SIZE ").append(size).append('\n');
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    builder.append(r / (float) (size - 1)).append(' ')
+                            .append(g / (float) (size - 1)).append(' ')
+                            .append(b / (float) (size - 1)).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void assertColorWithinOne(int expected, int actual) {
+        for (int shift = 0; shift <= 24; shift += 8) {
+            int e = (expected >> shift) & 0xFF;
+            int a = (actual >> shift) & 0xFF;
+            assertTrue(String.format("expected %08x but was %08x", expected, actual),
+                    Math.abs(e - a) <= 1);
+        }
+    }
+}
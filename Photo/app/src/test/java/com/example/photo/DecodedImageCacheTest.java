@@ -0,0 +1,65 @@
+package com.example.photo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 解码缓存测试：键随修改时间和工作分辨率变化，磁盘缓存按最近使用淘汰
+ */
+public class DecodedImageCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildKey_changesWithModifiedTimeAndSize() {
+        String uri = "content://media/external/images/media/42";
+        String key = DecodedImageCache.buildKey(uri, 1000, 4_000_000);
+
+        assertEquals(key, DecodedImageCache.buildKey(uri, 1000, 4_000_000));
+        assertNotEquals(key, DecodedImageCache.buildKey(uri, 1001, 4_000_000));
+        assertNotEquals(key, DecodedImageCache.buildKey(uri, 1000, 2_000_000));
+        assertNotEquals(DecodedImageCache.hashKey(key),
+                DecodedImageCache.hashKey(DecodedImageCache.buildKey(uri, 1001, 4_000_000)));
+    }
+
+    @Test
+    public void trimDirectory_deletesLeastRecentlyUsed() throws IOException {
+        File dir = folder.newFolder("decoded");
+        File oldest = createFile(dir, "a.jpg", 400, 1_000_000L);
+        File middle = createFile(dir, "b.jpg", 400, 2_000_000L);
+        File newest = createFile(dir, "c.jpg", 400, 3_000_000L);
+
+        DecodedImageCache.trimDirectory(dir, 900);
+
+        assertFalse(oldest.exists());
+        assertTrue(middle.exists());
+        assertTrue(newest.exists());
+    }
+
+    @Test
+    public void trimDirectory_keepsEverythingUnderLimit() throws IOException {
+        File dir = folder.newFolder("decoded");
+        File file = createFile(dir, "a.jpg", 400, 1_000_000L);
+
+        DecodedImageCache.trimDirectory(dir, 400);
+
+        assertTrue(file.exists());
+    }
+
+    private static File createFile(File dir, String name, int length, long lastModified) throws IOException {
+        File file = new File(dir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+}
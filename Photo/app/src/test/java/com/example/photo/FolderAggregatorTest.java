@@ -0,0 +1,41 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 文件夹统计测试：按 BUCKET_ID 区分同名文件夹，封面是最新的一张
+ */
+public class FolderAggregatorTest {
+
+    @Test
+    public void aggregate_keysByBucketIdAndPicksNewestCover() {
+        MediaIndex images = new MediaIndex();
+        images.add(6, "f.jpg", 60, 1, 200, "Camera");
+        images.add(5, "e.jpg", 50, 1, 100, "Camera");
+        images.add(4, "d.jpg", 40, 1, 300, "Download");
+        images.add(3, "c.jpg", 30, 1, 100, "Camera");
+        images.add(2, "b.jpg", 20, 1, 200, "Camera");
+        images.add(1, "a.jpg", 10, 1, 100, "Camera");
+
+        List<FolderItem> folders = FolderAggregator.aggregate(images);
+
+        assertEquals(3, folders.size());
+        assertEquals(200, folders.get(0).getBucketId());
+        assertEquals(2, folders.get(0).getImageCount());
+        assertEquals(6, folders.get(0).getCoverId());
+        assertEquals(100, folders.get(1).getBucketId());
+        assertEquals(3, folders.get(1).getImageCount());
+        assertEquals(5, folders.get(1).getCoverId());
+        assertEquals("Download", folders.get(2).getName());
+        assertEquals(1, folders.get(2).getImageCount());
+    }
+
+    @Test
+    public void aggregate_emptyIndexHasNoFolders() {
+        assertTrue(FolderAggregator.aggregate(new MediaIndex()).isEmpty());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 列式图片索引测试：按列读回的值与写入一致，合并时文件夹序号正确映射
+ */
+public class MediaIndexTest {
+
+    @Test
+    public void add_readsBackEveryColumn() {
+        MediaIndex index = new MediaIndex();
+        index.add(7, "IMG_0001.jpg", 1000, 2048, 11, "Camera");
+        index.add(8, null, 999, 4096, 22, "Screenshots");
+
+        assertEquals(2, index.size());
+        assertEquals(7, index.getId(0));
+        assertEquals("IMG_0001.jpg", index.getName(0));
+        assertEquals(1000, index.getDateAdded(0));
+        assertEquals(2048, index.getSize(0));
+        assertEquals(11, index.getBucketId(0));
+        assertEquals("Camera", index.getBucketName(0));
+        assertEquals("", index.getName(1));
+        assertEquals("Screenshots", index.getBucketName(1));
+    }
+
+    @Test
+    public void add_growsPastInitialCapacity() {
+        MediaIndex index = new MediaIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add(i, "photo_with_a_rather_long_name_" + i + ".jpg", i, i, i % 3, "bucket" + i % 3);
+        }
+
+        assertEquals(1000, index.size());
+        assertEquals("photo_with_a_rather_long_name_999.jpg", index.getName(999));
+        assertEquals("bucket0", index.getBucketName(999));
+    }
+
+    @Test
+    public void addAll_appendsAndRemapsBuckets() {
+        MediaIndex index = new MediaIndex();
+        index.add(1, "a.jpg", 30, 1, 100, "Camera");
+
+        MediaIndex page = new MediaIndex();
+        page.add(2, "b.jpg", 20, 2, 200, "Download");
+        page.add(3, "c.jpg", 10, 3, 100, "Camera");
+        index.addAll(page);
+
+        assertEquals(3, index.size());
+        assertEquals("b.jpg", index.getName(1));
+        assertEquals(200, index.getBucketId(1));
+        assertEquals("Download", index.getBucketName(1));
+        assertEquals("c.jpg", index.getName(2));
+        assertEquals(100, index.getBucketId(2));
+        assertEquals(3, index.getId(2));
+        assertEquals("a.jpg", index.getName(0));
+    }
+
+    @Test
+    public void clear_startsOver() {
+        MediaIndex index = new MediaIndex();
+        index.add(1, "a.jpg", 30, 1, 100, "Camera");
+        index.clear();
+        index.add(2, "bb.jpg", 20, 2, 200, "Download");
+
+        assertEquals(1, index.size());
+        assertEquals("bb.jpg", index.getName(0));
+        assertEquals("Download", index.getBucketName(0));
+    }
+
+    @Test
+    public void merge_insertsUpdatesAndDeletesInOrder() {
+        MediaIndex base = new MediaIndex();
+        base.add(5, "e.jpg", 50, 1, 1, "Camera");
+        base.add(4, "d.jpg", 40, 1, 1, "Camera");
+        base.add(3, "c.jpg", 30, 1, 1, "Camera");
+        base.add(2, "b.jpg", 20, 1, 1, "Camera");
+
+        MediaIndex upserts = new MediaIndex();
+        upserts.add(3, "c-edited.jpg", 30, 9, 1, "Camera");
+        upserts.add(6, "f.jpg", 60, 1, 2, "Download");
+        upserts.add(7, "g.jpg", 35, 1, 1, "Camera");
+
+        MediaIndex merged = MediaIndex.merge(base, upserts, new long[]{4}, false);
+
+        assertEquals(5, merged.size());
+        long[] expectedIds = {6, 5, 7, 3, 2};
+        for (int i = 0; i < expectedIds.length; i++) {
+            assertEquals(expectedIds[i], merged.getId(i));
+        }
+        assertEquals("c-edited.jpg", merged.getName(3));
+        assertEquals(9, merged.getSize(3));
+        assertEquals("Download", merged.getBucketName(0));
+        assertEquals(4, base.size());
+    }
+
+    @Test
+    public void merge_clipToTailSkipsRowsNotYetPaged() {
+        MediaIndex base = new MediaIndex();
+        base.add(5, "e.jpg", 50, 1, 1, "Camera");
+        base.add(4, "d.jpg", 40, 1, 1, "Camera");
+
+        MediaIndex upserts = new MediaIndex();
+        upserts.add(6, "f.jpg", 60, 1, 1, "Camera");
+        upserts.add(1, "a.jpg", 10, 1, 1, "Camera");
+
+        MediaIndex clipped = MediaIndex.merge(base, upserts, new long[0], true);
+        MediaIndex full = MediaIndex.merge(base, upserts, new long[0], false);
+
+        assertEquals(3, clipped.size());
+        assertEquals(6, clipped.getId(0));
+        assertEquals(4, clipped.getId(2));
+        assertEquals(4, full.size());
+        assertEquals(1, full.getId(3));
+    }
+
+    @Test
+    public void writeTo_roundTripsThroughBuffer() {
+        MediaIndex index = new MediaIndex();
+        index.add(9, "IMG_0009.jpg", 90, 900, 1, "Camera");
+        index.add(8, null, 80, 800, 2, null);
+        index.add(7, "截图.png", 70, 700, 1, "Camera");
+
+        ByteBuffer buffer = ByteBuffer.allocate(index.getSerializedSize());
+        index.writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        MediaIndex read = MediaIndex.readFrom(buffer);
+
+        assertEquals(3, read.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(index.getId(i), read.getId(i));
+            assertEquals(index.getName(i), read.getName(i));
+            assertEquals(index.getDateAdded(i), read.getDateAdded(i));
+            assertEquals(index.getSize(i), read.getSize(i));
+            assertEquals(index.getBucketId(i), read.getBucketId(i));
+            assertEquals(index.getBucketName(i), read.getBucketName(i));
+        }
+        assertNull(read.getBucketName(1));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void readFrom_rejectsTruncatedData() {
+        MediaIndex index = new MediaIndex();
+        index.add(1, "a.jpg", 10, 100, 1, "Camera");
+        ByteBuffer buffer = ByteBuffer.allocate(index.getSerializedSize());
+        index.writeTo(buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 6);
+
+        MediaIndex.readFrom(buffer);
+    }
+}
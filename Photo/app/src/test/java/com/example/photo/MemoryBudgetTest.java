@@ -0,0 +1,88 @@
+package com.example.photo;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 内存预算测试：工作分辨率随内存级别和常驻图片数变化，解码尺寸保持宽高比
+ */
+public class MemoryBudgetTest {
+
+    private static final long MB = 1024L * 1024;
+
+    @Test
+    public void maxWorkingPixels_shrinksWithMoreFrames() {
+        MemoryBudget budget = new MemoryBudget(256 * MB, false);
+
+        long few = budget.getMaxWorkingPixels(0, 0);
+        long many = budget.getMaxWorkingPixels(2, 3);
+
+        assertTrue(many < few);
+        assertTrue(many * 4 * (MemoryBudget.BASE_FRAMES + 5) <= budget.getImageBudgetBytes());
+    }
+
+    @Test
+    public void maxWorkingPixels_lowRamDeviceGetsLess() {
+        MemoryBudget normal = new MemoryBudget(192 * MB, false);
+        MemoryBudget lowRam = new MemoryBudget(192 * MB, true);
+
+        assertTrue(lowRam.getMaxWorkingPixels(1, 3) < normal.getMaxWorkingPixels(1, 3));
+        assertTrue(lowRam.getPoolBytes() < normal.getPoolBytes());
+    }
+
+    @Test
+    public void maxWorkingPixels_isClamped() {
+        long min = (long) MemoryBudget.MIN_LONG_SIDE * MemoryBudget.MIN_LONG_SIDE;
+        long max = (long) MemoryBudget.MAX_LONG_SIDE * MemoryBudget.MAX_LONG_SIDE;
+
+        assertEquals(min, new MemoryBudget(16 * MB, true).getMaxWorkingPixels(1, 3));
+        assertEquals(max, new MemoryBudget(8192 * MB, false).getMaxWorkingPixels(0, 0));
+    }
+
+    @Test
+    public void computeTargetSize_keepsAspectAndFitsBudget() {
+        long maxPixels = 6_000_000;
+        int[] size = MemoryBudget.computeTargetSize(4000, 3000, maxPixels);
+
+        assertTrue((long) size[0] * size[1] <= maxPixels);
+        assertEquals(4000 / 3000.0, size[0] / (double) size[1], 0.01);
+        // 不是只按 2 的幂缩小
+        assertTrue(size[0] > 2000);
+    }
+
+    @Test
+    public void computeTargetSize_neverUpscales() {
+        assertArrayEquals(new int[] {800, 600}, MemoryBudget.computeTargetSize(800, 600, 16_000_000));
+    }
+
+    @Test
+    public void computeTargetSize_capsLongSide() {
+        int[] size = MemoryBudget.computeTargetSize(12000, 1000, Long.MAX_VALUE);
+
+        assertEquals(MemoryBudget.MAX_LONG_SIDE, size[0]);
+    }
+
+    @Test
+    public void computeSampleSize_staysAboveTarget() {
+        assertEquals(1, MemoryBudget.computeSampleSize(4000, 2829));
+        assertEquals(2, MemoryBudget.computeSampleSize(4000, 1900));
+        assertEquals(4, MemoryBudget.computeSampleSize(4000, 1000));
+        assertEquals(1, MemoryBudget.computeSampleSize(800, 800));
+    }
+
+    @Test
+    public void retainRatio_followsTrimLevel() {
+        assertEquals(1f, MemoryBudget.retainRatioForTrimLevel(0), 0f);
+        assertEquals(0.5f, MemoryBudget.retainRatioForTrimLevel(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE), 0f);
+        assertEquals(0.25f, MemoryBudget.retainRatioForTrimLevel(
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN), 0f);
+        assertEquals(0f, MemoryBudget.retainRatioForTrimLevel(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL), 0f);
+        assertEquals(0f, MemoryBudget.retainRatioForTrimLevel(
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE), 0f);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * 流式 JPEG 编码测试：输出能被标准解码器读取，分批写入与一次写入结果相同
+ */
+public class StreamingJpegEncoderTest {
+
+    // 宽高都不是 16 的倍数，覆盖右侧和底部的补齐
+    private static final int WIDTH = 101;
+    private static final int HEIGHT = 67;
+
+    @Test
+    public void encode_isDecodableAndClose() throws IOException {
+        int[] pixels = createGradient(WIDTH, HEIGHT);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encode(pixels, HEIGHT, 90)));
+
+        assertNotNull(decoded);
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+        double error = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = pixels[y * WIDTH + x];
+                int actual = decoded.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    error += Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff));
+                }
+            }
+        }
+        // 平滑渐变在质量 90 下的平均误差很小
+        assertTrue("mean error " + error / (WIDTH * HEIGHT * 3), error / (WIDTH * HEIGHT * 3) < 3);
+    }
+
+    @Test
+    public void writeRows_chunkingDoesNotChangeOutput() throws IOException {
+        int[] pixels = createGradient(WIDTH, HEIGHT);
+
+        byte[] whole = encode(pixels, HEIGHT, 85);
+        byte[] chunked = encode(pixels, 7, 85);
+
+        assertArrayEquals(whole, chunked);
+    }
+
+    @Test(expected = IOException.class)
+    public void finish_failsWhenRowsAreMissing() throws IOException {
+        StreamingJpegEncoder encoder = new StreamingJpegEncoder(new ByteArrayOutputStream(), WIDTH, HEIGHT, 90);
+        encoder.writeRows(createGradient(WIDTH, 10), 0, WIDTH, 10);
+        encoder.finish();
+    }
+
+    private static byte[] encode(int[] pixels, int chunkRows, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingJpegEncoder encoder = new StreamingJpegEncoder(out, WIDTH, HEIGHT, quality);
+        for (int top = 0; top < HEIGHT; top += chunkRows) {
+            int rows = Math.min(chunkRows, HEIGHT - top);
+            encoder.writeRows(pixels, top * WIDTH, WIDTH, rows);
+        }
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    private static int[] createGradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = (x + y) * 255 / (width + height);
+                pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+}
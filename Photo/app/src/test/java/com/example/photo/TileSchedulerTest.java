@@ -0,0 +1,109 @@
+package com.example.photo;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分块调度器测试：并行结果必须与单线程完全一致，并给出 12MP 的加速比
+ */
+public class TileSchedulerTest {
+
+    // 4000 x 3000 = 12MP
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+
+    @Test
+    public void forEachBand_coversEveryRowOnce() {
+        int height = 1001;
+        AtomicInteger[] hits = new AtomicInteger[height];
+        for (int i = 0; i < height; i++) {
+            hits[i] = new AtomicInteger();
+        }
+
+        TileScheduler.forEachBand(height, 37, (top, rows) -> {
+            for (int y = top; y < top + rows; y++) {
+                hits[y].incrementAndGet();
+            }
+        });
+
+        for (int i = 0; i < height; i++) {
+            assertEquals("row " + i, 1, hits[i].get());
+        }
+    }
+
+    @Test
+    public void apply_isDeterministic() {
+        int width = 1531;
+        int height = 977;
+        int[] parallel = randomPixels(width * height, 5);
+        int[] sequential = parallel.clone();
+        ChannelLut kernel = ChannelLut.contrast(80).then(ChannelLut.brightnessExtreme(20));
+
+        TileScheduler.apply(parallel, width, height, kernel);
+        kernel.apply(sequential, 0, sequential.length);
+
+        assertArrayEquals(sequential, parallel);
+    }
+
+    @Test
+    public void apply_smallImageRunsInline() {
+        int[] pixels = randomPixels(16, 9);
+        int[] expected = pixels.clone();
+        ChannelLut kernel = ChannelLut.contrast(-20);
+
+        TileScheduler.apply(pixels, 4, 4, kernel);
+        kernel.apply(expected, 0, expected.length);
+
+        assertArrayEquals(expected, pixels);
+    }
+
+    /**
+     * 12MP 缓冲区的单线程与多线程耗时对比，结果输出到测试日志
+     */
+    @Test
+    public void benchmark_12mpBuffer() {
+        int[] source = randomPixels(WIDTH * HEIGHT, 1);
+        int[] parallel = source.clone();
+        int[] sequential = source.clone();
+        PixelKernel kernel = ChannelLut.contrast(60).then(ChannelLut.brightnessExtreme(30));
+
+        // 预热
+        for (int i = 0; i < 3; i++) {
+            TileScheduler.applySequential(sequential, WIDTH, HEIGHT, kernel);
+            TileScheduler.apply(parallel, WIDTH, HEIGHT, kernel);
+        }
+
+        int rounds = 5;
+        long sequentialNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            System.arraycopy(source, 0, sequential, 0, source.length);
+            long start = System.nanoTime();
+            TileScheduler.applySequential(sequential, WIDTH, HEIGHT, kernel);
+            sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+
+            System.arraycopy(source, 0, parallel, 0, source.length);
+            start = System.nanoTime();
+            TileScheduler.apply(parallel, WIDTH, HEIGHT, kernel);
+            parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+        }
+
+        assertArrayEquals(sequential, parallel);
+        System.out.printf("TileScheduler 12MP: single=%.2fms, parallel(%d)=%.2fms, speedup=%.2fx%n",
+                sequentialNanos / 1e6, TileScheduler.getParallelism(), parallelNanos / 1e6,
+                (double) sequentialNanos / parallelNanos);
+    }
+
+    private static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.photo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 撤销快照磁盘存储测试：读写一致、分块去重和槽位复用
+ */
+public class TileSnapshotStoreTest {
+
+    private File file;
+    private TileSnapshotStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("tiles", ".bin");
+        store = new TileSnapshotStore(file, 64L * 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void put_readBackMatchesOddSizes() throws IOException {
+        int width = 200;
+        int height = 131;
+        int[] pixels = randomPixels(width * height, 1);
+
+        store.put(1, width, height, reader(pixels, width));
+
+        assertArrayEquals(new int[] {width, height}, store.getSize(1));
+        assertArrayEquals(pixels, readBack(1, width, height));
+    }
+
+    @Test
+    public void put_storesOnlyChangedTiles() throws IOException {
+        int width = 256;
+        int height = 256;
+        int[] first = randomPixels(width * height, 2);
+        int[] second = first.clone();
+        // 只改动一个分块内的一个像素
+        second[70 * width + 70] ^= 0x00FFFFFF;
+
+        store.put(1, width, height, reader(first, width));
+        int tilesAfterFirst = store.getUsedTileCount();
+        store.put(2, width, height, reader(second, width));
+
+        assertEquals(16, tilesAfterFirst);
+        assertEquals(17, store.getUsedTileCount());
+        assertArrayEquals(first, readBack(1, width, height));
+        assertArrayEquals(second, readBack(2, width, height));
+    }
+
+    @Test
+    public void put_deduplicatesIdenticalTilesWithinImage() throws IOException {
+        int width = 640;
+        int height = 128;
+        int[] pixels = new int[width * height];
+        java.util.Arrays.fill(pixels, 0xFF336699);
+
+        store.put(1, width, height, reader(pixels, width));
+
+        assertEquals(1, store.getUsedTileCount());
+        assertArrayEquals(pixels, readBack(1, width, height));
+    }
+
+    @Test
+    public void remove_freesSlotsForReuse() throws IOException {
+        int width = 128;
+        int height = 128;
+        store.put(1, width, height, reader(randomPixels(width * height, 3), width));
+        store.put(2, width, height, reader(randomPixels(width * height, 4), width));
+        assertEquals(8, store.getUsedTileCount());
+        long fileBytes = store.getFileBytes();
+
+        store.remove(1);
+        assertFalse(store.contains(1));
+        assertEquals(4, store.getUsedTileCount());
+
+        int[] third = randomPixels(width * height, 5);
+        store.put(3, width, height, reader(third, width));
+        assertEquals(8, store.getUsedTileCount());
+        assertEquals(fileBytes, store.getFileBytes());
+        assertArrayEquals(third, readBack(3, width, height));
+    }
+
+    @Test(expected = IOException.class)
+    public void put_failsWhenFileIsFull() throws IOException {
+        TileSnapshotStore small = new TileSnapshotStore(file, 0);
+        try {
+            // 4MB 一段只能放 256 个分块，这张图需要 289 个
+            int width = 17 * TileSnapshotStore.TILE_SIZE;
+            small.put(1, width, width, reader(randomPixels(width * width, 6), width));
+        } finally {
+            assertEquals(0, small.getUsedTileCount());
+            small.close();
+        }
+    }
+
+    private static TileSnapshotStore.RowReader reader(int[] pixels, int width) {
+        return (top, rows, out) -> System.arraycopy(pixels, top * width, out, 0, rows * width);
+    }
+
+    private int[] readBack(int key, int width, int height) {
+        int[] result = new int[width * height];
+        assertTrue(store.read(key, (top, rows, in) ->
+                System.arraycopy(in, 0, result, top * width, rows * width)));
+        return result;
+    }
+
+    private static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}